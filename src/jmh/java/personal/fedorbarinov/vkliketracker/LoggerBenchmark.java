@@ -0,0 +1,61 @@
+package personal.fedorbarinov.vkliketracker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logging of a tracking result by several threads, synchronously and through the ring buffer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class LoggerBenchmark {
+    private static final String MESSAGE = "[durov -> wall1_2442097]: The post is liked";
+    private static final int BUFFER = 8192;
+
+    @Param({"SYNC", "BLOCK", "DROP"})
+    public String mode; //Synchronous mode or the overflow policy of asynchronous mode
+
+    private Logger logger;
+
+    @Setup
+    public void setUp() {
+        logger = Logger.getInstance();
+        PrintStream discard = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+        logger.setStream(Logger.LogKind.INFO, discard);
+        logger.setStream(Logger.LogKind.WARNING, discard);
+        if (!mode.equals("SYNC"))
+            logger.startAsync(BUFFER, Logger.OverflowPolicy.valueOf(mode));
+    }
+
+    @TearDown
+    public void tearDown() {
+        logger.stopAsync();
+    }
+
+    @Benchmark
+    public void log() {
+        logger.log(Logger.LogKind.INFO, MESSAGE);
+    }
+}
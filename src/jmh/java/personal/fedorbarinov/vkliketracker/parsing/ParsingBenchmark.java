@@ -0,0 +1,78 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of large task configs and task lists
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParsingBenchmark {
+    @Param({"1000", "100000"})
+    public int lines; //Number of lines in the parsed file
+
+    private byte[] config; //Task config with a parameter or a comment per line
+    private byte[] taskList; //Task list with a task per line
+    private Path taskListFile; //The same task list written to a file for the streaming reader
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder configText = new StringBuilder("TARGET=durov\nPOST_LINK=wall1_2442097\n");
+        for (int i = 0; i < lines; i++)
+            configText.append(i % 2 == 0 ? "# Comment line " + i : "THREADS=" + i).append('\n');
+        config = configText.toString().getBytes(StandardCharsets.UTF_8);
+
+        StringBuilder listText = new StringBuilder();
+        for (int i = 0; i < lines; i++)
+            listText.append(i % 3 == 0 ? "id" + i : Integer.toString(i)).append(" https://vk.com/wall-")
+                    .append(i % 1000).append('_').append(i).append('\n');
+        taskList = listText.toString().getBytes(StandardCharsets.UTF_8);
+        taskListFile = Files.createTempFile("tasks", ".list");
+        Files.write(taskListFile, taskList);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(taskListFile);
+    }
+
+    @Benchmark
+    public Parser.ParsingResult parseConfig() throws Parser.ParsingException {
+        return new TaskConfigParser().parse(new ByteArrayInputStream(config));
+    }
+
+    @Benchmark
+    public List<Parser.ParsingResult> parseTaskList() throws Parser.ParsingException {
+        return new TaskListParser().parse(new ByteArrayInputStream(taskList));
+    }
+
+    @Benchmark
+    public long streamTaskList() throws Parser.ParsingException {
+        long checksum = 0;
+        try (TaskFileReader reader = new TaskFileReader(taskListFile, 2)) {
+            reader.start();
+            TaskFileReader.TaskBlock block;
+            while ((block = reader.next()) != null)
+                for (int i = 0; i < block.size(); i++)
+                    checksum += block.getOwnerId(i) + block.getPostId(i);
+        }
+        return checksum;
+    }
+}
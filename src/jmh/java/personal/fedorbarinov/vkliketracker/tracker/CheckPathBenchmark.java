@@ -0,0 +1,83 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import com.vk.api.sdk.client.VkApiClient;
+import com.vk.api.sdk.client.actors.UserActor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import personal.fedorbarinov.vkliketracker.api.ActorPool;
+import personal.fedorbarinov.vkliketracker.api.AsyncApiClient;
+import personal.fedorbarinov.vkliketracker.api.AsyncTransport;
+import personal.fedorbarinov.vkliketracker.api.ConfigurableVkApiClient;
+import personal.fedorbarinov.vkliketracker.api.ExecuteBatcher;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end check of likes against an in-process stand-in of the API: a round of concurrent checks
+ * goes through the rate limit, the transport and the response parsing
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CheckPathBenchmark {
+    private static final double UNLIMITED_RATE = 1e9;
+    private static final int WORKER_THREADS = 4;
+    private static final int SERVER_THREADS = 16;
+    private static final long BATCH_LINGER = 1;
+
+    @Param({"1", "16", "256"})
+    public int concurrency; //Number of checks in flight in a round
+
+    @Param({"1", "25"})
+    public int batchSize; //Number of isLiked calls packed into one "execute" request
+
+    private FakeVkEndpoint endpoint;
+    private AsyncTransport transport;
+    private ExecutorService workers;
+    private AsyncApiClient api;
+    private LikeChecker checker;
+    private ExecuteBatcher batcher;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        endpoint = new FakeVkEndpoint(SERVER_THREADS);
+        transport = new AsyncTransport(concurrency);
+        VkApiClient vkClient = new ConfigurableVkApiClient(transport, endpoint.getEndpoint(), null);
+        workers = Executors.newFixedThreadPool(WORKER_THREADS);
+        UserActor user = new UserActor(1, "user1.bench"); //The stand-in takes the tokens it issues, "user..."
+        api = new AsyncApiClient(vkClient, transport, new ActorPool(Collections.singletonList(user), UNLIMITED_RATE, 1), workers);
+        checker = new LikeChecker(api, user);
+        batcher = new ExecuteBatcher(api, user, batchSize, BATCH_LINGER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        batcher.close();
+        api.close();
+        workers.shutdownNow();
+        transport.close();
+        endpoint.close();
+    }
+
+    @Benchmark
+    public int checkRound() {
+        CompletableFuture<?>[] checks = new CompletableFuture[concurrency];
+        for (int i = 0; i < concurrency; i++)
+            checks[i] = batchSize > 1 ? batcher.isLiked(1, 2442097, i) : checker.check(1, 2442097, i);
+        CompletableFuture.allOf(checks).join();
+        return checks.length;
+    }
+}
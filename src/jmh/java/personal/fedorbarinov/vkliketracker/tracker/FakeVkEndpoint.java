@@ -0,0 +1,43 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import personal.fedorbarinov.vkliketracker.parsing.Parser;
+import personal.fedorbarinov.vkliketracker.parsing.StandInConfigParser;
+import personal.fedorbarinov.vkliketracker.standin.StandInServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * In-process stand-in of the VK API answering at once, without a rate limit or errors,
+ * so that a benchmark measures the client side of the check path. Users with odd IDs have liked every post
+ */
+class FakeVkEndpoint implements AutoCloseable {
+    private static final String CONFIG_FORMAT = "PORT=0\nTHREADS=%d\nLATENCY=0\nLATENCY_JITTER=0\nRATE_LIMIT=0\n";
+
+    private final StandInServer server;
+
+    FakeVkEndpoint(int threads) throws IOException {
+        Parser.ParsingResult config;
+        try {
+            config = new StandInConfigParser().parse(new ByteArrayInputStream(
+                    String.format(CONFIG_FORMAT, threads).getBytes(StandardCharsets.UTF_8)));
+        } catch (Parser.ParsingException e) {
+            throw new IOException(e);
+        }
+        server = new StandInServer(config);
+    }
+
+    /**
+     * Get the base URL of the API methods
+     * @return URL ending with a slash
+     */
+    String getEndpoint() {
+        return server.getApiUrl();
+    }
+
+    @Override
+    public void close() {
+        server.close();
+    }
+}
@@ -0,0 +1,64 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import com.vk.api.sdk.client.actors.UserActor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import personal.fedorbarinov.vkliketracker.parsing.Parser;
+import personal.fedorbarinov.vkliketracker.parsing.TaskConfigParser;
+import personal.fedorbarinov.vkliketracker.parsing.TaskListParser;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processing of the parameters of a task: parsing the post link and looking the target up
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskProcessingBenchmark {
+    private static final int TASKS = 1024;
+
+    private LikeTracker tracker;
+    private List<Parser.ParsingResult> tasks; //Half of the targets are IDs, half are screen names
+    private Map<String, CompletableFuture<Integer>> targets; //Resolved screen names
+    private int next; //Index of the next task
+
+    @Setup
+    public void setUp() throws Exception {
+        String config = "TARGET=1\nPOST_LINK=wall1_1\nNAME_CACHE="
+                + Files.createTempDirectory("bench").resolve("names.cache").toString().replace('\\', '/') + '\n';
+        StringBuilder list = new StringBuilder();
+        targets = new HashMap<>();
+        for (int i = 0; i < TASKS; i++) {
+            String target = i % 2 == 0 ? Integer.toString(i + 1) : "user" + i;
+            if (i % 2 != 0)
+                targets.put(target, CompletableFuture.completedFuture(i + 1));
+            list.append(target).append(" https://vk.com/wall-").append(i).append('_').append(i * 7).append('\n');
+        }
+        tasks = new TaskListParser().parse(new ByteArrayInputStream(list.toString().getBytes(StandardCharsets.UTF_8)));
+        Parser.ParsingResult parameters = new TaskConfigParser()
+                .parse(new ByteArrayInputStream(config.getBytes(StandardCharsets.UTF_8)));
+        tracker = new LikeTracker(Collections.singletonList(new UserActor(1, "token")), parameters, tasks);
+    }
+
+    @Benchmark
+    public void processTaskParameters(Blackhole blackhole) {
+        Parser.ParsingResult task = tasks.get(next);
+        next = (next + 1) % TASKS;
+        blackhole.consume(tracker.processTaskParameters(task, targets).join());
+    }
+}
@@ -1,11 +1,18 @@
 package personal.fedorbarinov.vkliketracker;
 
 import java.io.PrintStream;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Singleton logger class
+ * Singleton logger class.
+ * By default a message is written by the thread that logs it. In asynchronous mode messages are put
+ * into a bounded ring buffer, and a single writer thread writes them in batches.
  */
 public class Logger {
     private static final String PREFIX_ERROR = "ERROR:"; //Prefix in case of error
@@ -14,6 +21,9 @@ public class Logger {
     private static final String SEPARATOR_WORD = " ";
     private static final String SEPARATOR_LINE = "\n";
     private static final String FORMAT_DATETIME = "yyyy-MM-dd HH:mm:ss";
+    private static final String LOG_MSG_DROPPED = "%d log message(s) have been dropped, the log buffer was full";
+    private static final String WRITER_THREAD_NAME = "LogWriter";
+    private static final int BATCH_SIZE = 512; //Maximal number of messages written at once
 
     public static final int MODE_TIME = 0x1; //Modes are combined into a bit mask
 
@@ -26,12 +36,37 @@ public class Logger {
         WARNING
     }
 
+    /**
+     * What a thread logging into the full buffer does in asynchronous mode
+     */
+    public enum OverflowPolicy {
+        BLOCK, //Wait for the writer to free a slot
+        DROP //Drop the message, the number of dropped messages is logged later
+    }
+
+    /**
+     * Timestamp text that is formatted once per second
+     */
+    private static class TimestampCache {
+        private long second = -1; //Second since the epoch the text has been formatted for
+        private String text;
+
+        String get(long millis) {
+            long current = TimeUnit.MILLISECONDS.toSeconds(millis);
+            if (current != second) {
+                second = current;
+                text = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()).format(formatter);
+            }
+            return text;
+        }
+    }
+
     private static Logger instance; //Singleton class instance
     private static DateTimeFormatter formatter;
 
     static {
-        instance = new Logger();
         formatter = DateTimeFormatter.ofPattern(FORMAT_DATETIME);
+        instance = new Logger();
     }
 
     /**
@@ -40,16 +75,39 @@ public class Logger {
      */
     public static Logger getInstance() { return instance; }
 
-    private PrintStream outInfo; //Info messages output stream
-    private PrintStream outError; //Error output stream
-    private PrintStream outWarning; //Warning output stream
+    private volatile PrintStream outInfo; //Info messages output stream
+    private volatile PrintStream outError; //Error output stream
+    private volatile PrintStream outWarning; //Warning output stream
+
+    private volatile boolean enabledTime;
+    private final StringBuilder builder; //Builds the messages written synchronously
+    private final TimestampCache timestamps; //Timestamps of the messages written synchronously
 
-    private boolean enabledTime;
+    //Ring buffer of asynchronous mode, guarded by the lock
+    private final ReentrantLock lock;
+    private final Condition notEmpty; //Signalled when the writer has messages to write or should stop
+    private final Condition notFull; //Signalled when the writer has freed slots
+    private LogKind[] kinds; //Kinds of the buffered messages
+    private String[] messages; //Bodies of the buffered messages
+    private long[] times; //Times in milliseconds the buffered messages have been logged at
+    private int head; //Slot of the oldest buffered message
+    private int count; //Number of buffered messages
+    private long dropped; //Number of messages dropped since the last batch
+    private OverflowPolicy policy;
+    private volatile boolean async; //Are messages written by the writer thread?
+    private Thread writer; //Writer thread (null in synchronous mode)
+    private boolean hookAdded; //Has the shutdown hook writing the rest of the buffer been added?
 
     private Logger() {
         this.outInfo = System.out;
         this.outError = System.err;
+        this.outWarning = System.err;
         this.enabledTime = true;
+        this.builder = new StringBuilder();
+        this.timestamps = new TimestampCache();
+        this.lock = new ReentrantLock();
+        this.notEmpty = lock.newCondition();
+        this.notFull = lock.newCondition();
     }
 
     /**
@@ -79,37 +137,202 @@ public class Logger {
         }
     }
 
+    /**
+     * Switch to asynchronous mode, the rest of the buffer is written when the application exits
+     * @param capacity Number of messages the buffer holds
+     * @param policy What a thread logging into the full buffer does
+     */
+    public void startAsync(int capacity, OverflowPolicy policy) {
+        lock.lock();
+        try {
+            if (async)
+                return;
+            this.kinds = new LogKind[Math.max(1, capacity)];
+            this.messages = new String[kinds.length];
+            this.times = new long[kinds.length];
+            this.head = 0;
+            this.count = 0;
+            this.dropped = 0;
+            this.policy = policy;
+            this.writer = new Thread(this::writeBuffered, WRITER_THREAD_NAME);
+            this.writer.setDaemon(true);
+            this.async = true;
+            this.writer.start();
+            if (!hookAdded) {
+                Runtime.getRuntime().addShutdownHook(new Thread(this::stopAsync));
+                hookAdded = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the rest of the buffer and switch back to synchronous mode
+     */
+    public void stopAsync() {
+        Thread stopped;
+        lock.lock();
+        try {
+            if (!async)
+                return;
+            async = false;
+            stopped = writer;
+            writer = null;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            stopped.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Write log message
      * @param kind Kind of message
      * @param message Message body
      */
     public void log(LogKind kind, String message) {
-        switch(kind) {
+        if (async && offer(kind, message))
+            return;
+        synchronized (builder) {
+            builder.setLength(0);
+            appendLogMessage(builder, kind, enabledTime ? timestamps.get(System.currentTimeMillis()) : null, message);
+            getStream(kind).print(builder);
+        }
+    }
+
+    /**
+     * Put a message into the buffer
+     * @param kind Kind of message
+     * @param message Message body
+     * @return True if the message has been buffered or dropped (False if the logger isn't asynchronous anymore)
+     */
+    private boolean offer(LogKind kind, String message) {
+        long time = System.currentTimeMillis();
+        lock.lock();
+        try {
+            while (async && count == kinds.length) {
+                if (policy == OverflowPolicy.DROP) {
+                    dropped++;
+                    return true;
+                }
+                notFull.awaitUninterruptibly();
+            }
+            if (!async)
+                return false;
+            int tail = (head + count) % kinds.length;
+            kinds[tail] = kind;
+            messages[tail] = message;
+            times[tail] = time;
+            if (count++ == 0)
+                notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Body of the writer thread: take the buffered messages in batches and write them,
+     * until the logger is switched to synchronous mode and the buffer is empty
+     */
+    private void writeBuffered() {
+        LogKind[] batchKinds = new LogKind[BATCH_SIZE];
+        String[] batchMessages = new String[BATCH_SIZE];
+        long[] batchTimes = new long[BATCH_SIZE];
+        StringBuilder[] outputs = new StringBuilder[LogKind.values().length]; //Text of the batch by kind
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = new StringBuilder();
+        TimestampCache batchTimestamps = new TimestampCache();
+        while (true) {
+            int size;
+            long lost;
+            lock.lock();
+            try {
+                while (async && count == 0)
+                    notEmpty.awaitUninterruptibly();
+                if (count == 0 && dropped == 0)
+                    return;
+                size = Math.min(count, BATCH_SIZE);
+                for (int i = 0; i < size; i++) {
+                    int slot = (head + i) % kinds.length;
+                    batchKinds[i] = kinds[slot];
+                    batchMessages[i] = messages[slot];
+                    batchTimes[i] = times[slot];
+                    messages[slot] = null; //The buffer mustn't keep the messages alive
+                }
+                head = (head + size) % kinds.length;
+                count -= size;
+                lost = dropped;
+                dropped = 0;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            boolean time = enabledTime;
+            for (int i = 0; i < size; i++)
+                appendLogMessage(outputs[batchKinds[i].ordinal()], batchKinds[i],
+                        time ? batchTimestamps.get(batchTimes[i]) : null, batchMessages[i]);
+            if (lost > 0)
+                appendLogMessage(outputs[LogKind.WARNING.ordinal()], LogKind.WARNING,
+                        time ? batchTimestamps.get(System.currentTimeMillis()) : null, String.format(LOG_MSG_DROPPED, lost));
+            for (LogKind kind : LogKind.values()) {
+                StringBuilder output = outputs[kind.ordinal()];
+                if (output.length() == 0)
+                    continue;
+                PrintStream out = getStream(kind);
+                out.print(output);
+                out.flush();
+                output.setLength(0);
+            }
+            for (int i = 0; i < size; i++)
+                batchMessages[i] = null;
+        }
+    }
+
+    /**
+     * Get the output stream of a kind of messages
+     * @param kind Kind of messages
+     * @return Output stream
+     */
+    private PrintStream getStream(LogKind kind) {
+        switch (kind) {
             case ERROR:
-                this.outError.print(buildLogMessage(PREFIX_ERROR, message));
-                break;
-            case INFO:
-                this.outInfo.print(buildLogMessage(PREFIX_INFO, message));
-                break;
+                return outError;
             case WARNING:
-                this.outWarning.print(buildLogMessage(PREFIX_WARNING, message));
-                break;
+                return outWarning;
+            default:
+                return outInfo;
         }
     }
 
     /**
-     * Build log message, considering additional info
-     * @param prefix Prefix that represents the kind of message
+     * Append log message, considering additional info
+     * @param builder Builder the message is appended to
+     * @param kind Kind of message
+     * @param timestamp Time of the message (null if it isn't included)
      * @param message Message body
-     * @return Built log message
      */
-    private String buildLogMessage(String prefix, String message) {
-        StringBuilder stringBuilder = new StringBuilder(prefix);
-        stringBuilder.append(SEPARATOR_WORD);
-        if (enabledTime)
-            stringBuilder.append(LocalDateTime.now().format(formatter)).append(SEPARATOR_WORD);
-        stringBuilder.append(message).append(SEPARATOR_LINE);
-        return stringBuilder.toString();
+    private static void appendLogMessage(StringBuilder builder, LogKind kind, String timestamp, String message) {
+        switch (kind) {
+            case ERROR:
+                builder.append(PREFIX_ERROR);
+                break;
+            case WARNING:
+                builder.append(PREFIX_WARNING);
+                break;
+            default:
+                builder.append(PREFIX_INFO);
+                break;
+        }
+        builder.append(SEPARATOR_WORD);
+        if (timestamp != null)
+            builder.append(timestamp).append(SEPARATOR_WORD);
+        builder.append(message).append(SEPARATOR_LINE);
     }
 }
@@ -3,6 +3,8 @@ package personal.fedorbarinov.vkliketracker;
 import com.vk.api.sdk.client.actors.UserActor;
 import personal.fedorbarinov.vkliketracker.authorization.AuthManager;
 import personal.fedorbarinov.vkliketracker.authorization.BrowserAuthManager;
+import personal.fedorbarinov.vkliketracker.authorization.LoopbackAuthManager;
+import personal.fedorbarinov.vkliketracker.metrics.MetricsServer;
 import personal.fedorbarinov.vkliketracker.parsing.AuthConfigParser;
 import personal.fedorbarinov.vkliketracker.parsing.Parser;
 import personal.fedorbarinov.vkliketracker.parsing.TaskConfigParser;
@@ -10,6 +12,9 @@ import personal.fedorbarinov.vkliketracker.tracker.LikeTracker;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Main class of the application
@@ -17,31 +22,95 @@ import java.io.IOException;
 public class Main {
     private static final String CONFIG_AUTH_PATH = "authorization.config"; //Path to the authorization config
     private static final String CONFIG_TASK_PATH = "task.config"; //Path to the authorization config
+    private static final String AUTH_MODE_LOOPBACK = "LOOPBACK"; //Headless authorization, with no AWT or Swing
     private static final String LOG_MSG_AUTHORIZING = "Authorizing...";
     private static final String LOG_MSG_TRACKING = "Tracking...";
+    private static final String LOG_MSG_REAUTHORIZING = "Authorizing again...";
+    private static final String LOG_MSG_METRICS = "Metrics are served at http://127.0.0.1:%d/metrics";
 
     public static void main(String[] args) {
         Logger logger = Logger.getInstance();
+        MetricsServer metricsServer = null;
         try (FileInputStream authConfig = new FileInputStream(CONFIG_AUTH_PATH);
              FileInputStream taskConfig = new FileInputStream(CONFIG_TASK_PATH)) {
             //Get authorization parameters
             Parser authParametersParser = new AuthConfigParser();
-            AuthManager authManager = new BrowserAuthManager(authParametersParser.parse(authConfig));
+            AuthManager authManager = createAuthManager(authParametersParser.parse(authConfig));
+
+            //Get task parameters, before authorization so that the calls it makes are measured too
+            Parser taskConfigParser = new TaskConfigParser();
+            Parser.ParsingResult taskParameters = taskConfigParser.parse(taskConfig);
+            if (taskParameters.contains(TaskConfigParser.ASYNC_LOG_LABEL)) //Tracking threads mustn't wait for the console
+                logger.startAsync(Integer.parseInt(taskParameters.get(TaskConfigParser.LOG_BUFFER_LABEL)),
+                        Logger.OverflowPolicy.valueOf(taskParameters.get(TaskConfigParser.LOG_OVERFLOW_LABEL)));
+            if (taskParameters.contains(TaskConfigParser.METRICS_PORT_LABEL)) {
+                int port = Integer.parseInt(taskParameters.get(TaskConfigParser.METRICS_PORT_LABEL));
+                metricsServer = new MetricsServer(port);
+                logger.log(Logger.LogKind.INFO, String.format(LOG_MSG_METRICS, port));
+            }
 
             //Perform authorization
             logger.log(Logger.LogKind.INFO, LOG_MSG_AUTHORIZING);
-            UserActor userActor = authManager.authorize();
-
-            //Get task parameters
-            Parser taskConfigParser = new TaskConfigParser();
-            LikeTracker likeTracker = new LikeTracker(userActor, taskConfigParser.parse(taskConfig));
+            List<UserActor> userActors = authManager.authorizeAll();
+            LikeTracker likeTracker = createTracker(userActors, taskParameters);
 
             //Run like tracker
             logger.log(Logger.LogKind.INFO, LOG_MSG_TRACKING);
-            likeTracker.run();
+            try {
+                runTracker(authManager, likeTracker);
+            } catch (LikeTracker.AuthFailedException e) { //Cached tokens are used without a check, get new ones
+                logger.log(Logger.LogKind.WARNING, e.getMessage());
+                logger.log(Logger.LogKind.INFO, LOG_MSG_REAUTHORIZING);
+                userActors = authManager.authorizeAll();
+                logger.log(Logger.LogKind.INFO, LOG_MSG_TRACKING);
+                runTracker(authManager, createTracker(userActors, taskParameters));
+            }
         } catch (AuthManager.AuthException | Parser.ParsingException |
-                LikeTracker.TrackingException | IOException e) {
+                LikeTracker.TrackingException | IOException | IllegalArgumentException e) {
             logger.log(Logger.LogKind.ERROR, e.getMessage()); //All kinds of exceptions fall there to be logged
+        } finally {
+            if (metricsServer != null)
+                metricsServer.close();
+            logger.stopAsync(); //Write the rest of the log buffer
         }
     }
+
+    /**
+     * Run a like tracker, then make the auth manager forget the tokens the API has rejected
+     * @param authManager Auth manager the tokens have been obtained from
+     * @param likeTracker Like tracker
+     * @throws LikeTracker.TrackingException Exception that is thrown during tracking
+     */
+    private static void runTracker(AuthManager authManager, LikeTracker likeTracker) throws LikeTracker.TrackingException {
+        try {
+            likeTracker.run();
+        } finally {
+            for (UserActor rejected : likeTracker.getRejectedUsers())
+                authManager.invalidate(rejected);
+        }
+    }
+
+    /**
+     * Create the auth manager of the mode set in the authorization config
+     * @param authParameters Parameters obtained from the authorization config
+     * @return Loopback auth manager for the headless mode (browser auth manager otherwise)
+     */
+    private static AuthManager createAuthManager(Parser.ParsingResult authParameters) {
+        if (AUTH_MODE_LOOPBACK.equalsIgnoreCase(authParameters.get(AuthConfigParser.AUTH_MODE_LABEL)))
+            return new LoopbackAuthManager(authParameters);
+        return new BrowserAuthManager(authParameters);
+    }
+
+    /**
+     * Create a like tracker for the tasks described by the task config
+     * @param userActors Authorized users
+     * @param taskParameters Parameters obtained from the task config
+     * @return Like tracker of either the task list, which is parsed while it is tracked,
+     * or a single task from the config itself
+     */
+    private static LikeTracker createTracker(List<UserActor> userActors, Parser.ParsingResult taskParameters) {
+        if (!taskParameters.contains(TaskConfigParser.TASK_LIST_LABEL))
+            return new LikeTracker(userActors, taskParameters, Collections.singletonList(taskParameters));
+        return new LikeTracker(userActors, taskParameters, Paths.get(taskParameters.get(TaskConfigParser.TASK_LIST_LABEL)));
+    }
 }
@@ -0,0 +1,232 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.exceptions.ApiAuthException;
+import com.vk.api.sdk.exceptions.ApiException;
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of user tokens the requests are spread across, each with its own rate limit.
+ * A request is given the token whose next permit comes first. A token is taken out of rotation
+ * for a while when the API throttles it, and for good when the API rejects it.
+ */
+public class ActorPool {
+    private static final int ERROR_TOO_MANY = 6; //Too many requests per second
+    private static final int ERROR_FLOOD = 9; //Flood control
+    private static final int ERROR_RATE_LIMIT = 29; //Daily limit of a method has been reached
+    private static final long PAUSE_TOO_MANY = TimeUnit.SECONDS.toNanos(1);
+    private static final long PAUSE_FLOOD = TimeUnit.MINUTES.toNanos(10);
+    private static final String FORMAT_MEMBER = "Token of id%d: %d requests, %d throttled, %s";
+    private static final String STATE_ACTIVE = "active";
+    private static final String STATE_PAUSED = "paused for %d s";
+    private static final String STATE_REJECTED = "rejected";
+    private static final String ERROR_NO_TOKENS = "Every token has been rejected";
+
+    /**
+     * Token of the pool with its rate limit and usage
+     */
+    static class Member {
+        private final UserActor actor; //User the token belongs to
+        final RateLimiter limiter; //Limiter of the request rate of the token
+        private final AtomicLong requests; //Number of requests made with the token
+        private final AtomicLong throttles; //Number of times the token has been throttled
+        private volatile long pausedUntil; //Time in nanoseconds the token is out of rotation until
+        private volatile boolean rejected; //Has the API rejected the token?
+
+        Member(UserActor actor, RateLimiter limiter) {
+            this.actor = actor;
+            this.limiter = limiter;
+            this.requests = new AtomicLong();
+            this.throttles = new AtomicLong();
+            this.pausedUntil = System.nanoTime();
+        }
+
+        UserActor getActor() {
+            return actor;
+        }
+
+        long getRequests() {
+            return requests.get();
+        }
+
+        long getThrottles() {
+            return throttles.get();
+        }
+
+        /**
+         * Get the time the next request with the token may be made in
+         * @param now Current time in nanoseconds
+         * @return Time in nanoseconds (0 if the request may be made now)
+         */
+        private long nextFreeIn(long now) {
+            return Math.max(pausedUntil - now, limiter.peek());
+        }
+    }
+
+    /**
+     * Token given to a request
+     */
+    static class Lease {
+        final Member member; //Token of the pool
+        final long delay; //Time in nanoseconds the request should wait for
+
+        Lease(Member member, long delay) {
+            this.member = member;
+            this.delay = delay;
+        }
+    }
+
+    private final List<Member> members; //Tokens of the pool
+
+    /**
+     * Public constructor of the class
+     * @param actors Users whose tokens make up the pool
+     * @param permitsPerSecond Number of requests allowed per second for each token
+     * @param burst Number of requests that may be made at once with a token after a period of silence
+     */
+    public ActorPool(List<UserActor> actors, double permitsPerSecond, int burst) {
+        List<Member> members = new ArrayList<>(actors.size());
+        for (UserActor actor : actors)
+            members.add(new Member(actor, new RateLimiter(permitsPerSecond, burst)));
+        this.members = Collections.unmodifiableList(members);
+    }
+
+    /**
+     * Get the user queries are built with, its token is replaced with the token given to the request
+     * @return First user of the pool
+     */
+    public UserActor getPrimary() {
+        return members.get(0).actor;
+    }
+
+    /**
+     * Get the users whose tokens the API has rejected
+     * @return Rejected users
+     */
+    public List<UserActor> getRejected() {
+        List<UserActor> rejected = new ArrayList<>();
+        for (Member member : members)
+            if (member.rejected)
+                rejected.add(member.actor);
+        return rejected;
+    }
+
+    /**
+     * Get the number of tokens in the pool
+     * @return Number of tokens
+     */
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Give a request the token whose next permit comes first, and reserve the permit
+     * @return Token and the time the request should wait for
+     * @throws ApiAuthException Exception that is thrown if every token has been rejected
+     */
+    Lease acquire() throws ApiAuthException {
+        long now = System.nanoTime();
+        Member best = null;
+        long bestDelay = Long.MAX_VALUE;
+        for (Member member : members) {
+            if (member.rejected)
+                continue;
+            long delay = member.nextFreeIn(now);
+            if (delay < bestDelay) {
+                best = member;
+                bestDelay = delay;
+            }
+            if (delay <= 0)
+                break;
+        }
+        if (best == null)
+            throw new ApiAuthException(ERROR_NO_TOKENS);
+        best.requests.incrementAndGet();
+        return new Lease(best, Math.max(best.pausedUntil - now, best.limiter.reserve()));
+    }
+
+    /**
+     * Take a token out of rotation if the error of its request says so
+     * @param member Token the request has been made with
+     * @param error Error of the request
+     * @return True if the request may be retried with another token (False otherwise)
+     */
+    boolean onError(Member member, Throwable error) {
+        if (error instanceof ApiAuthException) {
+            member.rejected = true;
+            return true;
+        }
+        if (!(error instanceof ApiException) || ((ApiException) error).getCode() == null)
+            return false;
+        switch (((ApiException) error).getCode()) {
+            case ERROR_TOO_MANY:
+                pause(member, PAUSE_TOO_MANY);
+                return true;
+            case ERROR_FLOOD:
+            case ERROR_RATE_LIMIT:
+                pause(member, PAUSE_FLOOD);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Check whether an error means that the API is overloaded by the requests
+     * @param error Error of a request
+     * @return True if the error is "Too many requests per second" or flood control (False otherwise)
+     */
+    static boolean isThrottle(Throwable error) {
+        return isTooManyRequests(error) || hasCode(error, ERROR_FLOOD);
+    }
+
+    /**
+     * Check whether an error is "Too many requests per second", which passes within a second
+     * @param error Error of a request
+     * @return True if it is (False otherwise)
+     */
+    static boolean isTooManyRequests(Throwable error) {
+        return hasCode(error, ERROR_TOO_MANY);
+    }
+
+    /**
+     * Write the usage of every token to the log
+     */
+    public void report() {
+        long now = System.nanoTime();
+        for (Member member : members) {
+            String state = member.rejected ? STATE_REJECTED : member.pausedUntil > now
+                    ? String.format(STATE_PAUSED, TimeUnit.NANOSECONDS.toSeconds(member.pausedUntil - now))
+                    : STATE_ACTIVE;
+            Logger.getInstance().log(Logger.LogKind.INFO, String.format(FORMAT_MEMBER,
+                    member.actor.getId(), member.getRequests(), member.getThrottles(), state));
+        }
+    }
+
+    /**
+     * Check the code of an API error
+     * @param error Error of a request
+     * @param code Error code
+     * @return True if the error is an API error with the code (False otherwise)
+     */
+    private static boolean hasCode(Throwable error, int code) {
+        return error instanceof ApiException && ((ApiException) error).getCode() != null
+                && ((ApiException) error).getCode() == code;
+    }
+
+    /**
+     * Take a token out of rotation for a while
+     * @param member Throttled token
+     * @param pause Time in nanoseconds
+     */
+    private static void pause(Member member, long pause) {
+        member.throttles.incrementAndGet();
+        member.pausedUntil = Math.max(member.pausedUntil, System.nanoTime() + pause);
+    }
+}
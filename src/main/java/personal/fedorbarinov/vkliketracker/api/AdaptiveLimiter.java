@@ -0,0 +1,175 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.metrics.AdaptiveLimiterMXBean;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limit of the API calls in flight that adapts to throttling: additive increase, multiplicative decrease.
+ * While the responses are clean and the limit is used up, it grows by one per limit's worth of responses.
+ * A throttled response cuts it by a factor, at most once per round trip: the throttles of the calls
+ * sent before the last cut come from the same overload and don't cut it again.
+ * So the limit settles just under the highest concurrency the API sustains.
+ * The calls over the limit wait in a queue without holding a thread. They are made by one thread at a time:
+ * a call that fails at once releases its slot from inside the drain, which only asks the draining thread to go on,
+ * so a long queue of such calls doesn't grow the stack.
+ */
+public class AdaptiveLimiter implements AdaptiveLimiterMXBean {
+    public static final int DEFAULT_INITIAL_LIMIT = 8;
+
+    private static final int MIN_LIMIT = 1;
+    private static final double DECREASE_FACTOR = 0.7; //Share of the limit kept after a throttle
+    private static final String FORMAT_REPORT = "Concurrency limit: %d (%d in flight, %d queued, %d cuts, %d retries)";
+
+    /**
+     * Outcome of a call as far as the limit is concerned
+     */
+    public enum Outcome {
+        SUCCESS, //The API has answered, the limit may grow
+        THROTTLED, //The API is overloaded, the limit is cut
+        FAILED //Any other error, the limit stays
+    }
+
+    private final int maxLimit; //The limit never grows beyond it
+    private final Queue<Runnable> queued; //Calls waiting for room under the limit
+    private final AtomicInteger inFlight; //Number of calls in flight
+    private final AtomicInteger drainRequests; //Requests to drain the queue, the thread that makes the first one drains
+    private final AtomicLong decreases; //Number of cuts of the limit
+    private final AtomicLong retries; //Number of calls retried after a backoff
+    private volatile double limit; //Fractional, so that it can grow by less than one call at a time
+    private long lastDecrease; //Time in nanoseconds of the last cut
+
+    /**
+     * Public constructor of the class
+     * @param initialLimit Limit the calls start with
+     * @param maxLimit The limit never grows beyond it
+     */
+    public AdaptiveLimiter(int initialLimit, int maxLimit) {
+        this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+        this.queued = new ConcurrentLinkedQueue<>();
+        this.inFlight = new AtomicInteger();
+        this.drainRequests = new AtomicInteger();
+        this.decreases = new AtomicLong();
+        this.retries = new AtomicLong();
+        this.limit = Math.max(MIN_LIMIT, Math.min(this.maxLimit, initialLimit));
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Make a call once there is room under the limit, the call must release its slot when it finishes
+     * @param call The call
+     */
+    void submit(Runnable call) {
+        queued.add(call);
+        drain();
+    }
+
+    /**
+     * Release the slot of a finished call and adjust the limit to its outcome
+     * @param sentAt Time in nanoseconds the call has taken its slot at
+     * @param outcome Outcome of the call
+     */
+    void release(long sentAt, Outcome outcome) {
+        boolean saturated = inFlight.get() >= (int) limit; //The limit has been used up, it is worth growing
+        adjust(sentAt, outcome, saturated);
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Register a call that is retried after a backoff
+     */
+    void registerRetry() {
+        retries.incrementAndGet();
+    }
+
+    @Override
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getQueued() {
+        return queued.size();
+    }
+
+    @Override
+    public long getDecreases() {
+        return decreases.get();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Write the current limit to the log
+     */
+    public void report() {
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(FORMAT_REPORT,
+                getLimit(), getInFlight(), getQueued(), getDecreases(), getRetries()));
+    }
+
+    /**
+     * Adjust the limit to the outcome of a call
+     * @param sentAt Time in nanoseconds the call has taken its slot at
+     * @param outcome Outcome of the call
+     * @param saturated Has the limit been used up?
+     */
+    private synchronized void adjust(long sentAt, Outcome outcome, boolean saturated) {
+        if (outcome == Outcome.THROTTLED && sentAt - lastDecrease > 0) {
+            limit = Math.max(MIN_LIMIT, limit * DECREASE_FACTOR);
+            lastDecrease = System.nanoTime();
+            decreases.incrementAndGet();
+        } else if (outcome == Outcome.SUCCESS && saturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * Make queued calls while there is room under the limit.
+     * Called whenever a call is queued or a slot is released, so no call is left behind.
+     * If another thread is draining, or this one is (the call being made has finished at once), it is only asked
+     * to look at the queue once more
+     */
+    private void drain() {
+        if (drainRequests.getAndIncrement() > 0)
+            return;
+        int requests = 1;
+        do {
+            while (!queued.isEmpty() && tryAcquire()) {
+                Runnable call = queued.poll();
+                if (call == null) { //Left the queue in the meantime, the slot goes to the next call
+                    inFlight.decrementAndGet();
+                    continue;
+                }
+                call.run();
+            }
+            requests = drainRequests.addAndGet(-requests);
+        } while (requests > 0);
+    }
+
+    /**
+     * Take a slot if there is room under the limit
+     * @return True if the slot has been taken (False otherwise)
+     */
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit)
+                return false;
+            if (inFlight.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+}
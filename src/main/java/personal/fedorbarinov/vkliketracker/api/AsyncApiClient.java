@@ -0,0 +1,352 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.vk.api.sdk.client.AbstractQueryBuilder;
+import com.vk.api.sdk.client.ClientResponse;
+import com.vk.api.sdk.client.VkApiClient;
+import com.vk.api.sdk.exceptions.ApiAuthException;
+import com.vk.api.sdk.exceptions.ApiException;
+import com.vk.api.sdk.exceptions.ClientException;
+import com.vk.api.sdk.exceptions.ExceptionMapper;
+import com.vk.api.sdk.objects.base.Error;
+import personal.fedorbarinov.vkliketracker.metrics.ApiMetrics;
+import personal.fedorbarinov.vkliketracker.metrics.MethodMetrics;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Type;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls VK API methods without blocking a thread.
+ * Queries are built with the builders of VkApiClient and sent through the shared AsyncTransport.
+ * Every request is made with a token of the actor pool: a call that has to wait for the rate limit of its token
+ * waits on a timer, and a call throttled or rejected for its token is retried with another token.
+ * A call that has failed with every token (throttled, an internal error of the API or a network error)
+ * is retried a few times after a backoff with full jitter, so the retries of many calls don't come at once.
+ * The number of calls in flight is kept under the adaptive limit, if there is one.
+ * Responses are handled on the given executor, so that the I/O threads only move bytes.
+ */
+public class AsyncApiClient implements AutoCloseable {
+    private static final String FIELD_RESPONSE = "response";
+    private static final String FIELD_ERROR = "error";
+    private static final String ERROR_BAD_RESPONSE = "Bad API response";
+    private static final String ERROR_HTTP_STATUS = "HTTP status %d";
+    private static final String ERROR_CLOSED = "The API client has been closed";
+    private static final String PARAM_ACCESS_TOKEN = "access_token";
+    private static final int HTTP_OK = 200;
+    private static final int ERROR_INTERNAL = 10; //Internal server error of the API
+    private static final int MAX_RETRIES = 5;
+    private static final long BASE_BACKOFF = TimeUnit.MILLISECONDS.toNanos(100); //Backoff cap of the first retry
+    private static final long MAX_BACKOFF = TimeUnit.SECONDS.toNanos(5); //The backoff cap doubles up to it
+
+    private final VkApiClient vkClient; //VK client instance, builds the queries
+    private final AsyncTransport transport; //Shared non-blocking transport
+    private final ActorPool pool; //Tokens the requests are spread across
+    private final AdaptiveLimiter limiter; //Limit of the calls in flight (null if only the transport limits them)
+    private final Executor executor; //Executor the responses are handled on
+    private final ScheduledExecutorService timer; //Sends the calls that wait for the rate limit or a backoff
+    private final Set<DelayedSend> delayed; //Calls scheduled on the timer that haven't been sent yet
+
+    /**
+     * Call waiting on the timer. Either it is sent, or it is dropped once the client is closed, never both
+     */
+    private class DelayedSend implements Runnable {
+        private final Runnable send;
+        private final Runnable drop; //Fails the call, so that nobody waits for it forever
+
+        DelayedSend(Runnable send, Runnable drop) {
+            this.send = send;
+            this.drop = drop;
+        }
+
+        @Override
+        public void run() {
+            if (delayed.remove(this))
+                send.run();
+        }
+
+        /**
+         * Fail the call unless it has been sent already
+         */
+        void drop() {
+            if (delayed.remove(this))
+                drop.run();
+        }
+    }
+
+    /**
+     * Public constructor of the class
+     * @param vkClient VK client instance
+     * @param transport Shared non-blocking transport
+     * @param pool Tokens the requests are spread across
+     * @param executor Executor the responses are handled on
+     */
+    public AsyncApiClient(VkApiClient vkClient, AsyncTransport transport, ActorPool pool, Executor executor) {
+        this(vkClient, transport, pool, null, executor);
+    }
+
+    /**
+     * Constructor of the class for calls kept under an adaptive limit
+     * @param vkClient VK client instance
+     * @param transport Shared non-blocking transport
+     * @param pool Tokens the requests are spread across
+     * @param limiter Limit of the calls in flight (null if only the transport limits them)
+     * @param executor Executor the responses are handled on
+     */
+    public AsyncApiClient(VkApiClient vkClient, AsyncTransport transport, ActorPool pool, AdaptiveLimiter limiter,
+                          Executor executor) {
+        this.vkClient = vkClient;
+        this.transport = transport;
+        this.pool = pool;
+        this.limiter = limiter;
+        this.executor = executor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.delayed = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Get the VK client the queries are built with
+     * @return VK client instance
+     */
+    public VkApiClient getVkClient() {
+        return vkClient;
+    }
+
+    /**
+     * Call an API method and parse its response
+     * @param query Query built with VkApiClient
+     * @param responseType Type of the response (a class or a generic type)
+     * @param <T> Type of the response
+     * @return Future response (completed with ApiException or ClientException on failure)
+     */
+    public <T> CompletableFuture<T> call(AbstractQueryBuilder<?, T> query, Type responseType) {
+        return callRaw(query).thenApply(json -> {
+            try {
+                return vkClient.getGson().<T>fromJson(json.get(FIELD_RESPONSE), responseType);
+            } catch (JsonParseException e) {
+                throw new CompletionException(new ClientException(ERROR_BAD_RESPONSE));
+            }
+        });
+    }
+
+    /**
+     * Call an API method and return its whole response object
+     * @param query Query built with VkApiClient
+     * @return Future response object with the "response" field and the fields next to it
+     * (completed with ApiException if the response has the "error" field, or with ClientException)
+     */
+    public CompletableFuture<JsonObject> callRaw(AbstractQueryBuilder<?, ?> query) {
+        CompletableFuture<JsonObject> result = new CompletableFuture<>();
+        MethodMetrics metrics = ApiMetrics.getInstance().forMethod(query.getMethod());
+        long start = metrics.start(); //The call is timed with its waits for the rate limit and its retries
+        result.whenComplete((json, e) -> metrics.finish(start, e));
+        send(vkClient.getApiEndpoint() + query.getMethod(), new HashMap<>(query.build()), pool.size(), 0, result);
+        return result;
+    }
+
+    /**
+     * Stop the rate limit timer, the calls waiting for it fail
+     */
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        for (DelayedSend send : delayed)
+            send.drop();
+    }
+
+    /**
+     * Send a request once there is room under the limit of the calls in flight
+     * @param url Method URL
+     * @param params Query parameters, the token is replaced with the given one
+     * @param attempts Number of tokens the request may be tried with
+     * @param retries Number of times the request has been retried after a backoff
+     * @param result Future response object
+     */
+    private void send(String url, Map<String, String> params, int attempts, int retries,
+                      CompletableFuture<JsonObject> result) {
+        if (limiter == null)
+            sendWithToken(url, params, attempts, retries, result);
+        else
+            limiter.submit(() -> sendWithToken(url, params, attempts, retries, result));
+    }
+
+    /**
+     * Send a request with the token whose next permit comes first
+     * @param url Method URL
+     * @param params Query parameters, the token is replaced with the given one
+     * @param attempts Number of tokens the request may be tried with
+     * @param retries Number of times the request has been retried after a backoff
+     * @param result Future response object
+     */
+    private void sendWithToken(String url, Map<String, String> params, int attempts, int retries,
+                               CompletableFuture<JsonObject> result) {
+        long sentAt = System.nanoTime();
+        ActorPool.Lease lease;
+        try {
+            lease = pool.acquire();
+        } catch (ApiAuthException e) {
+            if (limiter != null)
+                limiter.release(sentAt, AdaptiveLimiter.Outcome.FAILED);
+            result.completeExceptionally(e);
+            return;
+        }
+        params.put(PARAM_ACCESS_TOKEN, lease.member.getActor().getAccessToken());
+        String body = encode(params);
+        CompletableFuture<ClientResponse> response;
+        if (lease.delay <= 0) {
+            response = transport.postAsync(url, body);
+        } else {
+            response = new CompletableFuture<>();
+            RateLimiter tokenLimiter = lease.member.limiter;
+            tokenLimiter.startWaiting();
+            CompletableFuture<ClientResponse> waiting = response;
+            schedule(() -> {
+                tokenLimiter.stopWaiting();
+                transport.postAsync(url, body).whenComplete((sent, e) -> {
+                    if (e != null)
+                        waiting.completeExceptionally(e);
+                    else
+                        waiting.complete(sent);
+                });
+            }, () -> { //The response executor may be gone too, so the call is failed right here
+                tokenLimiter.stopWaiting();
+                if (limiter != null)
+                    limiter.release(sentAt, AdaptiveLimiter.Outcome.FAILED);
+                result.completeExceptionally(new ClientException(ERROR_CLOSED));
+            }, lease.delay);
+        }
+        response.handleAsync((sent, e) -> {
+            if (e != null)
+                throw new CompletionException(new ClientException(unwrap(e).getLocalizedMessage()));
+            return parse(sent);
+        }, executor).whenComplete((json, e) -> {
+            Throwable cause = e == null ? null : unwrap(e);
+            if (limiter != null)
+                limiter.release(sentAt, cause == null ? AdaptiveLimiter.Outcome.SUCCESS
+                        : ActorPool.isThrottle(cause) ? AdaptiveLimiter.Outcome.THROTTLED : AdaptiveLimiter.Outcome.FAILED);
+            if (cause == null)
+                result.complete(json);
+            else if (pool.onError(lease.member, cause) && attempts > 1) //Throttled or rejected, try another token
+                send(url, params, attempts - 1, retries, result);
+            else if (isRetryable(cause) && retries < MAX_RETRIES)
+                retry(url, params, retries + 1, cause, result);
+            else
+                result.completeExceptionally(cause);
+        });
+    }
+
+    /**
+     * Retry a failed request after a random backoff up to a cap that doubles with every retry
+     * @param url Method URL
+     * @param params Query parameters
+     * @param retries Number of the retry, from 1
+     * @param error Error of the last attempt, the request fails with it if it can't be retried
+     * @param result Future response object
+     */
+    private void retry(String url, Map<String, String> params, int retries, Throwable error,
+                       CompletableFuture<JsonObject> result) {
+        long cap = Math.min(MAX_BACKOFF, BASE_BACKOFF << (retries - 1));
+        if (limiter != null)
+            limiter.registerRetry();
+        schedule(() -> send(url, params, pool.size(), retries, result), () -> result.completeExceptionally(error),
+                ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    /**
+     * Send a call after a delay, or fail it if the client is closed before that
+     * @param send Sends the call
+     * @param drop Fails the call
+     * @param delay Delay in nanoseconds
+     */
+    private void schedule(Runnable send, Runnable drop, long delay) {
+        DelayedSend task = new DelayedSend(send, drop);
+        delayed.add(task);
+        try {
+            timer.schedule(task, delay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) { //The client has been closed
+            task.drop();
+        }
+    }
+
+    /**
+     * Check whether a request that has failed with every token may succeed if it is sent again later
+     * @param error Error of the request
+     * @return True if the error is a throttle, an internal error of the API or a network error (False otherwise)
+     */
+    private static boolean isRetryable(Throwable error) {
+        if (error instanceof ClientException || ActorPool.isTooManyRequests(error))
+            return true;
+        return error instanceof ApiException && ((ApiException) error).getCode() != null
+                && ((ApiException) error).getCode() == ERROR_INTERNAL;
+    }
+
+    /**
+     * Parse a response, mapping an API error to its exception
+     * @param response HTTP response
+     * @return Response object
+     */
+    private JsonObject parse(ClientResponse response) {
+        if (response.getStatusCode() != HTTP_OK)
+            throw new CompletionException(new ClientException(String.format(ERROR_HTTP_STATUS, response.getStatusCode())));
+        JsonObject json;
+        try {
+            json = new JsonParser().parse(response.getContent()).getAsJsonObject();
+        } catch (JsonParseException | IllegalStateException e) {
+            throw new CompletionException(new ClientException(ERROR_BAD_RESPONSE));
+        }
+        if (json.has(FIELD_ERROR))
+            throw new CompletionException(ExceptionMapper.parseException(
+                    vkClient.getGson().fromJson(json.get(FIELD_ERROR), Error.class)));
+        return json;
+    }
+
+    /**
+     * Encode query parameters as a URL-encoded form
+     * @param params Query parameters
+     * @return Encoded form
+     */
+    private static String encode(Map<String, String> params) {
+        StringBuilder form = new StringBuilder();
+        try {
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                if (param.getValue() == null)
+                    continue;
+                if (form.length() > 0)
+                    form.append('&');
+                form.append(param.getKey()).append('=')
+                        .append(URLEncoder.encode(param.getValue(), StandardCharsets.UTF_8.name()));
+            }
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); //UTF-8 is always supported
+        }
+        return form.toString();
+    }
+
+    /**
+     * Get the cause of an error a future has been completed with
+     * @param error Error, possibly wrapped into CompletionException
+     * @return Cause of the error
+     */
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -0,0 +1,271 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import com.vk.api.sdk.client.ClientResponse;
+import com.vk.api.sdk.client.TransportClient;
+import io.netty.util.HashedWheelTimer;
+import org.asynchttpclient.AsyncCompletionHandler;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.BoundRequestBuilder;
+import org.asynchttpclient.DefaultAsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+import org.asynchttpclient.Response;
+import org.asynchttpclient.request.body.multipart.FilePart;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking HTTP transport with a pool of keep-alive connections.
+ * A few I/O threads serve all the requests. At most maxInFlight requests are sent at once,
+ * the rest wait in a queue without holding a thread. A request in flight holds a connection,
+ * so the limit bounds the size of the pool as well. The blocking TransportClient methods are
+ * provided as well, so that VkApiClient can share the pool.
+ */
+public class AsyncTransport implements TransportClient, AutoCloseable {
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    private static final int IO_THREADS = 2;
+    private static final int CONNECT_TIMEOUT = 10_000; //Milliseconds
+    private static final int REQUEST_TIMEOUT = 60_000; //Milliseconds
+    private static final int IDLE_TIMEOUT = 60_000; //Milliseconds an idle pooled connection is kept
+    private static final String THREAD_NAME = "AsyncTransport";
+    private static final String HEADER_CONTENT_TYPE = "Content-Type";
+    private static final String CONTENT_TYPE_FORM = "application/x-www-form-urlencoded";
+    private static final String FILE_CONTENT_TYPE = "application/octet-stream";
+
+    private static AsyncTransport instance; //Transport shared by all the clients
+
+    /**
+     * Get the shared transport instance, creating it if necessary
+     * @return The instance
+     */
+    public static synchronized AsyncTransport getInstance() {
+        if (instance == null)
+            instance = new AsyncTransport(DEFAULT_MAX_IN_FLIGHT);
+        return instance;
+    }
+
+    private final AsyncHttpClient client;
+    private final Queue<Runnable> queued; //Requests waiting for a free in-flight slot
+    private final AtomicInteger inFlight; //Number of requests sent and not answered yet
+    private volatile int maxInFlight; //Maximal number of requests in flight
+
+    /**
+     * Public constructor of the class
+     * @param maxInFlight Maximal number of requests in flight
+     */
+    public AsyncTransport(int maxInFlight) {
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true); //The pool mustn't keep the application running
+            return thread;
+        };
+        DefaultAsyncHttpClientConfig config = new DefaultAsyncHttpClientConfig.Builder()
+                .setKeepAlive(true)
+                .setPooledConnectionIdleTimeout(IDLE_TIMEOUT)
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setRequestTimeout(REQUEST_TIMEOUT)
+                .setIoThreadsCount(IO_THREADS)
+                .setThreadFactory(threadFactory)
+                .setNettyTimer(new HashedWheelTimer(threadFactory)) //The timeout timer of its own is not a daemon
+                .build();
+        this.client = new DefaultAsyncHttpClient(config);
+        this.queued = new ConcurrentLinkedQueue<>();
+        this.inFlight = new AtomicInteger();
+        setMaxInFlight(maxInFlight);
+    }
+
+    /**
+     * Set the maximal number of requests in flight
+     * @param maxInFlight Maximal number of requests
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+        drain();
+    }
+
+    /**
+     * Get the number of requests sent and not answered yet
+     * @return Number of requests
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the number of requests waiting for a free in-flight slot
+     * @return Number of requests
+     */
+    public int getQueued() {
+        return queued.size();
+    }
+
+    /**
+     * Send a form POST request without blocking
+     * @param url Request URL
+     * @param body URL-encoded form
+     * @return Future response (completed with IOException wrapped into CompletionException on failure)
+     */
+    public CompletableFuture<ClientResponse> postAsync(String url, String body) {
+        return send(client.preparePost(url).setHeader(HEADER_CONTENT_TYPE, CONTENT_TYPE_FORM).setBody(body));
+    }
+
+    @Override
+    public ClientResponse get(String url) throws IOException {
+        return await(send(client.prepareGet(url)));
+    }
+
+    @Override
+    public ClientResponse get(String url, String contentType) throws IOException {
+        return await(send(client.prepareGet(url).setHeader(HEADER_CONTENT_TYPE, contentType)));
+    }
+
+    @Override
+    public ClientResponse post(String url) throws IOException {
+        return await(send(client.preparePost(url)));
+    }
+
+    @Override
+    public ClientResponse post(String url, String body) throws IOException {
+        return await(postAsync(url, body));
+    }
+
+    @Override
+    public ClientResponse post(String url, String body, String contentType) throws IOException {
+        return await(send(client.preparePost(url).setHeader(HEADER_CONTENT_TYPE, contentType).setBody(body)));
+    }
+
+    @Override
+    public ClientResponse post(String url, String fileName, File file) throws IOException {
+        return await(send(client.preparePost(url).addBodyPart(new FilePart(fileName, file, FILE_CONTENT_TYPE))));
+    }
+
+    @Override
+    public ClientResponse delete(String url) throws IOException {
+        return await(send(client.prepareDelete(url)));
+    }
+
+    @Override
+    public ClientResponse delete(String url, String body) throws IOException {
+        return await(send(client.prepareDelete(url).setHeader(HEADER_CONTENT_TYPE, CONTENT_TYPE_FORM).setBody(body)));
+    }
+
+    @Override
+    public ClientResponse delete(String url, String body, String contentType) throws IOException {
+        return await(send(client.prepareDelete(url).setHeader(HEADER_CONTENT_TYPE, contentType).setBody(body)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    /**
+     * Queue a request and send it as soon as there is a free in-flight slot
+     * @param request Prepared request
+     * @return Future response
+     */
+    private CompletableFuture<ClientResponse> send(BoundRequestBuilder request) {
+        CompletableFuture<ClientResponse> future = new CompletableFuture<>();
+        AsyncCompletionHandler<Void> handler = new AsyncCompletionHandler<Void>() {
+            @Override
+            public Void onCompleted(Response response) {
+                release();
+                future.complete(toClientResponse(response));
+                return null;
+            }
+
+            @Override
+            public void onThrowable(Throwable t) {
+                release();
+                future.completeExceptionally(new CompletionException(
+                        t instanceof IOException ? t : new IOException(t.getLocalizedMessage(), t)));
+            }
+        };
+        queued.add(() -> {
+            try {
+                request.execute(handler);
+            } catch (RuntimeException e) { //A malformed request fails before it is sent
+                handler.onThrowable(e);
+            }
+        });
+        drain();
+        return future;
+    }
+
+    /**
+     * Send queued requests while there are free in-flight slots.
+     * Called whenever a request is queued or a slot is released, so no request is left behind.
+     */
+    private void drain() {
+        while (!queued.isEmpty() && tryAcquire()) {
+            Runnable request = queued.poll();
+            if (request == null) { //Another thread has taken it
+                inFlight.decrementAndGet();
+                return;
+            }
+            request.run();
+        }
+    }
+
+    /**
+     * Take an in-flight slot if there is a free one
+     * @return True if the slot has been taken (False otherwise)
+     */
+    private boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= maxInFlight)
+                return false;
+            if (inFlight.compareAndSet(current, current + 1))
+                return true;
+        }
+    }
+
+    /**
+     * Free an in-flight slot and send the next queued request
+     */
+    private void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * Wait for a response
+     * @param future Future response
+     * @return Response
+     * @throws IOException Exception that is thrown if the request has failed
+     */
+    private static ClientResponse await(CompletableFuture<ClientResponse> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Convert a response to the form VkApiClient takes
+     * @param response HTTP response
+     * @return Client response
+     */
+    private static ClientResponse toClientResponse(Response response) {
+        Map<String, String> headers = new HashMap<>();
+        for (Map.Entry<String, String> header : response.getHeaders()) {
+            //VkApiClient looks the content type up in this exact case
+            String name = HEADER_CONTENT_TYPE.equalsIgnoreCase(header.getKey()) ? HEADER_CONTENT_TYPE : header.getKey();
+            headers.put(name, header.getValue());
+        }
+        return new ClientResponse(response.getStatusCode(), response.getResponseBody(), headers);
+    }
+}
@@ -0,0 +1,44 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import com.vk.api.sdk.client.TransportClient;
+import com.vk.api.sdk.client.VkApiClient;
+
+/**
+ * VK client whose API and OAuth base URLs are given explicitly instead of being fixed to vk.com,
+ * so that the app can be pointed at a local stand-in of the API
+ */
+public class ConfigurableVkApiClient extends VkApiClient {
+    private final String apiUrl; //Base URL of the API methods, ends with a slash
+    private final String oauthUrl; //Base URL of the OAuth flows, ends with a slash
+
+    /**
+     * Public constructor of the class
+     * @param transportClient Transport the requests are sent through
+     * @param apiUrl Base URL of the API methods (null to keep the default one)
+     * @param oauthUrl Base URL of the OAuth flows (null to keep the default one)
+     */
+    public ConfigurableVkApiClient(TransportClient transportClient, String apiUrl, String oauthUrl) {
+        super(transportClient);
+        this.apiUrl = apiUrl == null ? super.getApiEndpoint() : withSlash(apiUrl);
+        this.oauthUrl = oauthUrl == null ? super.getOAuthEndpoint() : withSlash(oauthUrl);
+    }
+
+    @Override
+    public String getApiEndpoint() {
+        return apiUrl;
+    }
+
+    @Override
+    public String getOAuthEndpoint() {
+        return oauthUrl;
+    }
+
+    /**
+     * Append a slash to a base URL unless it ends with one, so that a path can be appended to it
+     * @param url Base URL
+     * @return URL ending with a slash
+     */
+    private static String withSlash(String url) {
+        return url.endsWith("/") ? url : url + '/';
+    }
+}
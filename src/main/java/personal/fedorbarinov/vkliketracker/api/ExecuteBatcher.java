@@ -0,0 +1,267 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.exceptions.ApiException;
+import com.vk.api.sdk.exceptions.ClientException;
+import com.vk.api.sdk.exceptions.ExceptionMapper;
+import com.vk.api.sdk.objects.base.Error;
+import com.vk.api.sdk.objects.likes.responses.IsLikedResponse;
+import com.vk.api.sdk.objects.utils.DomainResolved;
+import com.vk.api.sdk.queries.likes.LikesType;
+import personal.fedorbarinov.vkliketracker.metrics.ApiMetrics;
+import personal.fedorbarinov.vkliketracker.metrics.MethodMetrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Packs API calls into VK "execute" requests.
+ * Calls are collected until the batch is full or the linger time passes, then the whole batch
+ * is sent as one VKScript and every result is delivered to the future of its call.
+ */
+public class ExecuteBatcher implements AutoCloseable {
+    public static final int MAX_BATCH_SIZE = 25; //VK runs at most 25 API calls in one "execute"
+
+    private static final String METHOD_IS_LIKED = "likes.isLiked";
+    private static final String METHOD_RESOLVE_SCREEN_NAME = "utils.resolveScreenName";
+    private static final String FIELD_RESPONSE = "response";
+    private static final String FIELD_EXECUTE_ERRORS = "execute_errors";
+    private static final String SCRIPT_PREFIX = "return [";
+    private static final String SCRIPT_SUFFIX = "];";
+    private static final String SCRIPT_CALL_FORMAT = "API.%s(%s)";
+    private static final String ERROR_BAD_RESPONSE = "Bad execute response";
+    private static final String ERROR_CALL_FAILED = "Call failed inside execute";
+    private static final int ERROR_CODE_UNKNOWN = 1;
+    private static final String METRICS_PREFIX = "execute:"; //Calls made inside "execute" are timed apart
+
+    /**
+     * Pending API call
+     * @param <T> Type of the call result
+     */
+    private static class Call<T> {
+        final String method;
+        final JsonObject params;
+        final Class<T> responseClass;
+        final CompletableFuture<T> future;
+
+        Call(String method, JsonObject params, Class<T> responseClass) {
+            this.method = method;
+            this.params = params;
+            this.responseClass = responseClass;
+            this.future = new CompletableFuture<>();
+        }
+
+        void complete(Gson gson, JsonElement response) {
+            try {
+                //An empty array stands for "nothing found" (a.e. unknown screen name)
+                if (response.isJsonArray() && response.getAsJsonArray().size() == 0)
+                    future.complete(null);
+                else
+                    future.complete(gson.fromJson(response, responseClass));
+            } catch (JsonParseException e) {
+                future.completeExceptionally(new ClientException(e.getLocalizedMessage()));
+            }
+        }
+    }
+
+    private final AsyncApiClient api; //Sends the "execute" requests
+    private final UserActor user; //Current authorized user
+    private final int batchSize; //Number of calls in a full batch
+    private final long linger; //Time in milliseconds a batch waits for more calls
+    private final ScheduledExecutorService timer; //Flushes batches after the linger time
+    private final Object lock = new Object();
+
+    private List<Call<?>> pending; //Calls of the batch being collected
+    private ScheduledFuture<?> lingerTask; //Flush of the batch being collected
+
+    /**
+     * Public constructor of the class
+     * @param api Sends the "execute" requests
+     * @param user Current authorized user
+     * @param batchSize Number of calls in a full batch (at most 25)
+     * @param linger Time in milliseconds a batch waits for more calls
+     */
+    public ExecuteBatcher(AsyncApiClient api, UserActor user, int batchSize, long linger) {
+        this.api = api;
+        this.user = user;
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.linger = linger;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.pending = new ArrayList<>(this.batchSize);
+    }
+
+    /**
+     * Check whether a user has liked a post
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param userId ID of the user
+     * @return Future result of likes.isLiked
+     */
+    public CompletableFuture<IsLikedResponse> isLiked(int ownerId, int postId, int userId) {
+        JsonObject params = new JsonObject();
+        params.addProperty("type", LikesType.POST.getValue());
+        params.addProperty("owner_id", ownerId);
+        params.addProperty("item_id", postId);
+        params.addProperty("user_id", userId);
+        return submit(new Call<>(METHOD_IS_LIKED, params, IsLikedResponse.class));
+    }
+
+    /**
+     * Resolve a screen name
+     * @param screenName Screen name of a user or a community
+     * @return Future result of utils.resolveScreenName (null if the name isn't found)
+     */
+    public CompletableFuture<DomainResolved> resolveScreenName(String screenName) {
+        JsonObject params = new JsonObject();
+        params.addProperty("screen_name", screenName);
+        return submit(new Call<>(METHOD_RESOLVE_SCREEN_NAME, params, DomainResolved.class));
+    }
+
+    /**
+     * Send the pending calls and stop the linger timer
+     */
+    @Override
+    public void close() {
+        flushPending();
+        timer.shutdownNow();
+    }
+
+    /**
+     * Add a call to the batch being collected
+     * @param call API call
+     * @param <T> Type of the call result
+     * @return Future result of the call
+     */
+    private <T> CompletableFuture<T> submit(Call<T> call) {
+        MethodMetrics metrics = ApiMetrics.getInstance().forMethod(METRICS_PREFIX + call.method);
+        long start = metrics.start(); //The call is timed with the wait for its batch
+        call.future.whenComplete((result, e) -> metrics.finish(start, e));
+        List<Call<?>> full = null;
+        synchronized (lock) {
+            pending.add(call);
+            if (pending.size() >= batchSize) {
+                full = pending;
+                pending = new ArrayList<>(batchSize);
+                if (lingerTask != null)
+                    lingerTask.cancel(false);
+                lingerTask = null;
+            } else if (pending.size() == 1)
+                lingerTask = timer.schedule(this::flushPending, linger, TimeUnit.MILLISECONDS);
+        }
+        if (full != null) {
+            List<Call<?>> batch = full;
+            send(batch);
+        }
+        return call.future;
+    }
+
+    /**
+     * Send the batch being collected regardless of its size
+     */
+    private void flushPending() {
+        List<Call<?>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty())
+                return;
+            batch = pending;
+            pending = new ArrayList<>(batchSize);
+            lingerTask = null;
+        }
+        send(batch);
+    }
+
+    /**
+     * Send a batch as one "execute" request, the results are delivered when the response comes
+     * @param batch Calls of the batch
+     */
+    private void send(List<Call<?>> batch) {
+        api.callRaw(api.getVkClient().execute().code(user, buildScript(batch))).whenComplete((json, error) -> {
+            if (error != null) { //The whole request has failed
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                for (Call<?> call : batch)
+                    call.future.completeExceptionally(cause);
+                return;
+            }
+            try {
+                deliver(batch, json);
+            } catch (ClientException e) {
+                for (Call<?> call : batch)
+                    call.future.completeExceptionally(e);
+            } catch (JsonParseException | IllegalStateException | ClassCastException e) {
+                ClientException exception = new ClientException(ERROR_BAD_RESPONSE);
+                for (Call<?> call : batch)
+                    call.future.completeExceptionally(exception);
+            }
+        });
+    }
+
+    /**
+     * Deliver the results of an "execute" request to the calls of a batch
+     * @param batch Calls of the batch
+     * @param json Response object
+     * @throws ClientException Exception that is thrown if the response doesn't match the batch
+     */
+    private void deliver(List<Call<?>> batch, JsonObject json) throws ClientException {
+        Gson gson = api.getVkClient().getGson();
+        JsonArray response = json.getAsJsonArray(FIELD_RESPONSE);
+        if (response == null || response.size() != batch.size())
+            throw new ClientException(ERROR_BAD_RESPONSE);
+        //Failed calls return false, their errors are listed in the same order
+        Iterator<JsonElement> errors = json.has(FIELD_EXECUTE_ERRORS)
+                ? json.getAsJsonArray(FIELD_EXECUTE_ERRORS).iterator()
+                : new JsonArray().iterator();
+        for (int i = 0; i < batch.size(); i++) {
+            JsonElement element = response.get(i);
+            Call<?> call = batch.get(i);
+            if (isFailure(element))
+                call.future.completeExceptionally(errors.hasNext()
+                        ? ExceptionMapper.parseException(gson.fromJson(errors.next(), Error.class))
+                        : new ApiException(ERROR_CODE_UNKNOWN, ERROR_CALL_FAILED));
+            else
+                call.complete(gson, element);
+        }
+    }
+
+    /**
+     * Build VKScript running every call of a batch
+     * @param batch Calls of the batch
+     * @return Script returning an array of call results
+     */
+    private static String buildScript(List<Call<?>> batch) {
+        StringBuilder script = new StringBuilder(SCRIPT_PREFIX);
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0)
+                script.append(',');
+            Call<?> call = batch.get(i);
+            script.append(String.format(SCRIPT_CALL_FORMAT, call.method, call.params));
+        }
+        return script.append(SCRIPT_SUFFIX).toString();
+    }
+
+    /**
+     * Check whether a result of a call inside "execute" stands for a failure
+     * @param element Result of the call
+     * @return True if the call has failed (False otherwise)
+     */
+    private static boolean isFailure(JsonElement element) {
+        return element.isJsonNull()
+                || (element.isJsonPrimitive() && element.getAsJsonPrimitive().isBoolean() && !element.getAsBoolean());
+    }
+}
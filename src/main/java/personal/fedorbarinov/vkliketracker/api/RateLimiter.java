@@ -0,0 +1,92 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Token bucket limiting the rate of API requests.
+ * Permits are handed out evenly: a caller that finds the bucket empty reserves the next free
+ * permit and waits until its time comes (sleeping or on a timer), so the callers are served in order.
+ */
+public class RateLimiter {
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    private final double interval; //Time in nanoseconds between two permits
+    private final double capacity; //Maximal number of stored permits
+    private final AtomicInteger waiting; //Number of callers sleeping for a permit
+
+    private double permits; //Stored permits, negative when permits are reserved ahead
+    private long lastRefill; //Time the permits have been refilled at
+
+    /**
+     * Public constructor of the class
+     * @param permitsPerSecond Number of requests allowed per second
+     * @param burst Number of requests that may be made at once after a period of silence
+     */
+    public RateLimiter(double permitsPerSecond, int burst) {
+        this.interval = NANOS_IN_SECOND / permitsPerSecond;
+        this.capacity = Math.max(1, burst);
+        this.waiting = new AtomicInteger();
+        this.permits = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a permit, waiting for it if necessary
+     * @throws InterruptedException The thread has been interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long delay = reserve();
+        if (delay <= 0)
+            return;
+        waiting.incrementAndGet();
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reserve a permit without waiting for it
+     * @return Time in nanoseconds the caller should wait before the request (0 if the permit is available now)
+     */
+    public synchronized long reserve() {
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - lastRefill) / interval);
+        lastRefill = now;
+        permits -= 1;
+        return permits >= 0 ? 0 : (long) (-permits * interval);
+    }
+
+    /**
+     * Get the time the caller of reserve() would have to wait, without reserving a permit
+     * @return Time in nanoseconds (0 if a permit is available now)
+     */
+    public synchronized long peek() {
+        double available = Math.min(capacity, permits + (System.nanoTime() - lastRefill) / interval);
+        return available >= 1 ? 0 : (long) ((1 - available) * interval);
+    }
+
+    /**
+     * Register a caller that waits for a reserved permit without sleeping
+     */
+    void startWaiting() {
+        waiting.incrementAndGet();
+    }
+
+    /**
+     * Unregister a caller that has waited for a reserved permit
+     */
+    void stopWaiting() {
+        waiting.decrementAndGet();
+    }
+
+    /**
+     * Get the number of callers waiting for a permit
+     * @return Number of waiting callers
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+}
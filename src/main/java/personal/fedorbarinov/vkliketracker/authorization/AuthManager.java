@@ -2,6 +2,9 @@ package personal.fedorbarinov.vkliketracker.authorization;
 
 import com.vk.api.sdk.client.actors.UserActor;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * VK authorization manager
  */
@@ -21,4 +24,20 @@ public interface AuthManager {
      * @throws AuthException Exception that is thrown during authorization
      */
     UserActor authorize() throws AuthException;
+
+    /**
+     * Authorize every account the app may use, so that the requests can be spread across their tokens
+     * @return UserActor objects of the accounts (at least one)
+     * @throws AuthException Exception that is thrown during authorization
+     */
+    default List<UserActor> authorizeAll() throws AuthException {
+        return Collections.singletonList(authorize());
+    }
+
+    /**
+     * Forget a token the API has rejected, so that the next authorization doesn't return it again
+     * @param user UserActor object holding the rejected token
+     */
+    default void invalidate(UserActor user) {
+    }
 }
@@ -0,0 +1,280 @@
+package personal.fedorbarinov.vkliketracker.authorization;
+
+import com.vk.api.sdk.client.VkApiClient;
+import com.vk.api.sdk.client.actors.ServiceActor;
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.exceptions.ApiException;
+import com.vk.api.sdk.exceptions.ClientException;
+import com.vk.api.sdk.exceptions.OAuthException;
+import com.vk.api.sdk.objects.UserAuthResponse;
+import com.vk.api.sdk.objects.secure.TokenChecked;
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.api.AsyncTransport;
+import personal.fedorbarinov.vkliketracker.api.ConfigurableVkApiClient;
+import personal.fedorbarinov.vkliketracker.metrics.ApiMetrics;
+import personal.fedorbarinov.vkliketracker.parsing.AuthConfigParser;
+import personal.fedorbarinov.vkliketracker.parsing.Parser;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authorization with the authorization code flow: the user logs in at the authorization URI and is redirected
+ * with a code, which is exchanged for a token. The ways the code is obtained are up to the subclasses.
+ * The tokens are cached and validated in the background if the cache is allowed.
+ */
+public abstract class CodeFlowAuthManager implements AuthManager {
+    //Parameters needed in authorization request
+    private static final String AUTH_FORMAT_URI = "%sauthorize?client_id=%d&display=%s&redirect_uri=%s&scope=%s&response_type=%s&v=%s";
+    private static final String RESPONSE_TYPE = "code";
+    private static final String DISPLAY = "page";
+    private static final String API_VERSION = "5.85";
+    private static final String PERMISSIONS = "messages";
+    //Names the blocking calls are registered in the metrics under
+    private static final String METRICS_CODE_FLOW = "oauth.userAuthorizationCodeFlow";
+    private static final String METRICS_CREDENTIALS_FLOW = "oauth.serviceClientCredentialsFlow";
+    private static final String METRICS_CHECK_TOKEN = "secure.checkToken";
+
+    private static final String EXCEPTION_PREFIX = "[Authorization]:"; //Prefix for an exception message
+    private static final long VALIDATION_INTERVAL = TimeUnit.DAYS.toMillis(1); //Time a validated token is trusted
+    private static final String VALIDATION_THREAD_NAME = "TokenValidation";
+
+    private static final String LOG_MSG_CACHE_NEW = "Auth token has been cached";
+    private static final String LOG_MSG_CACHE_USE = "Authorized with cached token";
+    private static final String LOG_MSG_CACHE_VALID = "Cached token of id%d has been validated";
+    private static final String LOG_MSG_CACHE_INVALID = "Cached token of id%d is invalid, it won't be used again";
+    private static final String LOG_MSG_CACHE_REJECTED = "Token of id%d has been rejected by the API, it won't be used again";
+    private static final String LOG_MSG_ACCOUNT = "Authorizing account %d of %d, log in with an account that isn't authorized yet";
+    private static final String LOG_MSG_ACCOUNTS = "Authorized %d account(s)";
+    private static final String LOG_MSG_CACHE_NOT_VALIDATED = "Cached token of id%d couldn't be validated: %s";
+
+    private Integer appId; //Current VK app id
+    private String appSecret; //Secret key of the app
+    private String redirectURI; //URI we're being redirected to after passing credentials
+    private String apiVersion; //Current VK API version
+    private String permissions; //Permissions we need for the app
+    private Set<String> scopes; //Scopes a cached token must have to be used
+    private TokenStore tokenStore; //Tokens obtained earlier
+
+    private VkApiClient vkClient; //VkApi client instance
+    private boolean validation; //Is "need_validation" error is being handled right now?
+    private boolean isAuthCacheUsed; //Is caching token allowed?
+    private int accounts; //Number of accounts whose tokens the requests are spread across
+
+    /**
+     * Constructor of the class
+     * @param parameters Parameters that were obtained from the corresponding config file
+     */
+    protected CodeFlowAuthManager(Parser.ParsingResult parameters) {
+        this.appId = Integer.parseInt(parameters.get(AuthConfigParser.APP_ID_LABEL));
+        this.appSecret = parameters.get(AuthConfigParser.APP_SECRET_LABEL);
+        this.redirectURI = parameters.get(AuthConfigParser.REDIRECT_LABEL);
+        this.apiVersion = API_VERSION;
+        this.permissions = PERMISSIONS;
+        this.scopes = TokenStore.parseScopes(permissions);
+        this.tokenStore = new TokenStore(Paths.get(parameters.get(AuthConfigParser.CACHE_PATH_LABEL)), scopes);
+        this.vkClient = new ConfigurableVkApiClient(AsyncTransport.getInstance(),
+                parameters.get(AuthConfigParser.API_URL_LABEL), parameters.get(AuthConfigParser.OAUTH_URL_LABEL));
+        this.validation = false;
+        this.isAuthCacheUsed = parameters.contains(AuthConfigParser.USE_CACHED_TOKEN_LABEL);
+        this.accounts = Math.max(1, Integer.parseInt(parameters.get(AuthConfigParser.ACCOUNTS_LABEL)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * A cached token that hasn't expired is used at once. If it hasn't been validated for a while,
+     * it is validated in the background, and dropped from the cache if it turns out to be invalid.
+     */
+    @Override
+    public UserActor authorize() throws AuthException {
+        return authorize(isAuthCacheUsed);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Every cached token that hasn't expired is used. The accounts that are missing are authorized one by one.
+     */
+    @Override
+    public List<UserActor> authorizeAll() throws AuthException {
+        Map<Integer, UserActor> actors = new LinkedHashMap<>();
+        if (isAuthCacheUsed) {
+            for (TokenStore.UserToken token : tokenStore.getUserTokens(scopes)) {
+                if (System.currentTimeMillis() - token.validatedAt >= VALIDATION_INTERVAL)
+                    validateInBackground(token);
+                actors.put(token.userId, new UserActor(token.userId, token.accessToken));
+            }
+            if (!actors.isEmpty())
+                Logger.getInstance().log(Logger.LogKind.INFO, LOG_MSG_CACHE_USE);
+        }
+        //Every account is asked for once, logging in with an authorized account again only replaces its token
+        for (int account = actors.size() + 1; account <= accounts; account++) {
+            if (accounts > 1)
+                Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_ACCOUNT, account, accounts));
+            UserActor actor = authorize(false);
+            actors.put(actor.getId(), actor);
+        }
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_ACCOUNTS, actors.size()));
+        return new ArrayList<>(actors.values());
+    }
+
+    /**
+     * Authorize to VK
+     * @param useCache Should a cached token be used?
+     * @return UserActor object used in VK API calls (represents current user)
+     * @throws AuthException Exception that is thrown during authorization
+     */
+    private UserActor authorize(boolean useCache) throws AuthException {
+        try {
+            if (useCache && !validation) { //If we're not in "need_validation" state and caching is on
+                TokenStore.UserToken token = tokenStore.findUserToken(scopes); //Try to use cached token
+                if (token != null) {
+                    Logger.getInstance().log(Logger.LogKind.INFO, LOG_MSG_CACHE_USE);
+                    if (System.currentTimeMillis() - token.validatedAt >= VALIDATION_INTERVAL)
+                        validateInBackground(token);
+                    return new UserActor(token.userId, token.accessToken);
+                }
+            }
+            UserAuthResponse authResponse = performAuthorization(); //Try to get authorization response
+            if (isAuthCacheUsed) {
+                long now = System.currentTimeMillis(); //A token that has just been issued is valid
+                tokenStore.putUserToken(new TokenStore.UserToken(authResponse.getUserId(), authResponse.getAccessToken(),
+                        now, expiresAt(now, authResponse.getExpiresIn()), now, scopes));
+                tokenStore.write();
+                Logger.getInstance().log(Logger.LogKind.INFO, LOG_MSG_CACHE_NEW);
+            }
+            return new UserActor(authResponse.getUserId(), authResponse.getAccessToken());
+        } catch (OAuthException e) { //Case of additional validation necessity
+            if (validation) //If the app is stuck on validation more than once -- that's fatal
+                throw new AuthException(buildErrorMessage(e.getLocalizedMessage()));
+            redirectURI = e.getRedirectUri();
+            validation = true;
+            UserActor userActor = authorize(false); //Another authorization try with a different redirect URI
+            validation = false;
+            return userActor;
+        }
+    }
+
+    /**
+     * Perform user authorization
+     * @return Authorization response
+     * @throws OAuthException A sign that the app needs to handle additional validation
+     * @throws AuthException Exception that is thrown during authorization
+     */
+    private UserAuthResponse performAuthorization() throws OAuthException, AuthException {
+        String authURI = String.format(AUTH_FORMAT_URI, vkClient.getOAuthEndpoint(),
+                appId, DISPLAY, redirectURI, permissions, RESPONSE_TYPE, apiVersion);
+        String code = obtainCode(authURI, redirectURI); //Obtain 'code' parameter
+        try {
+            return ApiMetrics.getInstance().time(METRICS_CODE_FLOW, vkClient.oauth()
+                    .userAuthorizationCodeFlow(appId, appSecret, redirectURI, code)::execute);
+        }  catch (OAuthException e) {
+            throw e; //Lift the exception up the call stack
+        }catch (ApiException | ClientException e) {
+            throw new AuthException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Obtain 'code' parameter during authorization to VK
+     * @param authURI URI the user logs in at
+     * @param redirectURI URI the user is redirected to with the code
+     * @return Code parameter
+     * @throws AuthException Exception that is thrown during authorization
+     */
+    protected abstract String obtainCode(String authURI, String redirectURI) throws AuthException;
+
+    @Override
+    public void invalidate(UserActor user) {
+        if (!isAuthCacheUsed)
+            return;
+        tokenStore.removeUserToken(user.getId(), user.getAccessToken());
+        tokenStore.write();
+        Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_CACHE_REJECTED, user.getId()));
+    }
+
+    /**
+     * Validate a cached token on a background thread
+     * @param token Cached token
+     */
+    private void validateInBackground(TokenStore.UserToken token) {
+        Thread thread = new Thread(() -> validate(token), VALIDATION_THREAD_NAME);
+        thread.setDaemon(true); //A short run mustn't wait for the validation
+        thread.start();
+    }
+
+    /**
+     * Validate a cached token, marking it as validated or dropping it from the cache
+     * @param token Cached token
+     */
+    private void validate(TokenStore.UserToken token) {
+        try {
+            TokenChecked checked;
+            try {
+                checked = checkToken(token.accessToken, false);
+            } catch (ApiException e) {
+                checked = checkToken(token.accessToken, true); //The cached service token may have been revoked
+            }
+            if (checked.getSuccess() != null && checked.getSuccess().getValue() == 1) {
+                long expire = checked.getExpire() == null ? 0 : TimeUnit.SECONDS.toMillis(checked.getExpire());
+                tokenStore.putUserToken(token.validated(System.currentTimeMillis(), expire));
+                Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_CACHE_VALID, token.userId));
+            } else {
+                tokenStore.removeUserToken(token.userId, token.accessToken);
+                Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_CACHE_INVALID, token.userId));
+            }
+        } catch (ApiException e) {
+            tokenStore.removeUserToken(token.userId, token.accessToken);
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_CACHE_INVALID, token.userId));
+        } catch (ClientException e) { //The token stays trusted until it is rejected or validated next time
+            Logger.getInstance().log(Logger.LogKind.WARNING,
+                    String.format(LOG_MSG_CACHE_NOT_VALIDATED, token.userId, e.getLocalizedMessage()));
+            return;
+        }
+        tokenStore.write();
+    }
+
+    /**
+     * Check a user token with the service token of the app, which is obtained once and cached
+     * @param token User token
+     * @param renewServiceToken Should a new service token be obtained?
+     * @return Result of the check
+     * @throws ApiException Exception that is thrown if the API has returned an error
+     * @throws ClientException Exception that is thrown if the API couldn't be reached
+     */
+    private TokenChecked checkToken(String token, boolean renewServiceToken) throws ApiException, ClientException {
+        String serviceToken = renewServiceToken ? null : tokenStore.getServiceToken();
+        if (serviceToken == null) {
+            serviceToken = ApiMetrics.getInstance().time(METRICS_CREDENTIALS_FLOW,
+                    vkClient.oauth().serviceClientCredentialsFlow(appId, appSecret)::execute).getAccessToken();
+            tokenStore.putServiceToken(serviceToken);
+        }
+        ServiceActor actor = new ServiceActor(appId, appSecret, serviceToken);
+        return ApiMetrics.getInstance().time(METRICS_CHECK_TOKEN, vkClient.secure().checkToken(actor).token(token)::execute);
+    }
+
+    /**
+     * Compute the expiration time of a token
+     * @param issuedAt Time the token has been issued at
+     * @param expiresIn Lifetime of the token in seconds (null or 0 if it doesn't expire)
+     * @return Expiration time
+     */
+    private static long expiresAt(long issuedAt, Integer expiresIn) {
+        if (expiresIn == null || expiresIn == 0)
+            return TokenStore.NEVER;
+        return issuedAt + TimeUnit.SECONDS.toMillis(expiresIn);
+    }
+
+    /**
+     * Build error message for an exception
+     * @param message Message body
+     * @return Built error message
+     */
+    protected static String buildErrorMessage(String message) {
+        return EXCEPTION_PREFIX + ' ' + message;
+    }
+}
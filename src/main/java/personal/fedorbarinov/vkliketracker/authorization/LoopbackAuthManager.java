@@ -0,0 +1,244 @@
+package personal.fedorbarinov.vkliketracker.authorization;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.vk.api.sdk.client.actors.UserActor;
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.parsing.AuthConfigParser;
+import personal.fedorbarinov.vkliketracker.parsing.Parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Authorization without a display: the redirect URI is served by a listener on the loopback interface,
+ * which captures the code as soon as the browser is redirected to it, so nothing has to be pasted.
+ * The authorization URI is written to the log to be opened in any browser that reaches the listener
+ * (e.g. through an SSH tunnel to the port of the redirect URI).
+ * The tokens of a token file, if there is one, are used before any login, so a server starts with no human at all.
+ */
+public class LoopbackAuthManager extends CodeFlowAuthManager {
+    private static final String HTTP_SCHEME = "http";
+    private static final int DEFAULT_PORT = 80;
+    private static final long LOGIN_TIMEOUT = 5; //Time in minutes the listener waits for the redirect
+    private static final String PARAM_CODE = "code";
+    private static final String PARAM_ERROR = "error";
+    private static final String PARAM_ERROR_DESCRIPTION = "error_description";
+    private static final String PAGE_DONE = "Authorized, the page may be closed";
+    private static final String PAGE_FAILED = "Authorization failed: %s";
+    private static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+    private static final String SEPARATOR = " ";
+    private static final String COMMENT = "#";
+
+    private static final String LOG_MSG_OPEN = "Open the URI in a browser to authorize: %s";
+    private static final String LOG_MSG_LISTENING = "Waiting for the redirect at %s";
+    private static final String LOG_MSG_TOKENS = "Authorized with %d token(s) from %s";
+    private static final String LOG_MSG_TOKEN_REJECTED = "Token of id%d from the token file has been rejected by the API, it won't be used again";
+    private static final String EXCEPTION_NOT_LOOPBACK = "Redirect URI %s should be an http URI of the loopback interface";
+    private static final String EXCEPTION_TIMEOUT = "No redirect in %d minutes";
+    private static final String EXCEPTION_NO_CODE = "The redirect has no code";
+    private static final String EXCEPTION_BAD_TOKEN = "Token file bad line: %s";
+    private static final String EXCEPTION_NO_TOKENS = "Token file has no tokens that haven't been rejected: %s";
+
+    private Path tokenPath; //File of the tokens provided in advance (null if there is none)
+    private List<UserActor> providedUsers; //Users of the token file (null until it is read)
+    private Set<String> rejectedTokens; //Tokens of the file the API has rejected
+
+    /**
+     * Public constructor of the class
+     * @param parameters Parameters that were obtained from the corresponding config file
+     */
+    public LoopbackAuthManager(Parser.ParsingResult parameters) {
+        super(parameters);
+        if (parameters.contains(AuthConfigParser.TOKEN_FILE_LABEL))
+            this.tokenPath = Paths.get(parameters.get(AuthConfigParser.TOKEN_FILE_LABEL));
+        this.rejectedTokens = new HashSet<>();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The first token of the token file is used if there is one.
+     */
+    @Override
+    public UserActor authorize() throws AuthException {
+        if (tokenPath != null)
+            return providedUsers().get(0);
+        return super.authorize();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The tokens of the token file are used if there is one, no login is made then.
+     */
+    @Override
+    public List<UserActor> authorizeAll() throws AuthException {
+        if (tokenPath == null)
+            return super.authorizeAll();
+        List<UserActor> users = providedUsers();
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_TOKENS, users.size(), tokenPath));
+        return users;
+    }
+
+    @Override
+    public void invalidate(UserActor user) {
+        if (tokenPath == null) {
+            super.invalidate(user);
+            return;
+        }
+        rejectedTokens.add(user.getAccessToken()); //The file belongs to whoever provides the tokens, it isn't changed
+        Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_TOKEN_REJECTED, user.getId()));
+    }
+
+    @Override
+    protected String obtainCode(String authURI, String redirectURI) throws AuthException {
+        URI redirect;
+        InetAddress address;
+        try {
+            redirect = new URI(redirectURI);
+            address = redirect.getHost() == null ? null : InetAddress.getByName(redirect.getHost());
+        } catch (URISyntaxException | IOException e) {
+            throw new AuthException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        if (!HTTP_SCHEME.equalsIgnoreCase(redirect.getScheme()) || address == null || !address.isLoopbackAddress())
+            throw new AuthException(buildErrorMessage(String.format(EXCEPTION_NOT_LOOPBACK, redirectURI)));
+
+        CompletableFuture<String> code = new CompletableFuture<>();
+        HttpServer server;
+        try {
+            int port = redirect.getPort() < 0 ? DEFAULT_PORT : redirect.getPort();
+            server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        } catch (IOException e) {
+            throw new AuthException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        String path = redirect.getRawPath() == null || redirect.getRawPath().isEmpty() ? "/" : redirect.getRawPath();
+        server.createContext(path, exchange -> handle(exchange, code));
+        server.start(); //Served on the thread of the server, the only request that matters is the redirect
+        try {
+            Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_LISTENING, redirectURI));
+            Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_OPEN, authURI));
+            return code.get(LOGIN_TIMEOUT, TimeUnit.MINUTES);
+        } catch (TimeoutException e) {
+            throw new AuthException(buildErrorMessage(String.format(EXCEPTION_TIMEOUT, LOGIN_TIMEOUT)));
+        } catch (ExecutionException e) {
+            throw new AuthException(buildErrorMessage(e.getCause().getLocalizedMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthException(buildErrorMessage(e.toString()));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Capture the code of the redirect, or the error the user has been redirected with
+     * @param exchange HTTP exchange
+     * @param code Future code that is completed by the redirect
+     * @throws IOException Exception that is thrown if the response couldn't be sent
+     */
+    private static void handle(HttpExchange exchange, CompletableFuture<String> code) throws IOException {
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        String received = params.get(PARAM_CODE);
+        String error = null;
+        if (received == null || received.isEmpty())
+            error = params.containsKey(PARAM_ERROR_DESCRIPTION) ? params.get(PARAM_ERROR_DESCRIPTION)
+                    : params.containsKey(PARAM_ERROR) ? params.get(PARAM_ERROR) : EXCEPTION_NO_CODE;
+        byte[] body = (error == null ? PAGE_DONE : String.format(PAGE_FAILED, error)).getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().add("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally { //Completed after the page is sent, the server is stopped right away
+            if (error == null)
+                code.complete(received);
+            else
+                code.completeExceptionally(new IOException(error));
+        }
+    }
+
+    /**
+     * Parse the query of a URI
+     * @param query Raw query (null if there is none)
+     * @return Decoded parameters by name
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null)
+            return params;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals <= 0)
+                continue;
+            try {
+                params.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8.name()));
+            } catch (UnsupportedEncodingException | IllegalArgumentException e) { //A bad pair is skipped
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Get the users of the token file that haven't been rejected, reading the file the first time.
+     * A line of the file holds the user ID and the access token, separated by a space
+     * @return Users (at least one)
+     * @throws AuthException Exception that is thrown if the file couldn't be read, or it has no usable tokens
+     */
+    private List<UserActor> providedUsers() throws AuthException {
+        if (providedUsers == null)
+            providedUsers = readTokens();
+        List<UserActor> users = new ArrayList<>();
+        for (UserActor user : providedUsers)
+            if (!rejectedTokens.contains(user.getAccessToken()))
+                users.add(user);
+        if (users.isEmpty())
+            throw new AuthException(buildErrorMessage(String.format(EXCEPTION_NO_TOKENS, tokenPath)));
+        return users;
+    }
+
+    /**
+     * Read the token file
+     * @return Users of the file
+     * @throws AuthException Exception that is thrown if the file couldn't be read or has a bad line
+     */
+    private List<UserActor> readTokens() throws AuthException {
+        List<UserActor> users = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(tokenPath)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith(COMMENT))
+                    continue;
+                String[] parts = line.split(SEPARATOR);
+                if (parts.length != 2 || !parts[0].matches("[0-9]+"))
+                    throw new AuthException(buildErrorMessage(String.format(EXCEPTION_BAD_TOKEN, parts[0])));
+                users.add(new UserActor(Integer.parseInt(parts[0]), parts[1]));
+            }
+        } catch (IOException e) {
+            throw new AuthException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        return users;
+    }
+}
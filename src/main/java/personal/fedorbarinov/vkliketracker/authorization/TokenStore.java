@@ -0,0 +1,247 @@
+package personal.fedorbarinov.vkliketracker.authorization;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Store of the access tokens obtained by the app.
+ * The store is a text file with a line per token. A user token line holds the user ID, the token, the time it
+ * has been issued at, the time it expires at (NEVER if it doesn't expire), the time it has been validated at
+ * and its comma-separated scopes. The service token line holds the token and the time it has been issued at.
+ * All the times are in milliseconds since the epoch. The file is replaced atomically.
+ * A file of the older format (the user ID and the token on two lines) is read as a token that hasn't been validated,
+ * with the scopes the app asks for.
+ */
+class TokenStore {
+    static final long NEVER = 0; //Expiration time of a token that doesn't expire
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SEPARATOR = " ";
+    private static final String SCOPE_SEPARATOR = ",";
+    private static final String KIND_USER = "user";
+    private static final String KIND_SERVICE = "service";
+    private static final String FORMAT_USER = KIND_USER + " %d %s %d %d %d %s";
+    private static final String FORMAT_SERVICE = KIND_SERVICE + " %s %d";
+    private static final String LOG_MSG_READ = "Token store couldn't be read: %s";
+    private static final String LOG_MSG_WRITE = "Token store couldn't be written: %s";
+    private static final String LOG_MSG_BAD_LINE = "Token store bad line: %s";
+
+    /**
+     * Stored user token
+     */
+    static class UserToken {
+        final int userId; //ID of the user the token belongs to
+        final String accessToken; //The token itself
+        final long issuedAt; //Time the token has been issued at
+        final long expiresAt; //Time the token expires at (NEVER if it doesn't expire)
+        final long validatedAt; //Time the token has been validated at (0 if it never has been)
+        final Set<String> scopes; //Permissions granted to the token
+
+        UserToken(int userId, String accessToken, long issuedAt, long expiresAt, long validatedAt, Set<String> scopes) {
+            this.userId = userId;
+            this.accessToken = accessToken;
+            this.issuedAt = issuedAt;
+            this.expiresAt = expiresAt;
+            this.validatedAt = validatedAt;
+            this.scopes = scopes;
+        }
+
+        /**
+         * Check whether the token has expired
+         * @param now Current time
+         * @return True if the token has expired (False otherwise)
+         */
+        boolean isExpired(long now) {
+            return expiresAt != NEVER && expiresAt <= now;
+        }
+
+        /**
+         * Create a copy of the token validated at the given time
+         * @param now Time of the validation
+         * @param expiresAt Expiration time reported by the validation
+         * @return Validated token
+         */
+        UserToken validated(long now, long expiresAt) {
+            return new UserToken(userId, accessToken, issuedAt, expiresAt, now, scopes);
+        }
+    }
+
+    private final Path path; //Path to the store file
+    private final Set<String> defaultScopes; //Scopes of a token read from a file of the older format
+    private final Map<Integer, UserToken> userTokens; //User tokens by user ID
+    private String serviceToken; //Service token of the app (null if there is none)
+    private long serviceTokenIssuedAt; //Time the service token has been issued at
+
+    /**
+     * Create a store, reading its file if it exists
+     * @param path Path to the store file
+     * @param defaultScopes Scopes of a token read from a file of the older format
+     */
+    TokenStore(Path path, Set<String> defaultScopes) {
+        this.path = path;
+        this.defaultScopes = defaultScopes;
+        this.userTokens = new TreeMap<>();
+        if (Files.exists(path))
+            read();
+    }
+
+    /**
+     * Parse a comma-separated scope list
+     * @param scopes Scope list
+     * @return Set of the scopes
+     */
+    static Set<String> parseScopes(String scopes) {
+        Set<String> result = new HashSet<>();
+        for (String scope : scopes.split(SCOPE_SEPARATOR))
+            if (!scope.isEmpty())
+                result.add(scope);
+        return result;
+    }
+
+    /**
+     * Find the most recently issued user token that hasn't expired and has all the given scopes
+     * @param scopes Scopes that are needed
+     * @return The token (null if there is no such token)
+     */
+    synchronized UserToken findUserToken(Set<String> scopes) {
+        long now = System.currentTimeMillis();
+        UserToken found = null;
+        for (UserToken token : userTokens.values())
+            if (!token.isExpired(now) && token.scopes.containsAll(scopes)
+                    && (found == null || token.issuedAt > found.issuedAt))
+                found = token;
+        return found;
+    }
+
+    /**
+     * Get all the user tokens that haven't expired and have all the given scopes
+     * @param scopes Scopes that are needed
+     * @return The tokens in the order of user IDs
+     */
+    synchronized List<UserToken> getUserTokens(Set<String> scopes) {
+        long now = System.currentTimeMillis();
+        List<UserToken> tokens = new ArrayList<>();
+        for (UserToken token : userTokens.values())
+            if (!token.isExpired(now) && token.scopes.containsAll(scopes))
+                tokens.add(token);
+        return tokens;
+    }
+
+    /**
+     * Store a user token, replacing the previous token of the same user
+     * @param token User token
+     */
+    synchronized void putUserToken(UserToken token) {
+        userTokens.put(token.userId, token);
+    }
+
+    /**
+     * Remove a user token, unless it has been replaced already
+     * @param userId ID of the user the token belongs to
+     * @param accessToken The token
+     */
+    synchronized void removeUserToken(int userId, String accessToken) {
+        UserToken token = userTokens.get(userId);
+        if (token != null && token.accessToken.equals(accessToken))
+            userTokens.remove(userId);
+    }
+
+    /**
+     * Get the service token of the app
+     * @return The token (null if there is none)
+     */
+    synchronized String getServiceToken() {
+        return serviceToken;
+    }
+
+    /**
+     * Store the service token of the app
+     * @param accessToken The token
+     */
+    synchronized void putServiceToken(String accessToken) {
+        this.serviceToken = accessToken;
+        this.serviceTokenIssuedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * Write the tokens that haven't expired to the store file
+     */
+    synchronized void write() {
+        long now = System.currentTimeMillis();
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(temp))) {
+                for (UserToken token : userTokens.values())
+                    if (!token.isExpired(now))
+                        out.println(String.format(FORMAT_USER, token.userId, token.accessToken, token.issuedAt,
+                                token.expiresAt, token.validatedAt, String.join(SCOPE_SEPARATOR, token.scopes)));
+                if (serviceToken != null)
+                    out.println(String.format(FORMAT_SERVICE, serviceToken, serviceTokenIssuedAt));
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Read the store file
+     */
+    private void read() {
+        List<String> lines;
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            lines = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (!line.isEmpty())
+                    lines.add(line);
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_READ, e.getLocalizedMessage()));
+            return;
+        }
+        if (lines.size() == 2 && lines.get(0).matches("[0-9]+") && !lines.get(1).contains(SEPARATOR)) {
+            //The older format: nothing but the user ID and the token
+            putUserToken(new UserToken(Integer.parseInt(lines.get(0)), lines.get(1), 0, NEVER, 0, defaultScopes));
+            return;
+        }
+        for (String line : lines)
+            if (!parseLine(line.split(SEPARATOR)))
+                Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_BAD_LINE, line));
+    }
+
+    /**
+     * Parse a line of the store file
+     * @param parts Space-separated parts of the line
+     * @return True if the line has been parsed (False in case of bad format)
+     */
+    private boolean parseLine(String[] parts) {
+        try {
+            if (parts[0].equals(KIND_USER) && (parts.length == 6 || parts.length == 7)) {
+                Set<String> scopes = parts.length == 7 ? parseScopes(parts[6]) : new HashSet<>();
+                putUserToken(new UserToken(Integer.parseInt(parts[1]), parts[2], Long.parseLong(parts[3]),
+                        Long.parseLong(parts[4]), Long.parseLong(parts[5]), scopes));
+                return true;
+            }
+            if (parts[0].equals(KIND_SERVICE) && parts.length == 3) {
+                serviceToken = parts[1];
+                serviceTokenIssuedAt = Long.parseLong(parts[2]);
+                return true;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return false;
+    }
+}
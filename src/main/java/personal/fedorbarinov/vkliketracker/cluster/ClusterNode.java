@@ -0,0 +1,300 @@
+package personal.fedorbarinov.vkliketracker.cluster;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Member of a cluster of tracker processes sharing a directory on the same machine (or a shared file system).
+ * A node announces itself with a file of the directory it holds an exclusive lock on for as long as it runs.
+ * The operating system releases the lock when the process dies in any way, so a node is alive exactly
+ * while its file is locked, without heartbeats. The nodes poll the directory and build the same
+ * consistent hash ring of the alive nodes, which tells each of them the keys it owns.
+ * A node file is locked under a temporary name and moved into place, so no node sees it before it is locked.
+ * A node checks on every poll that its file is still the one it has locked, and creates it again if it has been removed.
+ * There must be a single node per JVM: the locks of a JVM don't keep each other out.
+ */
+public class ClusterNode implements AutoCloseable {
+    private static final String NODE_SUFFIX = ".node";
+    private static final String NODE_GLOB = "*" + NODE_SUFFIX;
+    private static final long POLL_INTERVAL = 1000; //Time in milliseconds between two polls of the directory
+    private static final long SETTLE_TIME = 2 * POLL_INTERVAL; //Time in milliseconds the nodes started together need to see each other
+    private static final String THREAD_NAME = "ClusterNode";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOG_MSG_JOINED = "Cluster: node %s has joined at %s";
+    private static final String LOG_MSG_RECREATED = "Cluster: file of node %s has been removed, it is created again";
+    private static final String LOG_MSG_TAKEN = "Cluster: file of node %s is locked by another process";
+    private static final String LOG_MSG_MEMBERS = "Cluster: node %s sees %d node(s): %s";
+    private static final String LOG_MSG_POLL_ERROR = "Cluster directory couldn't be polled: %s";
+    private static final String EXCEPTION_RUNNING = "Node %s is running already";
+    private static final String EXCEPTION_BAD_ID = "Node ID %s should consist of letters, digits, '.', '_' and '-'";
+    private static final String EXCEPTION_PREFIX = "[Cluster]:"; //Prefix for an exception message
+
+    /**
+     * Exception that is thrown if the node couldn't join the cluster
+     */
+    public static class ClusterException extends Exception {
+        ClusterException(String s) {
+            super(s);
+        }
+    }
+
+    /**
+     * Receiver of the membership changes
+     */
+    public interface Listener {
+        /**
+         * Called on the polling thread after a node has joined or left, the next change waits until it returns
+         * @param ring Ring of the nodes that are alive now
+         */
+        void onMembershipChange(HashRing ring);
+    }
+
+    private final Path directory; //Directory shared by the nodes
+    private final String nodeId;
+    private final Path file; //File of the node
+    private FileChannel channel; //Holds the lock, the only channel of the node file in the JVM (null until it is locked)
+    private Object fileKey; //Key of the locked file (null if the file system has no keys)
+    private final ScheduledExecutorService poller;
+    private volatile HashRing ring; //Ring of the alive nodes as of the last poll
+
+    /**
+     * Join the cluster
+     * @param directory Directory shared by the nodes, created if necessary
+     * @param nodeId ID of the node (null for the process ID and the host name)
+     * @throws ClusterException Exception that is thrown if the node is running already or the directory is unusable
+     */
+    public ClusterNode(Path directory, String nodeId) throws ClusterException {
+        this.directory = directory;
+        this.nodeId = nodeId != null ? nodeId : defaultNodeId();
+        if (!this.nodeId.matches("[A-Za-z0-9._-]+"))
+            throw new ClusterException(buildErrorMessage(String.format(EXCEPTION_BAD_ID, this.nodeId)));
+        this.file = directory.resolve(this.nodeId + NODE_SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            if (!lockFile())
+                throw new ClusterException(buildErrorMessage(String.format(EXCEPTION_RUNNING, this.nodeId)));
+        } catch (IOException e) {
+            throw new ClusterException(buildErrorMessage(e.toString()));
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.ring = new HashRing(Collections.singleton(this.nodeId), HashRing.DEFAULT_VIRTUAL_NODES);
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_JOINED, this.nodeId, directory));
+    }
+
+    /**
+     * Get the ID of the node
+     * @return Node ID
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Check whether a key belongs to the node as of the last poll
+     * @param key A key, e.g. of a post
+     * @return True if the node owns the key (False otherwise)
+     */
+    public boolean owns(long key) {
+        return nodeId.equals(ring.nodeOf(key));
+    }
+
+    /**
+     * Wait for the nodes started at about the same time to see each other, then poll the directory
+     * @throws InterruptedException The thread has been interrupted
+     */
+    public void awaitMembers() throws InterruptedException {
+        Thread.sleep(SETTLE_TIME);
+        poll(null);
+    }
+
+    /**
+     * Start polling the directory for the nodes that join and leave
+     * @param listener Receiver of the membership changes
+     */
+    public void start(Listener listener) {
+        poller.scheduleWithFixedDelay(() -> poll(listener), POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Leave the cluster: the file of the node is removed, then its lock is released
+     */
+    @Override
+    public void close() {
+        poller.shutdownNow();
+        synchronized (this) {
+            try {
+                if (holdsFile()) //Otherwise it belongs to someone else now
+                    Files.deleteIfExists(file);
+            } catch (IOException e) { //The file stays, but it isn't locked any more
+            }
+            closeChannel();
+        }
+    }
+
+    /**
+     * Find the alive nodes, and rebuild the ring if they have changed
+     * @param listener Receiver of the change (null if nobody is to be told)
+     */
+    private void poll(Listener listener) {
+        Set<String> alive = new TreeSet<>();
+        alive.add(nodeId);
+        try {
+            checkFile();
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_POLL_ERROR, e.getLocalizedMessage()));
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, NODE_GLOB)) {
+            for (Path other : files) {
+                String name = other.getFileName().toString();
+                String otherId = name.substring(0, name.length() - NODE_SUFFIX.length());
+                if (!otherId.equals(nodeId) && isLocked(other))
+                    alive.add(otherId);
+            }
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_POLL_ERROR, e.getLocalizedMessage()));
+            return;
+        }
+        if (alive.equals(ring.getNodes()))
+            return;
+        HashRing changed = new HashRing(alive, HashRing.DEFAULT_VIRTUAL_NODES);
+        ring = changed;
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_MEMBERS, nodeId, alive.size(), alive));
+        if (listener != null) {
+            try {
+                listener.onMembershipChange(changed);
+            } catch (RuntimeException e) { //The poller must survive, otherwise the next changes are missed
+                Logger.getInstance().log(Logger.LogKind.ERROR, e.toString());
+            }
+        }
+    }
+
+    /**
+     * Create the node file again if it isn't the file the node has locked any more
+     * @throws IOException Exception that is thrown if the file couldn't be checked or created
+     */
+    private synchronized void checkFile() throws IOException {
+        if (holdsFile())
+            return;
+        Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_RECREATED, nodeId));
+        if (!lockFile())
+            Logger.getInstance().log(Logger.LogKind.ERROR, String.format(LOG_MSG_TAKEN, nodeId));
+    }
+
+    /**
+     * Check whether the node file is the file the node has locked. The file is never opened for the check:
+     * closing any other channel of it would release the lock
+     * @return True if it is (False if it has been removed or replaced)
+     * @throws IOException Exception that is thrown if the file couldn't be checked
+     */
+    private synchronized boolean holdsFile() throws IOException {
+        if (channel == null)
+            return false;
+        if (fileKey == null) //A file open in the process can't be removed where there are no keys
+            return Files.exists(file);
+        try {
+            return fileKey.equals(Files.readAttributes(file, BasicFileAttributes.class).fileKey());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Create the node file and lock it. The file is created and locked under a temporary name first,
+     * then moved into place, so that no other node sees it unlocked and removes it for the file of a dead node.
+     * The lock replaces the one held before, if any
+     * @return True if the file is locked by the node (False if another process holds the node file)
+     * @throws IOException Exception that is thrown if the file couldn't be created or locked
+     */
+    private synchronized boolean lockFile() throws IOException {
+        if (Files.exists(file) && isLocked(file)) //A file that isn't locked is left from a dead run, it is removed
+            return false;
+        Path temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + TEMP_SUFFIX);
+        FileChannel opened = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            opened.lock();
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            Object key = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+            closeChannel();
+            channel = opened;
+            fileKey = key;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            opened.close();
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether the file of another node is locked, i.e. the node is alive.
+     * The file of a dead node is removed while it is locked by the check, so the other nodes don't see it any more.
+     * @param other File of the node
+     * @return True if the file is locked (False if the node has died or left)
+     */
+    private static boolean isLocked(Path other) {
+        try (FileChannel probe = FileChannel.open(other, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileLock lock = probe.tryLock();
+            if (lock == null)
+                return true;
+            Files.deleteIfExists(other);
+            lock.release();
+            return false;
+        } catch (OverlappingFileLockException e) { //Locked in this JVM
+            return true;
+        } catch (IOException e) { //The node has just left
+            return false;
+        }
+    }
+
+    /**
+     * Build the default node ID of the process
+     * @return Process ID and host name, as the JVM names itself
+     */
+    private static String defaultNodeId() {
+        return ManagementFactory.getRuntimeMXBean().getName().replaceAll("[^A-Za-z0-9._-]", "-");
+    }
+
+    /**
+     * Close the channel of the node file, releasing its lock
+     */
+    private void closeChannel() {
+        if (channel == null)
+            return;
+        try {
+            channel.close();
+        } catch (IOException e) { //The lock is released anyway
+        }
+    }
+
+    /**
+     * Build error message for an exception
+     * @param message Message body
+     * @return Built error message
+     */
+    private static String buildErrorMessage(String message) {
+        return EXCEPTION_PREFIX + ' ' + message;
+    }
+}
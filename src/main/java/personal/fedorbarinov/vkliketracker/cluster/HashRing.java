@@ -0,0 +1,87 @@
+package personal.fedorbarinov.vkliketracker.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring of the cluster nodes.
+ * Every node is put on the ring at many pseudo-random points (virtual nodes), and a key belongs to the node
+ * of the first point at or after the hash of the key. When a node joins, it takes over only the keys falling
+ * right before its points, and when it leaves, only its own keys pass to the next points, so the rest stay put.
+ * The virtual nodes spread the keys evenly even across a few nodes.
+ */
+public class HashRing {
+    public static final int DEFAULT_VIRTUAL_NODES = 128;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L; //Spreads the points of a node apart
+
+    private final SortedSet<String> nodes;
+    private final TreeMap<Long, String> points; //Node by point of the ring
+
+    /**
+     * Build a ring
+     * @param nodes IDs of the nodes
+     * @param virtualNodes Number of points of a node
+     */
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        this.nodes = Collections.unmodifiableSortedSet(new TreeSet<>(nodes));
+        this.points = new TreeMap<>();
+        for (String node : this.nodes) {
+            long base = fnv(node);
+            for (int i = 0; i < virtualNodes; i++)
+                points.putIfAbsent(mix(base + i * GOLDEN_GAMMA), node); //A collision leaves the point to the smaller ID
+        }
+    }
+
+    /**
+     * Get the IDs of the nodes
+     * @return Sorted IDs
+     */
+    public SortedSet<String> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Find the node a key belongs to
+     * @param key A key, e.g. of a post
+     * @return ID of the node (null if the ring is empty)
+     */
+    public String nodeOf(long key) {
+        if (points.isEmpty())
+            return null;
+        Map.Entry<Long, String> point = points.ceilingEntry(mix(key));
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    /**
+     * Hash a node ID with 64-bit FNV-1a
+     * @param node ID of the node
+     * @return Hash of the ID
+     */
+    private static long fnv(String node) {
+        long hash = FNV_OFFSET;
+        for (byte b : node.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Scramble the bits of a value (the finalizer of SplitMix64), so that close keys land far apart on the ring
+     * @param value A value
+     * @return Scrambled value
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+}
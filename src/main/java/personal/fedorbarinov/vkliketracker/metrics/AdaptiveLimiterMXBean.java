@@ -0,0 +1,36 @@
+package personal.fedorbarinov.vkliketracker.metrics;
+
+/**
+ * JMX view of the adaptive limit of the API calls in flight
+ */
+public interface AdaptiveLimiterMXBean {
+    /**
+     * Get the current limit
+     * @return Number of calls allowed in flight
+     */
+    int getLimit();
+
+    /**
+     * Get the number of calls in flight
+     * @return Number of calls
+     */
+    int getInFlight();
+
+    /**
+     * Get the number of calls waiting for room under the limit
+     * @return Number of calls
+     */
+    int getQueued();
+
+    /**
+     * Get the number of times the limit has been cut because of throttling
+     * @return Number of cuts
+     */
+    long getDecreases();
+
+    /**
+     * Get the number of failed calls that have been retried after a backoff
+     * @return Number of retries
+     */
+    long getRetries();
+}
@@ -0,0 +1,197 @@
+package personal.fedorbarinov.vkliketracker.metrics;
+
+import com.vk.api.sdk.exceptions.ApiException;
+import com.vk.api.sdk.exceptions.ClientException;
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Singleton registry of the metrics of the API methods.
+ * The metrics of a method are created when it is called for the first time and registered as an MXBean
+ * of the platform MBean server, so they can be watched with any JMX console. They are also written
+ * in the Prometheus text format for the metrics endpoint. The adaptive limit of the calls in flight
+ * is registered and written the same way.
+ */
+public class ApiMetrics {
+    private static final String OBJECT_NAME_FORMAT = "personal.fedorbarinov.vkliketracker:type=ApiMethod,name=%s";
+    private static final String LIMITER_OBJECT_NAME = "personal.fedorbarinov.vkliketracker:type=ConcurrencyLimit";
+    private static final String LIMITER_NAME = "concurrency limit";
+    private static final String LOG_MSG_JMX_ERROR = "Metrics of %s couldn't be registered in JMX: %s";
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+    private static final double MICROS_IN_SECOND = 1e6;
+
+    private static final String METRIC_DURATION = "vk_api_request_duration_seconds";
+    private static final String METRIC_REQUESTS = "vk_api_requests_total";
+    private static final String METRIC_ERRORS = "vk_api_errors_total";
+    private static final String METRIC_IN_FLIGHT = "vk_api_requests_in_flight";
+    private static final String METRIC_LIMIT = "vk_api_concurrency_limit";
+    private static final String METRIC_LIMIT_DECREASES = "vk_api_concurrency_limit_decreases_total";
+    private static final String METRIC_RETRIES = "vk_api_retries_total";
+
+    /**
+     * Blocking API call
+     * @param <T> Type of the call result
+     */
+    public interface Call<T> {
+        /**
+         * Make the call
+         * @return Result of the call
+         * @throws ApiException Exception that is thrown if the API has returned an error
+         * @throws ClientException Exception that is thrown if the API couldn't be reached
+         */
+        T execute() throws ApiException, ClientException;
+    }
+
+    private static ApiMetrics instance = new ApiMetrics(); //Singleton class instance
+
+    /**
+     * Get the instance of ApiMetrics class
+     * @return The instance
+     */
+    public static ApiMetrics getInstance() {
+        return instance;
+    }
+
+    private final ConcurrentMap<String, MethodMetrics> methods; //Metrics by method name
+    private volatile AdaptiveLimiterMXBean limiter; //Adaptive limit of the calls in flight (null if there is none)
+
+    private ApiMetrics() {
+        this.methods = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Get the metrics of a method, creating them if necessary
+     * @param method Method name
+     * @return Metrics of the method
+     */
+    public MethodMetrics forMethod(String method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics != null)
+            return metrics;
+        MethodMetrics created = new MethodMetrics(method);
+        metrics = methods.putIfAbsent(method, created);
+        if (metrics != null)
+            return metrics;
+        register(created);
+        return created;
+    }
+
+    /**
+     * Register the adaptive limit of the calls in flight, replacing the previous one
+     * @param limiter The limiter
+     */
+    public void registerLimiter(AdaptiveLimiterMXBean limiter) {
+        this.limiter = limiter;
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(LIMITER_OBJECT_NAME);
+            synchronized (this) {
+                if (server.isRegistered(name))
+                    server.unregisterMBean(name);
+                server.registerMBean(limiter, name);
+            }
+        } catch (JMException e) { //The limit is still served by the endpoint
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_JMX_ERROR, LIMITER_NAME, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Make a blocking call, registering it in the metrics of the method
+     * @param method Method name
+     * @param call The call
+     * @param <T> Type of the call result
+     * @return Result of the call
+     * @throws ApiException Exception that is thrown if the API has returned an error
+     * @throws ClientException Exception that is thrown if the API couldn't be reached
+     */
+    public <T> T time(String method, Call<T> call) throws ApiException, ClientException {
+        MethodMetrics metrics = forMethod(method);
+        long start = metrics.start();
+        try {
+            T result = call.execute();
+            metrics.finish(start, null);
+            return result;
+        } catch (ApiException | ClientException | RuntimeException e) {
+            metrics.finish(start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Write the metrics of every method in the Prometheus text format
+     * @param out Builder the metrics are appended to
+     */
+    public void writePrometheus(StringBuilder out) {
+        Map<String, MethodMetrics> snapshot = new TreeMap<>(methods);
+        out.append("# HELP ").append(METRIC_DURATION).append(" Latency of the VK API calls\n");
+        out.append("# TYPE ").append(METRIC_DURATION).append(" summary\n");
+        for (MethodMetrics metrics : snapshot.values()) {
+            String label = "method=\"" + escape(metrics.getMethod()) + '"';
+            for (double quantile : QUANTILES)
+                out.append(METRIC_DURATION).append('{').append(label).append(",quantile=\"").append(quantile).append("\"} ")
+                        .append(metrics.getPercentile(quantile) / MICROS_IN_SECOND).append('\n');
+            out.append(METRIC_DURATION).append("_sum{").append(label).append("} ")
+                    .append(metrics.getLatencySum() / MICROS_IN_SECOND).append('\n');
+            out.append(METRIC_DURATION).append("_count{").append(label).append("} ").append(metrics.getRequests()).append('\n');
+        }
+        out.append("# HELP ").append(METRIC_REQUESTS).append(" Finished VK API calls\n");
+        out.append("# TYPE ").append(METRIC_REQUESTS).append(" counter\n");
+        for (MethodMetrics metrics : snapshot.values())
+            out.append(METRIC_REQUESTS).append("{method=\"").append(escape(metrics.getMethod())).append("\"} ")
+                    .append(metrics.getRequests()).append('\n');
+        out.append("# HELP ").append(METRIC_ERRORS).append(" Failed VK API calls by error code\n");
+        out.append("# TYPE ").append(METRIC_ERRORS).append(" counter\n");
+        for (MethodMetrics metrics : snapshot.values())
+            for (Map.Entry<String, Long> error : metrics.getErrorsByCode().entrySet())
+                out.append(METRIC_ERRORS).append("{method=\"").append(escape(metrics.getMethod()))
+                        .append("\",code=\"").append(escape(error.getKey())).append("\"} ").append(error.getValue()).append('\n');
+        out.append("# HELP ").append(METRIC_IN_FLIGHT).append(" VK API calls made and not finished yet\n");
+        out.append("# TYPE ").append(METRIC_IN_FLIGHT).append(" gauge\n");
+        for (MethodMetrics metrics : snapshot.values())
+            out.append(METRIC_IN_FLIGHT).append("{method=\"").append(escape(metrics.getMethod())).append("\"} ")
+                    .append(metrics.getInFlight()).append('\n');
+        AdaptiveLimiterMXBean limiter = this.limiter;
+        if (limiter == null)
+            return;
+        out.append("# HELP ").append(METRIC_LIMIT).append(" Adaptive limit of the VK API calls in flight\n");
+        out.append("# TYPE ").append(METRIC_LIMIT).append(" gauge\n");
+        out.append(METRIC_LIMIT).append(' ').append(limiter.getLimit()).append('\n');
+        out.append("# HELP ").append(METRIC_LIMIT_DECREASES).append(" Cuts of the limit because of throttling\n");
+        out.append("# TYPE ").append(METRIC_LIMIT_DECREASES).append(" counter\n");
+        out.append(METRIC_LIMIT_DECREASES).append(' ').append(limiter.getDecreases()).append('\n');
+        out.append("# HELP ").append(METRIC_RETRIES).append(" VK API calls retried after a backoff\n");
+        out.append("# TYPE ").append(METRIC_RETRIES).append(" counter\n");
+        out.append(METRIC_RETRIES).append(' ').append(limiter.getRetries()).append('\n');
+    }
+
+    /**
+     * Register the metrics of a method in the platform MBean server
+     * @param metrics Metrics of the method
+     */
+    private static void register(MethodMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName(String.format(OBJECT_NAME_FORMAT, ObjectName.quote(metrics.getMethod()))));
+        } catch (JMException e) { //The metrics are still served by the endpoint
+            Logger.getInstance().log(Logger.LogKind.WARNING,
+                    String.format(LOG_MSG_JMX_ERROR, metrics.getMethod(), e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Escape a label value of the Prometheus text format
+     * @param value Label value
+     * @return Escaped value
+     */
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
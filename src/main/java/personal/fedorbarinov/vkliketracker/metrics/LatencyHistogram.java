@@ -0,0 +1,118 @@
+package personal.fedorbarinov.vkliketracker.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds.
+ * Every power of two is split into 16 buckets, so a percentile is off by at most 1/16 of its value,
+ * and a latency is recorded without locks: a bucket is incremented atomically, the count and the sum are striped.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; //Buckets per power of two
+    private static final int MAX_EXPONENT = 40; //Latencies beyond 2^40 microseconds (12 days) go to the last bucket
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final AtomicLongFieldUpdater<LatencyHistogram> MAX_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(LatencyHistogram.class, "max");
+
+    private final AtomicLongArray counts; //Number of latencies by bucket
+    private final LongAdder count; //Number of recorded latencies
+    private final LongAdder sum; //Sum of the recorded latencies
+    private volatile long max; //Largest recorded latency
+
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKETS);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+    }
+
+    /**
+     * Record a latency
+     * @param micros Latency in microseconds
+     */
+    void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(Math.min(bucketOf(value), BUCKETS - 1));
+        count.increment();
+        sum.add(value);
+        long current = max;
+        while (value > current && !MAX_UPDATER.compareAndSet(this, current, value))
+            current = max;
+    }
+
+    /**
+     * Get the number of recorded latencies
+     * @return Number of latencies
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the sum of the recorded latencies
+     * @return Sum in microseconds
+     */
+    long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Get the largest recorded latency
+     * @return Latency in microseconds
+     */
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * Get a percentile of the recorded latencies
+     * @param fraction Percentile as a fraction of 1
+     * @return Upper bound of the bucket the percentile falls into, in microseconds (0 if nothing has been recorded)
+     */
+    long percentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Get the bucket of a latency
+     * @param value Latency in microseconds
+     * @return Bucket index
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value); //At least SUB_BUCKET_BITS
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Get the largest latency of a bucket
+     * @param bucket Bucket index
+     * @return Latency in microseconds
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1; //Exponent minus SUB_BUCKET_BITS
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,139 @@
+package personal.fedorbarinov.vkliketracker.metrics;
+
+import com.vk.api.sdk.exceptions.ApiException;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram, counters and in-flight gauge of an API method
+ */
+public class MethodMetrics implements MethodMetricsMXBean {
+    static final String CODE_CLIENT = "client"; //Error code of a call that hasn't reached the API
+    private static final double MICROS_IN_MILLI = 1e3;
+
+    private final String method;
+    private final LatencyHistogram latencies; //Latencies of the finished calls
+    private final LongAdder errors; //Number of the failed calls
+    private final Map<String, LongAdder> errorsByCode; //Number of the failed calls by error code
+    private final AtomicInteger inFlight; //Number of the calls made and not finished yet
+
+    MethodMetrics(String method) {
+        this.method = method;
+        this.latencies = new LatencyHistogram();
+        this.errors = new LongAdder();
+        this.errorsByCode = new ConcurrentHashMap<>();
+        this.inFlight = new AtomicInteger();
+    }
+
+    /**
+     * Register a call that is being made
+     * @return Start time of the call in nanoseconds, to be given to finish()
+     */
+    public long start() {
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * Register a finished call
+     * @param start Start time returned by start()
+     * @param error Error of the call (null if it has succeeded)
+     */
+    public void finish(long start, Throwable error) {
+        latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        inFlight.decrementAndGet();
+        if (error == null)
+            return;
+        errors.increment();
+        errorsByCode.computeIfAbsent(errorCode(error), code -> new LongAdder()).increment();
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public long getRequests() {
+        return latencies.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByCode() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : errorsByCode.entrySet())
+            result.put(entry.getKey(), entry.getValue().sum());
+        return result;
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        long count = latencies.getCount();
+        return count == 0 ? 0 : latencies.getSum() / (double) count / MICROS_IN_MILLI;
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latencies.percentile(0.5) / MICROS_IN_MILLI;
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latencies.percentile(0.99) / MICROS_IN_MILLI;
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latencies.percentile(0.999) / MICROS_IN_MILLI;
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latencies.getMax() / MICROS_IN_MILLI;
+    }
+
+    /**
+     * Get the sum of the latencies
+     * @return Sum in microseconds
+     */
+    long getLatencySum() {
+        return latencies.getSum();
+    }
+
+    /**
+     * Get a latency percentile
+     * @param fraction Percentile as a fraction of 1
+     * @return Latency in microseconds
+     */
+    long getPercentile(double fraction) {
+        return latencies.percentile(fraction);
+    }
+
+    /**
+     * Get the error code of a failed call
+     * @param error Error, possibly wrapped into CompletionException
+     * @return API error code ("client" if the call hasn't reached the API)
+     */
+    private static String errorCode(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof ApiException && ((ApiException) cause).getCode() != null)
+            return String.valueOf(((ApiException) cause).getCode());
+        return CODE_CLIENT;
+    }
+}
@@ -0,0 +1,68 @@
+package personal.fedorbarinov.vkliketracker.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the metrics of an API method
+ */
+public interface MethodMetricsMXBean {
+    /**
+     * Get the name of the method
+     * @return Method name
+     */
+    String getMethod();
+
+    /**
+     * Get the number of finished calls
+     * @return Number of calls
+     */
+    long getRequests();
+
+    /**
+     * Get the number of failed calls
+     * @return Number of calls
+     */
+    long getErrors();
+
+    /**
+     * Get the number of failed calls by error code ("client" for the calls that haven't reached the API)
+     * @return Number of calls by error code
+     */
+    Map<String, Long> getErrorsByCode();
+
+    /**
+     * Get the number of calls made and not finished yet
+     * @return Number of calls
+     */
+    int getInFlight();
+
+    /**
+     * Get the mean latency of the finished calls
+     * @return Latency in milliseconds
+     */
+    double getMeanMillis();
+
+    /**
+     * Get the median latency of the finished calls
+     * @return Latency in milliseconds
+     */
+    double getP50Millis();
+
+    /**
+     * Get the 99th percentile of the latency of the finished calls
+     * @return Latency in milliseconds
+     */
+    double getP99Millis();
+
+    /**
+     * Get the 99.9th percentile of the latency of the finished calls
+     * @return Latency in milliseconds
+     */
+    double getP999Millis();
+
+    /**
+     * Get the largest latency of the finished calls
+     * @return Latency in milliseconds
+     */
+    double getMaxMillis();
+}
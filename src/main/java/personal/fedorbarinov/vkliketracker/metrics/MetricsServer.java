@@ -0,0 +1,67 @@
+package personal.fedorbarinov.vkliketracker.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP endpoint serving the API metrics in the Prometheus text format at /metrics.
+ * It listens on the loopback interface only.
+ */
+public class MetricsServer implements AutoCloseable {
+    private static final String HOST = "127.0.0.1";
+    private static final String PATH = "/metrics";
+    private static final String THREAD_NAME = "MetricsServer";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor; //Handles the scrapes
+
+    /**
+     * Start the endpoint
+     * @param port Port to listen at
+     * @throws IOException Exception that is thrown if the port couldn't be bound
+     */
+    public MetricsServer(int port) throws IOException {
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(HOST, port), 0);
+        server.setExecutor(executor);
+        server.createContext(PATH, this::handle);
+        server.start();
+    }
+
+    /**
+     * Stop the endpoint
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Answer a scrape
+     * @param exchange HTTP exchange
+     * @throws IOException Exception that is thrown if the response couldn't be sent
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        StringBuilder text = new StringBuilder();
+        ApiMetrics.getInstance().writePrometheus(text);
+        byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -12,10 +12,20 @@ public class AuthConfigParser extends ConfigParser {
     public static final String REDIRECT_LABEL = "REDIRECT_URI";
     public static final String CACHE_PATH_LABEL = "CACHE_PATH";
     public static final String USE_CACHED_TOKEN_LABEL = "USE_CACHED_TOKEN";
+    public static final String ACCOUNTS_LABEL = "ACCOUNTS";
+    public static final String API_URL_LABEL = "API_URL";
+    public static final String OAUTH_URL_LABEL = "OAUTH_URL";
+    public static final String AUTH_MODE_LABEL = "AUTH_MODE";
+    public static final String TOKEN_FILE_LABEL = "TOKEN_FILE";
 
     private static final String DEFAULT_CACHE_PATH = "auth.cache";
+    private static final String DEFAULT_ACCOUNTS = "1";
+    private static final String DEFAULT_API_URL = "https://api.vk.com/method/";
+    private static final String DEFAULT_OAUTH_URL = "https://oauth.vk.com/";
+    private static final String DEFAULT_AUTH_MODE = "BROWSER";
 
     private static Set<String> parametersNames;
+    private static Set<String> optionalNames; //Parameters that may be missing
     private static Set<String> optionsNames;
 
     static {
@@ -25,6 +35,13 @@ public class AuthConfigParser extends ConfigParser {
         parametersNames.add(APP_SECRET_LABEL);
         parametersNames.add(REDIRECT_LABEL);
         parametersNames.add(CACHE_PATH_LABEL);
+        parametersNames.add(ACCOUNTS_LABEL);
+        parametersNames.add(API_URL_LABEL);
+        parametersNames.add(OAUTH_URL_LABEL);
+        parametersNames.add(AUTH_MODE_LABEL);
+        parametersNames.add(TOKEN_FILE_LABEL);
+        optionalNames = new TreeSet<>();
+        optionalNames.add(TOKEN_FILE_LABEL);
         //Adding all of the allowed options there
         optionsNames = new TreeSet<>();
         optionsNames.add(USE_CACHED_TOKEN_LABEL);
@@ -44,10 +61,18 @@ public class AuthConfigParser extends ConfigParser {
     protected boolean checkedParametersAppend() {
         if (!parameters.contains(CACHE_PATH_LABEL))
             parameters.put(CACHE_PATH_LABEL, DEFAULT_CACHE_PATH);
+        if (!parameters.contains(ACCOUNTS_LABEL))
+            parameters.put(ACCOUNTS_LABEL, DEFAULT_ACCOUNTS);
+        if (!parameters.contains(API_URL_LABEL))
+            parameters.put(API_URL_LABEL, DEFAULT_API_URL);
+        if (!parameters.contains(OAUTH_URL_LABEL))
+            parameters.put(OAUTH_URL_LABEL, DEFAULT_OAUTH_URL);
+        if (!parameters.contains(AUTH_MODE_LABEL))
+            parameters.put(AUTH_MODE_LABEL, DEFAULT_AUTH_MODE);
 
         //Check that every parameter is present
         for (String parameterName : parametersNames)
-            if (!parameters.contains(parameterName))
+            if (!parameters.contains(parameterName) && !optionalNames.contains(parameterName))
                 return false;
         return true;
     }
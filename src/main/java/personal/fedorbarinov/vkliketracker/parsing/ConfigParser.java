@@ -4,10 +4,6 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
 
 /**
  * Abstract config parameters parser
@@ -20,37 +16,6 @@ public abstract class ConfigParser implements Parser {
     private static final String EXCEPTION_NOT_ENOUGH_PARAMETERS = "Not enough parameters";
     private static final String EXCEPTION_PREFIX = "[Parsing]:"; //Prefix for an exception message
 
-    /**
-     * Parsing result returned from config parsers
-     */
-    private class ConfigParsingResult implements ParsingResult {
-        Map<String, String> parameters;
-        Set<String> options;
-
-        ConfigParsingResult() {
-            parameters = new TreeMap<>();
-            options = new TreeSet<>();
-        }
-
-        @Override
-        public String get(String key) {
-            return parameters.getOrDefault(key, null);
-        }
-
-        @Override
-        public void put(String key, String value) {
-            if (value == null)
-                options.add(key);
-            else
-                parameters.put(key, value);
-        }
-
-        @Override
-        public boolean contains(String key) {
-            return parameters.containsKey(key) || options.contains(key);
-        }
-    }
-
     ParsingResult parameters; //Parsed parameters
 
     ConfigParser() {
@@ -0,0 +1,37 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Parsing result returned from config parsers
+ */
+class ConfigParsingResult implements Parser.ParsingResult {
+    private Map<String, String> parameters;
+    private Set<String> options;
+
+    ConfigParsingResult() {
+        parameters = new TreeMap<>();
+        options = new TreeSet<>();
+    }
+
+    @Override
+    public String get(String key) {
+        return parameters.getOrDefault(key, null);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        if (value == null)
+            options.add(key);
+        else
+            parameters.put(key, value);
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return parameters.containsKey(key) || options.contains(key);
+    }
+}
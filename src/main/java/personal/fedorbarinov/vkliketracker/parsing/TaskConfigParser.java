@@ -9,21 +9,162 @@ import java.util.TreeSet;
 public class TaskConfigParser extends ConfigParser {
     public static final String TARGET_LABEL = "TARGET";
     public static final String POST_LINK_LABEL = "POST_LINK";
+    public static final String TASK_LIST_LABEL = "TASK_LIST";
+    public static final String WALLS_LABEL = "WALLS";
+    public static final String SINCE_LABEL = "SINCE";
+    public static final String MAX_POSTS_LABEL = "MAX_POSTS";
+    public static final String WALL_THREADS_LABEL = "WALL_THREADS";
+    public static final String THREADS_LABEL = "THREADS";
+    public static final String PARSE_THREADS_LABEL = "PARSE_THREADS";
+    public static final String BATCH_SIZE_LABEL = "BATCH_SIZE";
+    public static final String BATCH_LINGER_LABEL = "BATCH_LINGER";
+    public static final String RATE_LIMIT_LABEL = "RATE_LIMIT";
+    public static final String INTERVAL_LABEL = "INTERVAL";
+    public static final String DAEMON_LABEL = "DAEMON";
+    public static final String HOT_RELOAD_LABEL = "HOT_RELOAD";
+    public static final String TRACK_CHANGES_LABEL = "TRACK_CHANGES";
+    public static final String STATE_PATH_LABEL = "STATE_PATH";
+    public static final String EVENT_LOG_LABEL = "EVENT_LOG";
+    public static final String OFF_HEAP_LIKERS_LABEL = "OFF_HEAP_LIKERS";
+    public static final String MAX_IN_FLIGHT_LABEL = "MAX_IN_FLIGHT";
+    public static final String NAME_CACHE_LABEL = "NAME_CACHE";
+    public static final String NAME_CACHE_SIZE_LABEL = "NAME_CACHE_SIZE";
+    public static final String NAME_CACHE_TTL_LABEL = "NAME_CACHE_TTL";
+    public static final String NAME_CACHE_NEGATIVE_TTL_LABEL = "NAME_CACHE_NEGATIVE_TTL";
+    public static final String CHECK_CACHE_SIZE_LABEL = "CHECK_CACHE_SIZE";
+    public static final String CHECK_CACHE_TTL_LABEL = "CHECK_CACHE_TTL";
+    public static final String CLUSTER_DIR_LABEL = "CLUSTER_DIR";
+    public static final String NODE_ID_LABEL = "NODE_ID";
+    public static final String CHECKPOINT_DIR_LABEL = "CHECKPOINT_DIR";
+    public static final String CHECKPOINT_MAX_AGE_LABEL = "CHECKPOINT_MAX_AGE";
+    public static final String LIKE_SERIES_LABEL = "LIKE_SERIES";
+    public static final String ASYNC_LOG_LABEL = "ASYNC_LOG";
+    public static final String RESULTS_LABEL = "RESULTS";
+    public static final String RESULTS_FORMAT_LABEL = "RESULTS_FORMAT";
+    public static final String LOG_BUFFER_LABEL = "LOG_BUFFER";
+    public static final String LOG_OVERFLOW_LABEL = "LOG_OVERFLOW";
+    public static final String API_URL_LABEL = "API_URL";
+    public static final String METRICS_PORT_LABEL = "METRICS_PORT";
+
+    private static final String DEFAULT_THREADS = "4";
+    private static final String DEFAULT_PARSE_THREADS = "2";
+    private static final String DEFAULT_MAX_POSTS = "1000";
+    private static final String DEFAULT_WALL_THREADS = "4";
+    private static final String DEFAULT_BATCH_SIZE = "25";
+    private static final String DEFAULT_BATCH_LINGER = "20";
+    private static final String DEFAULT_RATE_LIMIT = "3";
+    private static final String DEFAULT_INTERVAL = "60";
+    private static final String DEFAULT_STATE_PATH = "likes.state";
+    private static final String DEFAULT_MAX_IN_FLIGHT = "256";
+    private static final String DEFAULT_NAME_CACHE = "names.cache";
+    private static final String DEFAULT_NAME_CACHE_SIZE = "100000";
+    private static final String DEFAULT_NAME_CACHE_TTL = "86400";
+    private static final String DEFAULT_NAME_CACHE_NEGATIVE_TTL = "3600";
+    private static final String DEFAULT_CHECK_CACHE_SIZE = "100000";
+    private static final String DEFAULT_CHECK_CACHE_TTL = "10";
+    private static final String DEFAULT_CHECKPOINT_MAX_AGE = "3600";
+    private static final String DEFAULT_LOG_BUFFER = "8192";
+    private static final String DEFAULT_RESULTS_FORMAT = "JSONL";
+    private static final String DEFAULT_LOG_OVERFLOW = "BLOCK";
+    private static final String DEFAULT_API_URL = "https://api.vk.com/method/";
 
     private static Set<String> parametersNames;
+    private static Set<String> optionsNames;
 
     static {
         parametersNames = new TreeSet<>();
         parametersNames.add(TARGET_LABEL);
         parametersNames.add(POST_LINK_LABEL);
+        parametersNames.add(TASK_LIST_LABEL);
+        parametersNames.add(WALLS_LABEL);
+        parametersNames.add(SINCE_LABEL);
+        parametersNames.add(MAX_POSTS_LABEL);
+        parametersNames.add(WALL_THREADS_LABEL);
+        parametersNames.add(THREADS_LABEL);
+        parametersNames.add(PARSE_THREADS_LABEL);
+        parametersNames.add(BATCH_SIZE_LABEL);
+        parametersNames.add(BATCH_LINGER_LABEL);
+        parametersNames.add(RATE_LIMIT_LABEL);
+        parametersNames.add(INTERVAL_LABEL);
+        parametersNames.add(STATE_PATH_LABEL);
+        parametersNames.add(EVENT_LOG_LABEL);
+        parametersNames.add(MAX_IN_FLIGHT_LABEL);
+        parametersNames.add(NAME_CACHE_LABEL);
+        parametersNames.add(NAME_CACHE_SIZE_LABEL);
+        parametersNames.add(NAME_CACHE_TTL_LABEL);
+        parametersNames.add(NAME_CACHE_NEGATIVE_TTL_LABEL);
+        parametersNames.add(CHECK_CACHE_SIZE_LABEL);
+        parametersNames.add(CHECK_CACHE_TTL_LABEL);
+        parametersNames.add(CLUSTER_DIR_LABEL);
+        parametersNames.add(NODE_ID_LABEL);
+        parametersNames.add(CHECKPOINT_DIR_LABEL);
+        parametersNames.add(CHECKPOINT_MAX_AGE_LABEL);
+        parametersNames.add(LIKE_SERIES_LABEL);
+        parametersNames.add(LOG_BUFFER_LABEL);
+        parametersNames.add(LOG_OVERFLOW_LABEL);
+        parametersNames.add(RESULTS_LABEL);
+        parametersNames.add(RESULTS_FORMAT_LABEL);
+        parametersNames.add(API_URL_LABEL);
+        parametersNames.add(METRICS_PORT_LABEL);
+        //Adding all of the allowed options there
+        optionsNames = new TreeSet<>();
+        optionsNames.add(DAEMON_LABEL);
+        optionsNames.add(HOT_RELOAD_LABEL);
+        optionsNames.add(TRACK_CHANGES_LABEL);
+        optionsNames.add(OFF_HEAP_LIKERS_LABEL);
+        optionsNames.add(ASYNC_LOG_LABEL);
     }
 
     @Override
     protected boolean checkedParametersAppend() {
-        for (String parameterName : parametersNames)
-            if (!parameters.contains(parameterName))
-                return false;
-        return true;
+        if (!parameters.contains(THREADS_LABEL))
+            parameters.put(THREADS_LABEL, DEFAULT_THREADS);
+        if (!parameters.contains(PARSE_THREADS_LABEL))
+            parameters.put(PARSE_THREADS_LABEL, DEFAULT_PARSE_THREADS);
+        if (!parameters.contains(BATCH_SIZE_LABEL))
+            parameters.put(BATCH_SIZE_LABEL, DEFAULT_BATCH_SIZE);
+        if (!parameters.contains(BATCH_LINGER_LABEL))
+            parameters.put(BATCH_LINGER_LABEL, DEFAULT_BATCH_LINGER);
+        if (!parameters.contains(RATE_LIMIT_LABEL))
+            parameters.put(RATE_LIMIT_LABEL, DEFAULT_RATE_LIMIT);
+        if (!parameters.contains(INTERVAL_LABEL))
+            parameters.put(INTERVAL_LABEL, DEFAULT_INTERVAL);
+        if (!parameters.contains(STATE_PATH_LABEL))
+            parameters.put(STATE_PATH_LABEL, DEFAULT_STATE_PATH);
+        if (!parameters.contains(MAX_IN_FLIGHT_LABEL))
+            parameters.put(MAX_IN_FLIGHT_LABEL, DEFAULT_MAX_IN_FLIGHT);
+        if (!parameters.contains(NAME_CACHE_LABEL))
+            parameters.put(NAME_CACHE_LABEL, DEFAULT_NAME_CACHE);
+        if (!parameters.contains(NAME_CACHE_SIZE_LABEL))
+            parameters.put(NAME_CACHE_SIZE_LABEL, DEFAULT_NAME_CACHE_SIZE);
+        if (!parameters.contains(NAME_CACHE_TTL_LABEL))
+            parameters.put(NAME_CACHE_TTL_LABEL, DEFAULT_NAME_CACHE_TTL);
+        if (!parameters.contains(NAME_CACHE_NEGATIVE_TTL_LABEL))
+            parameters.put(NAME_CACHE_NEGATIVE_TTL_LABEL, DEFAULT_NAME_CACHE_NEGATIVE_TTL);
+        if (!parameters.contains(CHECK_CACHE_SIZE_LABEL))
+            parameters.put(CHECK_CACHE_SIZE_LABEL, DEFAULT_CHECK_CACHE_SIZE);
+        if (!parameters.contains(CHECK_CACHE_TTL_LABEL))
+            parameters.put(CHECK_CACHE_TTL_LABEL, DEFAULT_CHECK_CACHE_TTL);
+        if (!parameters.contains(CHECKPOINT_MAX_AGE_LABEL))
+            parameters.put(CHECKPOINT_MAX_AGE_LABEL, DEFAULT_CHECKPOINT_MAX_AGE);
+        if (!parameters.contains(LOG_BUFFER_LABEL))
+            parameters.put(LOG_BUFFER_LABEL, DEFAULT_LOG_BUFFER);
+        if (!parameters.contains(LOG_OVERFLOW_LABEL))
+            parameters.put(LOG_OVERFLOW_LABEL, DEFAULT_LOG_OVERFLOW);
+        if (!parameters.contains(RESULTS_FORMAT_LABEL))
+            parameters.put(RESULTS_FORMAT_LABEL, DEFAULT_RESULTS_FORMAT);
+        if (!parameters.contains(API_URL_LABEL))
+            parameters.put(API_URL_LABEL, DEFAULT_API_URL);
+        if (!parameters.contains(MAX_POSTS_LABEL))
+            parameters.put(MAX_POSTS_LABEL, DEFAULT_MAX_POSTS);
+        if (!parameters.contains(WALL_THREADS_LABEL))
+            parameters.put(WALL_THREADS_LABEL, DEFAULT_WALL_THREADS);
+
+        //Either a list of tasks, a single task or a target with walls to scan should be present
+        if (parameters.contains(TASK_LIST_LABEL))
+            return true;
+        return parameters.contains(TARGET_LABEL)
+                && (parameters.contains(POST_LINK_LABEL) || parameters.contains(WALLS_LABEL));
     }
 
     @Override
@@ -33,6 +174,6 @@ public class TaskConfigParser extends ConfigParser {
 
     @Override
     protected boolean isValidOption(String option) {
-        return false;
+        return optionsNames.contains(option);
     }
 }
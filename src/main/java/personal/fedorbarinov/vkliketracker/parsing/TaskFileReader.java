@@ -0,0 +1,514 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streaming reader of a task list file (one "TARGET POST_LINK" pair per line), meant for files of millions of lines.
+ * The file is split into chunks at line boundaries, every chunk is memory-mapped and scanned byte by byte
+ * on a pool of parser threads, so neither the file nor its lines are ever copied into strings: the owner
+ * and the post are taken from the link as numbers, and so is the target unless it is a screen name.
+ * Parsed chunks are handed over as blocks through a bounded queue as soon as they are ready, in the order
+ * they are finished, so tracking can start before the whole file is parsed, and parsing waits while
+ * the queue is full.
+ * Malformed lines are logged and skipped, links that don't point to a wall post are kept and marked as bad.
+ */
+public class TaskFileReader implements AutoCloseable {
+    private static final int DEFAULT_CHUNK_SIZE = 1 << 20; //Bytes per chunk, about 30000 tasks
+    private static final int BLOCKS_PER_THREAD = 2; //Parsed blocks waiting in the queue per parser thread
+    private static final int BOUNDARY_WINDOW = 4096; //Bytes read at once while looking for the end of a line
+    private static final int BYTES_PER_TASK = 32; //Rough length of a task line, used to size the blocks
+    private static final int MAX_NAME_LENGTH = 256; //Longer targets are malformed
+    private static final byte[] WALL = {'w', 'a', 'l', 'l'};
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final String THREAD_NAME = "TaskFileReader";
+    private static final String LOG_MSG_BAD_LINE = "Bad task list format (correct: TARGET POST_LINK) at byte %d, the line is skipped";
+    private static final String LOG_MSG_PARSED = "Task list parsed: %d tasks, %d bad lines, %.1f MB in %.1f s";
+    private static final String EXCEPTION_EMPTY = "Task list is empty";
+    private static final String EXCEPTION_INTERRUPTED = "Task list parsing has been interrupted";
+    private static final String EXCEPTION_PREFIX = "[Parsing]:"; //Prefix for an exception message
+    private static final double BYTES_IN_MEGABYTE = 1 << 20;
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    /**
+     * Tasks parsed from a chunk of the file, kept in primitive arrays
+     */
+    public static class TaskBlock {
+        private final String[] names; //Target screen names (null if the target is a user ID)
+        private final int[] targetIds; //Target user IDs (0 if the target is a screen name)
+        private final int[] ownerIds;
+        private final int[] postIds;
+        private final BitSet badLinks; //Tasks whose links don't point to a wall post
+        private final int size;
+        private final int badLines; //Number of malformed lines skipped in the chunk
+
+        private TaskBlock(String[] names, int[] targetIds, int[] ownerIds, int[] postIds, BitSet badLinks, int size,
+                          int badLines) {
+            this.names = names;
+            this.targetIds = targetIds;
+            this.ownerIds = ownerIds;
+            this.postIds = postIds;
+            this.badLinks = badLinks;
+            this.size = size;
+            this.badLines = badLines;
+        }
+
+        public int size() { return size; }
+
+        /**
+         * Get the target of a task as it was written
+         * @param index Task index in the block
+         * @return Screen name or user ID of the target
+         */
+        public String getTarget(int index) {
+            return names[index] != null ? names[index] : Integer.toString(targetIds[index]);
+        }
+
+        /**
+         * Get the target screen name of a task
+         * @param index Task index in the block
+         * @return Screen name (null if the target is given by its user ID)
+         */
+        public String getName(int index) { return names[index]; }
+
+        public int getTargetId(int index) { return targetIds[index]; }
+
+        public int getOwnerId(int index) { return ownerIds[index]; }
+
+        public int getPostId(int index) { return postIds[index]; }
+
+        /**
+         * Check whether the link of a task points to a wall post
+         * @param index Task index in the block
+         * @return True if the owner and the post have been parsed (False otherwise)
+         */
+        public boolean hasValidLink(int index) { return !badLinks.get(index); }
+    }
+
+    /**
+     * Growing block of tasks being parsed
+     */
+    static class BlockBuilder {
+        private String[] names;
+        private int[] targetIds;
+        private int[] ownerIds;
+        private int[] postIds;
+        private final BitSet badLinks;
+        private int size;
+        private int badLines;
+
+        BlockBuilder(int capacity) {
+            int initial = Math.max(16, capacity);
+            this.names = new String[initial];
+            this.targetIds = new int[initial];
+            this.ownerIds = new int[initial];
+            this.postIds = new int[initial];
+            this.badLinks = new BitSet();
+        }
+
+        void add(String name, int targetId, int ownerId, int postId, boolean badLink) {
+            if (size == names.length) {
+                int capacity = size + (size >> 1);
+                names = Arrays.copyOf(names, capacity);
+                targetIds = Arrays.copyOf(targetIds, capacity);
+                ownerIds = Arrays.copyOf(ownerIds, capacity);
+                postIds = Arrays.copyOf(postIds, capacity);
+            }
+            names[size] = name;
+            targetIds[size] = targetId;
+            ownerIds[size] = ownerId;
+            postIds[size] = postId;
+            if (badLink)
+                badLinks.set(size);
+            size++;
+        }
+
+        void add(TaskBlock block, int index) {
+            add(block.names[index], block.targetIds[index], block.ownerIds[index], block.postIds[index],
+                    block.badLinks.get(index));
+        }
+
+        TaskBlock build() {
+            return new TaskBlock(names, targetIds, ownerIds, postIds, badLinks, size, badLines);
+        }
+    }
+
+    private static final TaskBlock END = new TaskBlock(new String[0], new int[0], new int[0], new int[0], new BitSet(), 0, 0);
+
+    private final Path path;
+    private final int threads; //Number of parser threads
+    private final int chunkSize; //Bytes per chunk
+    private final BlockingQueue<TaskBlock> blocks; //Parsed blocks waiting to be taken
+    private final AtomicLong tasks; //Number of parsed tasks
+    private final AtomicLong badLines; //Number of skipped lines
+    private volatile String error; //Error message of a chunk that couldn't be read
+    private ExecutorService executor; //Parser threads
+    private FileChannel channel;
+    private long startTime;
+    private boolean finished; //Has the end been taken from the queue?
+
+    /**
+     * Public constructor of the class
+     * @param path Path to the task list
+     * @param threads Number of chunks parsed in parallel
+     */
+    public TaskFileReader(Path path, int threads) {
+        this(path, threads, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructor of the class with a custom chunk size
+     * @param path Path to the task list
+     * @param threads Number of chunks parsed in parallel
+     * @param chunkSize Approximate number of bytes per chunk
+     */
+    public TaskFileReader(Path path, int threads, int chunkSize) {
+        this.path = path;
+        this.threads = Math.max(1, threads);
+        this.chunkSize = Math.max(BOUNDARY_WINDOW, chunkSize);
+        this.blocks = new ArrayBlockingQueue<>(this.threads * BLOCKS_PER_THREAD);
+        this.tasks = new AtomicLong();
+        this.badLines = new AtomicLong();
+    }
+
+    /**
+     * Open the file and start parsing it in the background
+     * @throws Parser.ParsingException Exception that is thrown if the file couldn't be opened
+     */
+    public void start() throws Parser.ParsingException {
+        startTime = System.nanoTime();
+        List<long[]> chunks;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            chunks = split(channel, chunkSize);
+        } catch (IOException e) {
+            close();
+            throw new Parser.ParsingException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (chunks.isEmpty()) {
+            blocks.add(END);
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(chunks.size());
+        for (long[] chunk : chunks) {
+            executor.execute(() -> {
+                try {
+                    try {
+                        TaskBlock block = parseChunk(chunk[0], chunk[1]);
+                        if (block.size() > 0)
+                            blocks.put(block);
+                    } catch (IOException e) {
+                        error = e.getLocalizedMessage();
+                    }
+                    if (remaining.decrementAndGet() == 0) //Every other block has been put already
+                        blocks.put(END);
+                } catch (InterruptedException e) { //The reader has been closed
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    /**
+     * Take the next parsed block, waiting for it if necessary
+     * @return Block of tasks (null once the whole file has been parsed)
+     * @throws Parser.ParsingException Exception that is thrown if the file couldn't be read or has no tasks
+     */
+    public TaskBlock next() throws Parser.ParsingException {
+        if (finished)
+            return null;
+        TaskBlock block;
+        try {
+            block = blocks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new Parser.ParsingException(buildErrorMessage(EXCEPTION_INTERRUPTED));
+        }
+        if (block != END)
+            return block;
+        finished = true;
+        if (error != null)
+            throw new Parser.ParsingException(buildErrorMessage(error));
+        if (tasks.get() == 0)
+            throw new Parser.ParsingException(buildErrorMessage(EXCEPTION_EMPTY));
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_PARSED, tasks.get(), badLines.get(),
+                fileSize() / BYTES_IN_MEGABYTE, (System.nanoTime() - startTime) / NANOS_IN_SECOND));
+        return null;
+    }
+
+    /**
+     * Get the number of tasks parsed so far
+     * @return Number of tasks
+     */
+    public long getTasks() {
+        return tasks.get();
+    }
+
+    /**
+     * Stop parsing and close the file
+     */
+    @Override
+    public void close() {
+        if (executor != null)
+            executor.shutdownNow();
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) { //Nothing is written, so nothing is lost
+            }
+        }
+    }
+
+    /**
+     * Get the size of the file being read
+     * @return Size in bytes (0 if it is unknown)
+     */
+    private long fileSize() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Split a file into chunks of about the given size, every chunk ends right after a line break
+     * (or at the end of the file)
+     * @param channel File channel
+     * @param chunkSize Approximate number of bytes per chunk
+     * @return Start and end offsets of the chunks
+     * @throws IOException Exception that is thrown if the file couldn't be read
+     */
+    private static List<long[]> split(FileChannel channel, int chunkSize) throws IOException {
+        List<long[]> chunks = new ArrayList<>();
+        long size = channel.size();
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_WINDOW);
+        long start = 0;
+        while (start < size) {
+            long end = Math.min(size, start + chunkSize);
+            while (end < size) { //Move the end right after the next line break
+                window.clear();
+                int read = channel.read(window, end);
+                if (read <= 0) {
+                    end = size;
+                    break;
+                }
+                int lineBreak = -1;
+                for (int i = 0; i < read && lineBreak < 0; i++)
+                    if (window.get(i) == '\n')
+                        lineBreak = i;
+                if (lineBreak >= 0) {
+                    end += lineBreak + 1;
+                    break;
+                }
+                end += read;
+            }
+            chunks.add(new long[]{start, Math.min(end, size)});
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Map a chunk of the file and parse its lines
+     * @param start Offset of the chunk
+     * @param end Offset right after the chunk
+     * @return Parsed tasks
+     * @throws IOException Exception that is thrown if the chunk couldn't be mapped
+     */
+    private TaskBlock parseChunk(long start, long end) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        int limit = buffer.limit();
+        TaskBlock block = parse(buffer, start == 0 ? skipBom(buffer, limit) : 0, limit, start);
+        tasks.addAndGet(block.size);
+        badLines.addAndGet(block.badLines);
+        return block;
+    }
+
+    /**
+     * Parse the lines of a part of a task list, malformed lines are logged and skipped
+     * @param buffer Bytes of the task list
+     * @param from Offset of the first line in the buffer
+     * @param to Offset right after the last line in the buffer
+     * @param offset Offset of the buffer in the file, used in the log
+     * @return Parsed tasks
+     */
+    static TaskBlock parse(ByteBuffer buffer, int from, int to, long offset) {
+        BlockBuilder builder = new BlockBuilder((to - from) / BYTES_PER_TASK);
+        byte[] name = new byte[MAX_NAME_LENGTH];
+        int position = from;
+        while (position < to) {
+            int lineEnd = position;
+            while (lineEnd < to && buffer.get(lineEnd) != '\n')
+                lineEnd++;
+            if (!parseLine(buffer, position, lineEnd, builder, name)) {
+                builder.badLines++;
+                Logger.getInstance().log(Logger.LogKind.WARNING, buildErrorMessage(String.format(LOG_MSG_BAD_LINE, offset + position)));
+            }
+            position = lineEnd + 1;
+        }
+        return builder.build();
+    }
+
+    /**
+     * Skip the byte order mark at the start of a file
+     * @param buffer Bytes of the file from its start
+     * @param limit Number of the bytes
+     * @return Offset of the first line
+     */
+    static int skipBom(ByteBuffer buffer, int limit) {
+        return startsWith(buffer, 0, limit, BOM) ? BOM.length : 0;
+    }
+
+    /**
+     * Parse a line of the file, comments and empty lines are ignored
+     * @param buffer Mapped chunk
+     * @param from Offset of the line in the chunk
+     * @param to Offset of the line break (or of the end of the chunk)
+     * @param builder Block the parsed task is added to
+     * @param name Buffer for the bytes of a screen name
+     * @return False if the line is malformed (True otherwise)
+     */
+    private static boolean parseLine(ByteBuffer buffer, int from, int to, BlockBuilder builder, byte[] name) {
+        int targetStart = skipSpaces(buffer, from, to);
+        if (targetStart == to || buffer.get(targetStart) == '#') //Ignore comments and empty lines
+            return true;
+        int targetEnd = skipToken(buffer, targetStart, to);
+        int linkStart = skipSpaces(buffer, targetEnd, to);
+        int linkEnd = skipToken(buffer, linkStart, to);
+        if (linkStart == linkEnd || skipSpaces(buffer, linkEnd, to) != to)
+            return false;
+
+        //Processing target, a number that doesn't fit into int is a screen name like any other
+        long targetId = parseNumber(buffer, targetStart, targetEnd);
+        String target = null;
+        if (targetId < 0) {
+            int length = targetEnd - targetStart;
+            if (length > name.length)
+                return false;
+            for (int i = 0; i < length; i++)
+                name[i] = buffer.get(targetStart + i);
+            target = new String(name, 0, length, StandardCharsets.UTF_8);
+            targetId = 0;
+        }
+
+        //Processing link, the post is given by the digits after the last "wall"
+        int postStart = linkStart;
+        for (int i = linkEnd - WALL.length; i >= linkStart; i--) {
+            if (startsWith(buffer, i, linkEnd, WALL)) {
+                postStart = i + WALL.length;
+                break;
+            }
+        }
+        boolean negative = postStart < linkEnd && buffer.get(postStart) == '-';
+        int ownerStart = negative ? postStart + 1 : postStart;
+        int separator = ownerStart;
+        while (separator < linkEnd && buffer.get(separator) != '_')
+            separator++;
+        long ownerId = parseNumber(buffer, ownerStart, separator);
+        long postId = separator < linkEnd ? parseNumber(buffer, separator + 1, linkEnd) : -1;
+        if (ownerId < 0 || postId < 0)
+            builder.add(target, (int) targetId, 0, 0, true);
+        else
+            builder.add(target, (int) targetId, (int) (negative ? -ownerId : ownerId), (int) postId, false);
+        return true;
+    }
+
+    /**
+     * Parse a non-negative decimal number
+     * @param buffer Mapped chunk
+     * @param from Offset of the first digit
+     * @param to Offset right after the last digit
+     * @return The number (-1 if there are no digits, something else is there, or it doesn't fit into int)
+     */
+    private static long parseNumber(ByteBuffer buffer, int from, int to) {
+        if (from == to || to - from > 10)
+            return -1;
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value <= Integer.MAX_VALUE ? value : -1;
+    }
+
+    /**
+     * Skip spaces, tabs and carriage returns
+     * @param buffer Mapped chunk
+     * @param from Offset to start from
+     * @param to Offset to stop at
+     * @return Offset of the first other byte (or to)
+     */
+    private static int skipSpaces(ByteBuffer buffer, int from, int to) {
+        while (from < to && isSpace(buffer.get(from)))
+            from++;
+        return from;
+    }
+
+    /**
+     * Skip everything but spaces, tabs and carriage returns
+     * @param buffer Mapped chunk
+     * @param from Offset to start from
+     * @param to Offset to stop at
+     * @return Offset of the first space (or to)
+     */
+    private static int skipToken(ByteBuffer buffer, int from, int to) {
+        while (from < to && !isSpace(buffer.get(from)))
+            from++;
+        return from;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * Check whether bytes of a chunk start with a prefix
+     * @param buffer Mapped chunk
+     * @param from Offset to check at
+     * @param to Offset the prefix mustn't cross
+     * @param prefix Prefix
+     * @return True if the prefix is there (False otherwise)
+     */
+    private static boolean startsWith(ByteBuffer buffer, int from, int to, byte[] prefix) {
+        if (to - from < prefix.length)
+            return false;
+        for (int i = 0; i < prefix.length; i++)
+            if (buffer.get(from + i) != prefix[i])
+                return false;
+        return true;
+    }
+
+    /**
+     * Build error message for an exception
+     * @param message Message body
+     * @return Built error message
+     */
+    private static String buildErrorMessage(String message) {
+        return EXCEPTION_PREFIX + ' ' + message;
+    }
+}
@@ -0,0 +1,61 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser of a task list file (one "TARGET POST_LINK" pair per line)
+ */
+public class TaskListParser {
+    private static final String COMMENT_PREFIX = "#"; //Comments in a task list start with this
+    private static final String SEPARATOR_TASK = "\\s+"; //Target and post link are separated with whitespaces
+    private static final String EXCEPTION_BAD_FORMAT = "Bad task list format (correct: TARGET POST_LINK) at line %d";
+    private static final String EXCEPTION_EMPTY = "Task list is empty";
+    private static final String EXCEPTION_PREFIX = "[Parsing]:"; //Prefix for an exception message
+
+    /**
+     * Parse task list
+     * @param in Input source stream
+     * @return Parsed tasks, each of them contains TARGET and POST_LINK parameters
+     * @throws Parser.ParsingException Exception that is thrown during parsing
+     */
+    public List<Parser.ParsingResult> parse(InputStream in) throws Parser.ParsingException {
+        List<Parser.ParsingResult> tasks = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            int lineNumber = 0;
+            //Parse task list line by line
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) //Ignore comments and empty lines
+                    continue;
+                String parts[] = line.split(SEPARATOR_TASK);
+                if (parts.length != 2)
+                    throw new Parser.ParsingException(buildErrorMessage(String.format(EXCEPTION_BAD_FORMAT, lineNumber)));
+                Parser.ParsingResult task = new ConfigParsingResult();
+                task.put(TaskConfigParser.TARGET_LABEL, parts[0]);
+                task.put(TaskConfigParser.POST_LINK_LABEL, parts[1]);
+                tasks.add(task);
+            }
+        } catch (IOException e) {
+            throw new Parser.ParsingException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        if (tasks.isEmpty())
+            throw new Parser.ParsingException(buildErrorMessage(EXCEPTION_EMPTY));
+        return tasks;
+    }
+
+    /**
+     * Build error message for an exception
+     * @param message Message body
+     * @return Built error message
+     */
+    private static String buildErrorMessage(String message) {
+        return EXCEPTION_PREFIX + ' ' + message;
+    }
+}
@@ -0,0 +1,314 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watcher of a task list file reporting which tasks have been added and removed since the previous load.
+ * The file is split into content-defined chunks: a chunk ends after a line whose hash has its low bits
+ * zeroed, so an edit changes only the chunks around it, and the chunks after it keep their boundaries
+ * even if lines are inserted or removed. Every chunk is fingerprinted with the hashes of its lines.
+ * A reload hashes the file without parsing it, parses only the chunks with new fingerprints,
+ * and hands over the tasks of the new chunks as added and the tasks of the vanished chunks as removed,
+ * except for the tasks that are found in both, so only the tasks that have really changed are reported.
+ */
+public class TaskListWatcher implements AutoCloseable {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L; //FNV-1a hash of the lines
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long BOUNDARY_MASK = (1 << 10) - 1; //A chunk has about 1024 lines
+    private static final int MAX_CHUNK_LINES = 1 << 14; //Longer chunks are cut anyway
+    private static final long QUIET_PERIOD = 500; //Time in milliseconds without events before the file is reloaded
+    private static final String THREAD_NAME = "TaskListWatcher";
+    private static final String LOG_MSG_SCANNED = "Task list scanned: %d of %d chunks changed, %d tasks added, %d removed in %.1f ms";
+    private static final String LOG_MSG_RELOAD_ERROR = "Task list couldn't be reloaded, the previous tasks are kept: %s";
+    private static final String EXCEPTION_EMPTY = "Task list is empty";
+    private static final String EXCEPTION_TOO_LARGE = "Task list is too large to be watched";
+    private static final String EXCEPTION_PREFIX = "[Parsing]:"; //Prefix for an exception message
+    private static final double NANOS_IN_MILLI = 1e6;
+
+    /**
+     * Receiver of the changes of the task list
+     */
+    public interface Listener {
+        /**
+         * Called on the watcher thread after the file has changed, the next change waits until it returns
+         * @param change Added and removed tasks
+         */
+        void onChange(Change change);
+    }
+
+    /**
+     * Tasks added and removed by a reload
+     */
+    public static class Change {
+        private final List<TaskFileReader.TaskBlock> added;
+        private final List<TaskFileReader.TaskBlock> removed;
+
+        private Change(List<TaskFileReader.TaskBlock> added, List<TaskFileReader.TaskBlock> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public List<TaskFileReader.TaskBlock> getAdded() { return added; }
+
+        public List<TaskFileReader.TaskBlock> getRemoved() { return removed; }
+
+        /**
+         * Check whether the reload has changed any task
+         * @return True if no task has been added or removed (False otherwise)
+         */
+        public boolean isEmpty() {
+            return count(added) == 0 && count(removed) == 0;
+        }
+    }
+
+    private final Path path;
+    private Map<Long, List<TaskFileReader.TaskBlock>> chunks; //Parsed chunks by fingerprint, as of the previous load
+    private WatchService watchService;
+
+    /**
+     * Public constructor of the class
+     * @param path Path to the task list
+     */
+    public TaskListWatcher(Path path) {
+        this.path = path.toAbsolutePath();
+        this.chunks = new HashMap<>();
+    }
+
+    /**
+     * Load the file and find the tasks added and removed since the previous load (everything is added
+     * by the first one)
+     * @return Added and removed tasks
+     * @throws Parser.ParsingException Exception that is thrown if the file couldn't be read, or if it has no tasks
+     * on the first load
+     */
+    public synchronized Change reload() throws Parser.ParsingException {
+        long startTime = System.nanoTime();
+        boolean first = chunks.isEmpty();
+        Map<Long, List<TaskFileReader.TaskBlock>> previous = chunks;
+        Map<Long, List<TaskFileReader.TaskBlock>> current = new HashMap<>();
+        Map<Long, Integer> kept = new HashMap<>(); //Number of the previous chunks found again by fingerprint
+        List<TaskFileReader.TaskBlock> added = new ArrayList<>();
+        int total = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new Parser.ParsingException(buildErrorMessage(EXCEPTION_TOO_LARGE));
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int limit = buffer.limit();
+            int position = TaskFileReader.skipBom(buffer, limit);
+            int chunkStart = position;
+            int lines = 0;
+            long fingerprint = FNV_OFFSET;
+            while (position < limit) {
+                long lineHash = FNV_OFFSET;
+                byte b;
+                while (position < limit && (b = buffer.get(position)) != '\n') {
+                    lineHash = (lineHash ^ (b & 0xFF)) * FNV_PRIME;
+                    position++;
+                }
+                position = Math.min(position + 1, limit);
+                fingerprint = (fingerprint ^ lineHash) * FNV_PRIME;
+                lines++;
+                if ((lineHash & BOUNDARY_MASK) != 0 && lines < MAX_CHUNK_LINES && position < limit)
+                    continue;
+
+                //The chunk is over, it is parsed unless the previous load had the same one
+                total++;
+                List<TaskFileReader.TaskBlock> same = previous.get(fingerprint);
+                int found = kept.getOrDefault(fingerprint, 0);
+                TaskFileReader.TaskBlock block;
+                if (same != null && found < same.size()) { //The previous state stays intact until the end
+                    block = same.get(found);
+                    kept.put(fingerprint, found + 1);
+                } else {
+                    block = TaskFileReader.parse(buffer, chunkStart, position, 0);
+                    added.add(block);
+                }
+                current.computeIfAbsent(fingerprint, key -> new ArrayList<>(1)).add(block);
+                chunkStart = position;
+                lines = 0;
+                fingerprint = FNV_OFFSET;
+            }
+        } catch (IOException e) {
+            throw new Parser.ParsingException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+
+        List<TaskFileReader.TaskBlock> removed = new ArrayList<>();
+        for (Map.Entry<Long, List<TaskFileReader.TaskBlock>> chunk : previous.entrySet()) {
+            List<TaskFileReader.TaskBlock> same = chunk.getValue();
+            removed.addAll(same.subList(kept.getOrDefault(chunk.getKey(), 0), same.size()));
+        }
+        if (first && count(added) == 0)
+            throw new Parser.ParsingException(buildErrorMessage(EXCEPTION_EMPTY));
+        chunks = current;
+        int changed = added.size();
+        Change change = net(added, removed);
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_SCANNED, changed, total,
+                count(change.added), count(change.removed), (System.nanoTime() - startTime) / NANOS_IN_MILLI));
+        return change;
+    }
+
+    /**
+     * Start watching the file, it is reloaded once it has been left alone for a moment after a change
+     * @param listener Receiver of the changes
+     * @throws Parser.ParsingException Exception that is thrown if the directory of the file couldn't be watched
+     */
+    public void start(Listener listener) throws Parser.ParsingException {
+        Path directory = path.getParent();
+        try {
+            watchService = directory.getFileSystem().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            close();
+            throw new Parser.ParsingException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        Thread thread = new Thread(() -> watch(listener), THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stop watching the file
+     */
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close(); //Wakes the watcher thread up
+            } catch (IOException e) { //Nothing is written, so nothing is lost
+            }
+        }
+    }
+
+    /**
+     * Wait for the changes of the file and reload it until the watch service is closed
+     * @param listener Receiver of the changes
+     */
+    private void watch(Listener listener) {
+        try {
+            while (true) {
+                if (!takeEvents(watchService.take()))
+                    continue;
+                //Editors save a file in several writes, wait until they are over
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null)
+                    takeEvents(key);
+                try {
+                    Change change = reload();
+                    if (!change.isEmpty())
+                        listener.onChange(change);
+                } catch (Parser.ParsingException e) { //The file may be replaced right now
+                    Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_RELOAD_ERROR, e.getMessage()));
+                } catch (RuntimeException e) { //The watcher must survive, otherwise the next changes are lost
+                    Logger.getInstance().log(Logger.LogKind.ERROR, e.toString());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) { //The watcher has been closed
+        }
+    }
+
+    /**
+     * Take the events of a watch key and reset it
+     * @param key Signalled watch key
+     * @return True if the task list is among the changed files (False otherwise)
+     */
+    private boolean takeEvents(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || context instanceof Path && path.getFileName().equals(context))
+                changed = true;
+        }
+        key.reset();
+        return changed;
+    }
+
+    /**
+     * Drop the tasks that are both added and removed, a changed chunk holds mostly the same tasks as the old one
+     * @param added Tasks of the new chunks
+     * @param removed Tasks of the vanished chunks
+     * @return Tasks that have really been added and removed
+     */
+    private static Change net(List<TaskFileReader.TaskBlock> added, List<TaskFileReader.TaskBlock> removed) {
+        if (removed.isEmpty())
+            return new Change(added, removed);
+        Map<String, Integer> gone = new HashMap<>(); //Number of the removed tasks by key
+        for (TaskFileReader.TaskBlock block : removed)
+            for (int i = 0; i < block.size(); i++)
+                gone.merge(key(block, i), 1, Integer::sum);
+        TaskFileReader.BlockBuilder addedTasks = new TaskFileReader.BlockBuilder(0);
+        for (TaskFileReader.TaskBlock block : added) {
+            for (int i = 0; i < block.size(); i++) {
+                String key = key(block, i);
+                Integer count = gone.get(key);
+                if (count != null && count > 0)
+                    gone.put(key, count - 1); //The task is still there
+                else
+                    addedTasks.add(block, i);
+            }
+        }
+        TaskFileReader.BlockBuilder removedTasks = new TaskFileReader.BlockBuilder(0);
+        for (TaskFileReader.TaskBlock block : removed) {
+            for (int i = 0; i < block.size(); i++) {
+                String key = key(block, i);
+                Integer count = gone.get(key);
+                if (count != null && count > 0) {
+                    gone.put(key, count - 1);
+                    removedTasks.add(block, i);
+                }
+            }
+        }
+        return new Change(Collections.singletonList(addedTasks.build()), Collections.singletonList(removedTasks.build()));
+    }
+
+    /**
+     * Build a key identifying a task
+     * @param block Block of the task
+     * @param index Task index in the block
+     * @return Target and post of the task
+     */
+    private static String key(TaskFileReader.TaskBlock block, int index) {
+        return block.hasValidLink(index)
+                ? block.getTarget(index) + ' ' + block.getOwnerId(index) + '_' + block.getPostId(index)
+                : block.getTarget(index);
+    }
+
+    /**
+     * Count the tasks of blocks
+     * @param blocks Blocks of tasks
+     * @return Number of tasks
+     */
+    private static int count(List<TaskFileReader.TaskBlock> blocks) {
+        int count = 0;
+        for (TaskFileReader.TaskBlock block : blocks)
+            count += block.size();
+        return count;
+    }
+
+    /**
+     * Build error message for an exception
+     * @param message Message body
+     * @return Built error message
+     */
+    private static String buildErrorMessage(String message) {
+        return EXCEPTION_PREFIX + ' ' + message;
+    }
+}
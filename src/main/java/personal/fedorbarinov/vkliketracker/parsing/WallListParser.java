@@ -0,0 +1,52 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parser of a wall list file (one wall owner per line: an ID, a screen name or a link to the wall)
+ */
+public class WallListParser {
+    private static final String COMMENT_PREFIX = "#"; //Comments in a wall list start with this
+    private static final String BOM = "\uFEFF"; //Byte order mark an editor may put at the start of the file
+    private static final String SEPARATOR_OWNER = "\\s+"; //Anything after the owner is ignored
+    private static final String EXCEPTION_EMPTY = "Wall list is empty";
+    private static final String EXCEPTION_PREFIX = "[Parsing]:"; //Prefix for an exception message
+
+    /**
+     * Parse wall list
+     * @param in Input source stream
+     * @return Owners of the walls as they are written
+     * @throws Parser.ParsingException Exception that is thrown during parsing
+     */
+    public List<String> parse(InputStream in) throws Parser.ParsingException {
+        List<String> owners = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = (line.startsWith(BOM) ? line.substring(BOM.length()) : line).trim();
+                if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) //Ignore comments and empty lines
+                    continue;
+                owners.add(line.split(SEPARATOR_OWNER)[0]);
+            }
+        } catch (IOException e) {
+            throw new Parser.ParsingException(buildErrorMessage(e.getLocalizedMessage()));
+        }
+        if (owners.isEmpty())
+            throw new Parser.ParsingException(buildErrorMessage(EXCEPTION_EMPTY));
+        return owners;
+    }
+
+    /**
+     * Build error message for an exception
+     * @param message Message body
+     * @return Built error message
+     */
+    private static String buildErrorMessage(String message) {
+        return EXCEPTION_PREFIX + ' ' + message;
+    }
+}
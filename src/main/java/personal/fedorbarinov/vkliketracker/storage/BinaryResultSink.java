@@ -0,0 +1,98 @@
+package personal.fedorbarinov.vkliketracker.storage;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.tracker.ResultSink;
+import personal.fedorbarinov.vkliketracker.tracker.TrackingResult;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Writes results in a compact binary form. The file starts with the MAGIC number,
+ * then every record holds the timestamp and the latency (longs), the target, owner and post IDs (ints),
+ * the status ordinal (a byte) and the target as it was written in the task (modified UTF-8).
+ * Records go through a buffer, which goes to the file when it is full or when the sink is flushed.
+ */
+public class BinaryResultSink implements ResultSink {
+    public static final int MAGIC = 0x564B5231; //"VKR1"
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String ERROR_BAD_FILE = "Not a result file: %s";
+    private static final String LOG_MSG_WRITE = "Result couldn't be written: %s";
+
+    private final DataOutputStream out; //Buffered output of the file
+
+    /**
+     * Open a sink, appending to the file if it exists
+     * @param path Path to the file
+     * @throws IOException Exception that is thrown if the file couldn't be opened
+     */
+    public BinaryResultSink(Path path) throws IOException {
+        boolean created = !Files.exists(path) || Files.size(path) == 0;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), BUFFER_SIZE));
+        if (created)
+            out.writeInt(MAGIC);
+    }
+
+    /**
+     * Read the results of a file
+     * @param path Path to the file
+     * @param consumer Receives the results in the order they were written
+     * @throws IOException Exception that is thrown if the file couldn't be read
+     */
+    public static void read(Path path, Consumer<TrackingResult> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(String.format(ERROR_BAD_FILE, path));
+            TrackingResult.Status[] statuses = TrackingResult.Status.values();
+            while (true) {
+                long timestamp;
+                try {
+                    timestamp = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                long latency = in.readLong();
+                int targetId = in.readInt();
+                int ownerId = in.readInt();
+                int postId = in.readInt();
+                TrackingResult.Status status = statuses[in.readByte()];
+                String target = in.readUTF();
+                consumer.accept(new TrackingResult(target, targetId, ownerId, postId, status, timestamp, latency));
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onResult(TrackingResult result) {
+        try {
+            out.writeLong(result.getTimestamp());
+            out.writeLong(result.getLatency());
+            out.writeInt(result.getTargetId());
+            out.writeInt(result.getOwnerId());
+            out.writeInt(result.getPostId());
+            out.writeByte(result.getStatus().ordinal());
+            out.writeUTF(result.getTarget());
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, String.format(LOG_MSG_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
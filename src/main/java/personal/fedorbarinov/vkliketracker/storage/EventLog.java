@@ -0,0 +1,165 @@
+package personal.fedorbarinov.vkliketracker.storage;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.tracker.LikeEvent;
+import personal.fedorbarinov.vkliketracker.tracker.LikeEventListener;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only log of like and unlike events.
+ * Events are written to fixed-width records of memory-mapped segment files. When a segment is full,
+ * the log rolls over to a new one. Segments are numbered in order, so a reader visits the events
+ * in the order they were appended.
+ */
+public class EventLog implements LikeEventListener, AutoCloseable {
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 22; //96 MB segments
+    private static final int MAX_SEGMENT_RECORDS = Integer.MAX_VALUE / EventLogSegment.RECORD_SIZE;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String SEGMENT_NAME_FORMAT = "%010d";
+    private static final String LOG_MSG_APPEND = "Event couldn't be written to the event log: %s";
+
+    private final Path directory; //Directory of the segment files
+    private final int segmentRecords; //Number of records in a new segment
+    private final List<EventLogSegment> segments; //Segments in order, the last one is being written
+
+    private int lastNumber; //Number of the segment being written
+
+    private EventLog(Path directory, int segmentRecords) {
+        this.directory = directory;
+        this.segmentRecords = Math.max(EventLogSegment.BLOCK_RECORDS, Math.min(segmentRecords, MAX_SEGMENT_RECORDS));
+        this.segments = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Open an event log, creating it if necessary
+     * @param directory Directory of the segment files
+     * @param segmentRecords Number of records in a new segment
+     * @return Opened event log
+     * @throws IOException Exception that is thrown if the log couldn't be opened
+     */
+    public static EventLog open(Path directory, int segmentRecords) throws IOException {
+        Files.createDirectories(directory);
+        EventLog log = new EventLog(directory, segmentRecords);
+        TreeMap<Integer, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), path);
+                } catch (NumberFormatException e) {
+                    //Not a segment file
+                }
+            }
+        }
+        List<EventLogSegment> opened = new ArrayList<>(files.size());
+        for (Integer number : files.keySet()) {
+            opened.add(EventLogSegment.open(files.get(number), log.indexPath(number)));
+            log.lastNumber = number;
+        }
+        if (opened.isEmpty())
+            opened.add(EventLogSegment.create(log.segmentPath(0), log.indexPath(0), log.segmentRecords));
+        log.segments.addAll(opened);
+        return log;
+    }
+
+    /**
+     * Append an event
+     * @param event Like or unlike event
+     * @throws IOException Exception that is thrown if a new segment couldn't be created
+     */
+    public synchronized void append(LikeEvent event) throws IOException {
+        EventLogSegment current = segments.get(segments.size() - 1);
+        if (current.append(event))
+            return;
+        //The segment is full: seal it and roll over
+        current.flush();
+        lastNumber++;
+        EventLogSegment next = EventLogSegment.create(segmentPath(lastNumber), indexPath(lastNumber), segmentRecords);
+        segments.add(next);
+        next.append(event);
+    }
+
+    @Override
+    public void onEvent(LikeEvent event) {
+        try {
+            append(event);
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, String.format(LOG_MSG_APPEND, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Pass the events of a time range to a listener
+     * @param from Start of the range (inclusive, milliseconds since the epoch)
+     * @param to End of the range (exclusive, milliseconds since the epoch)
+     * @param listener Receives the events
+     */
+    public void scan(long from, long to, LikeEventListener listener) {
+        for (EventLogSegment segment : segments)
+            segment.scan(from, to, listener);
+    }
+
+    /**
+     * Pass the history of a post to a listener
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param listener Receives the events
+     */
+    public void scanPost(int ownerId, int postId, LikeEventListener listener) {
+        for (EventLogSegment segment : segments)
+            segment.scanPost(ownerId, postId, listener);
+    }
+
+    /**
+     * Get the number of events in the log
+     * @return Number of events
+     */
+    public long size() {
+        long size = 0;
+        for (EventLogSegment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    /**
+     * Flush the segment being written to disk
+     * @throws IOException Exception that is thrown if the segment couldn't be flushed
+     */
+    public synchronized void flush() throws IOException {
+        segments.get(segments.size() - 1).flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (EventLogSegment segment : segments)
+            segment.close();
+    }
+
+    /**
+     * Get the path to a segment file
+     * @param number Number of the segment
+     * @return Path to the file
+     */
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format(SEGMENT_NAME_FORMAT, number) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Get the path to a sparse index file
+     * @param number Number of the segment
+     * @return Path to the file
+     */
+    private Path indexPath(int number) {
+        return directory.resolve(String.format(SEGMENT_NAME_FORMAT, number) + INDEX_SUFFIX);
+    }
+}
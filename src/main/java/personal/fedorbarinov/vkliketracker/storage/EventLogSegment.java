@@ -0,0 +1,262 @@
+package personal.fedorbarinov.vkliketracker.storage;
+
+import personal.fedorbarinov.vkliketracker.tracker.LikeEvent;
+import personal.fedorbarinov.vkliketracker.tracker.LikeEventListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped segment file of the event log.
+ * A record is 24 bytes: timestamp (8), owner ID (4), post ID (4), user ID (4), kind (1) and padding.
+ * The kind is written last and is never zero, so a zero kind marks the end of the written records.
+ * Every block of records has its minimal and maximal timestamps in a sparse index, which lets
+ * time range scans skip whole blocks.
+ */
+class EventLogSegment implements AutoCloseable {
+    static final int RECORD_SIZE = 24;
+    static final int BLOCK_RECORDS = 1024; //Number of records covered by one entry of the sparse index
+
+    private static final int OFFSET_OWNER = 8;
+    private static final int OFFSET_POST = 12;
+    private static final int OFFSET_USER = 16;
+    private static final int OFFSET_KIND = 20;
+    private static final byte KIND_EMPTY = 0;
+    private static final byte KIND_LIKE = 1;
+    private static final byte KIND_UNLIKE = 2;
+
+    private final Path indexPath; //Path to the sparse index file
+    private final int capacity; //Maximal number of records in the segment
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long[] blockMin; //Minimal timestamp of every block
+    private final long[] blockMax; //Maximal timestamp of every block
+
+    private volatile int size; //Number of written records
+
+    private EventLogSegment(Path indexPath, int capacity, FileChannel channel) throws IOException {
+        this.indexPath = indexPath;
+        this.capacity = capacity;
+        this.channel = channel;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * RECORD_SIZE);
+        int blocks = (capacity + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+    }
+
+    /**
+     * Create an empty segment
+     * @param path Path to the segment file
+     * @param indexPath Path to the sparse index file
+     * @param capacity Maximal number of records in the segment
+     * @return Created segment
+     * @throws IOException Exception that is thrown if the file couldn't be created
+     */
+    static EventLogSegment create(Path path, Path indexPath, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new EventLogSegment(indexPath, capacity, channel);
+    }
+
+    /**
+     * Open an existing segment, recovering the number of written records after a crash
+     * @param path Path to the segment file
+     * @param indexPath Path to the sparse index file
+     * @return Opened segment
+     * @throws IOException Exception that is thrown if the file couldn't be opened
+     */
+    static EventLogSegment open(Path path, Path indexPath) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        EventLogSegment segment = new EventLogSegment(indexPath, (int) (channel.size() / RECORD_SIZE), channel);
+        segment.size = segment.recoverSize();
+        if (!segment.readIndex())
+            segment.rebuildIndex();
+        return segment;
+    }
+
+    /**
+     * Append a record
+     * @param event Like or unlike event
+     * @return True if the record is appended (False if the segment is full)
+     */
+    boolean append(LikeEvent event) {
+        int index = size;
+        if (index >= capacity)
+            return false;
+        int offset = index * RECORD_SIZE;
+        buffer.putLong(offset, event.getTimestamp());
+        buffer.putInt(offset + OFFSET_OWNER, event.getOwnerId());
+        buffer.putInt(offset + OFFSET_POST, event.getPostId());
+        buffer.putInt(offset + OFFSET_USER, event.getUserId());
+        buffer.put(offset + OFFSET_KIND, event.getKind() == LikeEvent.Kind.LIKE ? KIND_LIKE : KIND_UNLIKE);
+        int block = index / BLOCK_RECORDS;
+        blockMin[block] = Math.min(blockMin[block], event.getTimestamp());
+        blockMax[block] = Math.max(blockMax[block], event.getTimestamp());
+        size = index + 1; //Publishes the record to the readers
+        return true;
+    }
+
+    /**
+     * Pass the events of a time range to a listener
+     * @param from Start of the range (inclusive, milliseconds since the epoch)
+     * @param to End of the range (exclusive, milliseconds since the epoch)
+     * @param listener Receives the events
+     */
+    void scan(long from, long to, LikeEventListener listener) {
+        int written = size;
+        int fullBlocks = written / BLOCK_RECORDS;
+        for (int block = 0; block * BLOCK_RECORDS < written; block++) {
+            //The index of the block being written may lag behind, so it is always scanned
+            if (block < fullBlocks && (blockMax[block] < from || blockMin[block] >= to))
+                continue;
+            int end = Math.min(written, (block + 1) * BLOCK_RECORDS);
+            for (int index = block * BLOCK_RECORDS; index < end; index++) {
+                long timestamp = buffer.getLong(index * RECORD_SIZE);
+                if (timestamp >= from && timestamp < to)
+                    listener.onEvent(read(index));
+            }
+        }
+    }
+
+    /**
+     * Pass the events of a post to a listener (only owner and post IDs of the other records are read)
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param listener Receives the events
+     */
+    void scanPost(int ownerId, int postId, LikeEventListener listener) {
+        int written = size;
+        for (int index = 0; index < written; index++) {
+            int offset = index * RECORD_SIZE;
+            if (buffer.getInt(offset + OFFSET_POST) == postId && buffer.getInt(offset + OFFSET_OWNER) == ownerId)
+                listener.onEvent(read(index));
+        }
+    }
+
+    /**
+     * Flush the records to disk and persist the sparse index
+     * @throws IOException Exception that is thrown if the index couldn't be written
+     */
+    void flush() throws IOException {
+        buffer.force();
+        writeIndex();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Get the number of written records
+     * @return Number of records
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Read a record
+     * @param index Index of the record
+     * @return Event stored in the record
+     */
+    private LikeEvent read(int index) {
+        int offset = index * RECORD_SIZE;
+        return new LikeEvent(buffer.getInt(offset + OFFSET_OWNER), buffer.getInt(offset + OFFSET_POST),
+                buffer.getInt(offset + OFFSET_USER), buffer.getLong(offset),
+                buffer.get(offset + OFFSET_KIND) == KIND_LIKE ? LikeEvent.Kind.LIKE : LikeEvent.Kind.UNLIKE);
+    }
+
+    /**
+     * Find the number of written records: binary search for the last started block, then a scan inside it
+     * @return Number of records
+     */
+    private int recoverSize() {
+        int low = 0;
+        int high = (capacity + BLOCK_RECORDS - 1) / BLOCK_RECORDS; //Blocks before low are started, blocks from high aren't
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (kindAt(middle * BLOCK_RECORDS) != KIND_EMPTY)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        if (low == 0)
+            return 0;
+        int index = (low - 1) * BLOCK_RECORDS;
+        int end = Math.min(capacity, low * BLOCK_RECORDS);
+        while (index < end && kindAt(index) != KIND_EMPTY)
+            index++;
+        return index;
+    }
+
+    /**
+     * Get the kind of a record
+     * @param index Index of the record
+     * @return Kind byte (KIND_EMPTY if the record isn't written)
+     */
+    private byte kindAt(int index) {
+        return buffer.get(index * RECORD_SIZE + OFFSET_KIND);
+    }
+
+    /**
+     * Read the sparse index from its file
+     * @return True if the index matches the records (False otherwise)
+     */
+    private boolean readIndex() {
+        if (!Files.exists(indexPath))
+            return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath)))) {
+            if (in.readInt() != size)
+                return false;
+            int blocks = (size + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+            for (int block = 0; block < blocks; block++) {
+                blockMin[block] = in.readLong();
+                blockMax[block] = in.readLong();
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Rebuild the sparse index from the records
+     */
+    private void rebuildIndex() {
+        for (int index = 0; index < size; index++) {
+            long timestamp = buffer.getLong(index * RECORD_SIZE);
+            int block = index / BLOCK_RECORDS;
+            blockMin[block] = Math.min(blockMin[block], timestamp);
+            blockMax[block] = Math.max(blockMax[block], timestamp);
+        }
+    }
+
+    /**
+     * Write the sparse index to its file
+     * @throws IOException Exception that is thrown if the file couldn't be written
+     */
+    private void writeIndex() throws IOException {
+        int written = size;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)))) {
+            out.writeInt(written);
+            int blocks = (written + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+            for (int block = 0; block < blocks; block++) {
+                out.writeLong(blockMin[block]);
+                out.writeLong(blockMax[block]);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package personal.fedorbarinov.vkliketracker.storage;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.tracker.ResultSink;
+import personal.fedorbarinov.vkliketracker.tracker.TrackingResult;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes results as JSON Lines, one object per line:
+ * {"target":"durov","target_id":1,"owner_id":1,"post_id":2442097,"status":"LIKED","timestamp":1538000000000,"latency_ns":1234567}
+ * Lines are appended to a buffer, which goes to the file when it is full or when the sink is flushed.
+ */
+public class JsonLinesResultSink implements ResultSink {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String LOG_MSG_WRITE = "Result couldn't be written: %s";
+
+    private final Writer writer; //Buffered writer of the file
+    private final StringBuilder line; //Builds a line, reused between the results
+
+    /**
+     * Open a sink, appending to the file if it exists
+     * @param path Path to the file
+     * @throws IOException Exception that is thrown if the file couldn't be opened
+     */
+    public JsonLinesResultSink(Path path) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(path,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8), BUFFER_SIZE);
+        this.line = new StringBuilder();
+    }
+
+    @Override
+    public synchronized void onResult(TrackingResult result) {
+        line.setLength(0);
+        line.append("{\"target\":");
+        appendString(line, result.getTarget());
+        line.append(",\"target_id\":").append(result.getTargetId())
+                .append(",\"owner_id\":").append(result.getOwnerId())
+                .append(",\"post_id\":").append(result.getPostId())
+                .append(",\"status\":\"").append(result.getStatus())
+                .append("\",\"timestamp\":").append(result.getTimestamp())
+                .append(",\"latency_ns\":").append(result.getLatency())
+                .append("}\n");
+        try {
+            writer.append(line);
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, String.format(LOG_MSG_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        writer.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Append a JSON string literal
+     * @param builder Builder the literal is appended to
+     * @param value String value
+     */
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                builder.append('\\').append(c);
+            else if (c < 0x20)
+                builder.append(String.format("\\u%04x", (int) c));
+            else
+                builder.append(c);
+        }
+        builder.append('"');
+    }
+}
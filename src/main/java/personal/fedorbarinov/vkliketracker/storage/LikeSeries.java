@@ -0,0 +1,532 @@
+package personal.fedorbarinov.vkliketracker.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time series of the like counts of the posts, stored in a file of fixed-size blocks.
+ * A block belongs to a single post. Its header holds the post, the number of samples, the number of bytes used,
+ * the first and the last timestamps and the first count. The rest of the samples follow as pairs of zigzag varints:
+ * the delta of the timestamp delta (zero for samples taken at a steady interval) and the delta of the count,
+ * so a sample of a periodic check takes about two bytes.
+ * Every post has an open block, which is rewritten in place as it fills up, then sealed and left alone.
+ * Appending never touches the file: the changed blocks are written by flush(), outside of the lock of the appends.
+ * Only the block headers are parsed when the file is opened: they tell which blocks a time range query has to decode.
+ */
+public class LikeSeries implements AutoCloseable {
+    public static final int BLOCK_SIZE = 1024;
+
+    private static final int MAGIC = 0x564B5453; //"VKTS", marks a series file
+    private static final int FILE_HEADER_SIZE = 8; //Magic and block size
+    private static final int BLOCK_HEADER_SIZE = 32;
+    private static final int MAX_SAMPLE_SIZE = 2 * 10; //Two varints of 64-bit values
+    private static final int MAX_BLOCK_SAMPLES = 0xFFFF;
+    private static final int LOAD_CHUNK_BLOCKS = 256; //Number of blocks read at once when the file is opened
+    private static final int OFFSET_OWNER = 0;
+    private static final int OFFSET_POST = 4;
+    private static final int OFFSET_SAMPLES = 8;
+    private static final int OFFSET_USED = 10;
+    private static final int OFFSET_FIRST_TIME = 12;
+    private static final int OFFSET_LAST_TIME = 20;
+    private static final int OFFSET_FIRST_COUNT = 28;
+    private static final String ERROR_FORMAT = "Bad like series file format";
+
+    /**
+     * Samples of a post in the order of time
+     */
+    public static class Samples {
+        private final long[] times; //Milliseconds since the epoch
+        private final int[] counts;
+        private final int size;
+
+        Samples(long[] times, int[] counts, int size) {
+            this.times = times;
+            this.counts = counts;
+            this.size = size;
+        }
+
+        public int size() { return size; }
+
+        public long getTime(int index) { return times[index]; }
+
+        public int getCount(int index) { return counts[index]; }
+    }
+
+    /**
+     * Aggregate of the samples of a time bucket
+     */
+    public static class Bucket {
+        private final long start; //Start of the bucket (milliseconds since the epoch)
+        private final int samples;
+        private final int min;
+        private final int max;
+        private final double avg;
+
+        Bucket(long start, int samples, int min, int max, double avg) {
+            this.start = start;
+            this.samples = samples;
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+        }
+
+        public long getStart() { return start; }
+
+        public int getSamples() { return samples; }
+
+        public int getMin() { return min; }
+
+        public int getMax() { return max; }
+
+        public double getAvg() { return avg; }
+    }
+
+    /**
+     * Block of the file, the header fields are kept in memory
+     */
+    private static class Block {
+        final long position; //Position of the block in the file
+        final long firstTime;
+        final int firstCount;
+        long lastTime;
+        int samples;
+        int used; //Number of bytes of the samples after the header
+        ByteBuffer buffer; //Contents of the open block (null once it is sealed and written)
+        boolean sealed; //Is the block full? Its contents are kept until it is written
+        long lastDelta; //Last timestamp delta of the open block
+        int lastCount; //Last count of the open block
+        boolean dirty; //Has the open block changed since it has been written?
+
+        Block(long position, long firstTime, int firstCount) {
+            this.position = position;
+            this.firstTime = firstTime;
+            this.firstCount = firstCount;
+            this.lastTime = firstTime;
+            this.lastCount = firstCount;
+        }
+    }
+
+    private final FileChannel channel;
+    private final Map<Long, List<Block>> blocks; //Blocks by post key in the order of time, the last one may be open
+    private final List<Block> unwritten; //Sealed blocks that haven't been written yet
+    private final Object writeLock; //Keeps the writes of two flushes from interleaving
+    private long end; //Position of the next new block
+
+    private LikeSeries(FileChannel channel) {
+        this.channel = channel;
+        this.blocks = new HashMap<>();
+        this.unwritten = new ArrayList<>();
+        this.writeLock = new Object();
+    }
+
+    /**
+     * Open a series file, creating it if necessary
+     * @param path Path to the file
+     * @return Opened series
+     * @throws IOException Exception that is thrown if the file couldn't be opened or has a bad format
+     */
+    public static LikeSeries open(Path path) throws IOException {
+        if (path.getParent() != null)
+            Files.createDirectories(path.getParent());
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        LikeSeries series = new LikeSeries(channel);
+        try {
+            series.load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return series;
+    }
+
+    /**
+     * Append a sample of a post, in memory only. A sample older than the last one of the post is taken
+     * at the time of the last one
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param time Time of the sample (milliseconds since the epoch)
+     * @param count Number of likes
+     */
+    public synchronized void append(int ownerId, int postId, long time, int count) {
+        List<Block> postBlocks = blocks.computeIfAbsent(postKey(ownerId, postId), key -> new ArrayList<>());
+        Block open = postBlocks.isEmpty() ? null : postBlocks.get(postBlocks.size() - 1);
+        if (open != null && open.buffer != null && !open.sealed) {
+            time = Math.max(time, open.lastTime);
+            long delta = time - open.lastTime;
+            long deltaOfDelta = zigzag(delta - open.lastDelta);
+            long countDelta = zigzag((long) count - open.lastCount);
+            if (open.samples < MAX_BLOCK_SAMPLES
+                    && BLOCK_HEADER_SIZE + open.used + varintSize(deltaOfDelta) + varintSize(countDelta) <= BLOCK_SIZE) {
+                int position = BLOCK_HEADER_SIZE + open.used;
+                position = putVarint(open.buffer, position, deltaOfDelta);
+                position = putVarint(open.buffer, position, countDelta);
+                open.used = position - BLOCK_HEADER_SIZE;
+                open.samples++;
+                open.lastTime = time;
+                open.lastDelta = delta;
+                open.lastCount = count;
+                open.dirty = true;
+                return;
+            }
+            open.sealed = true;
+            unwritten.add(open); //Even if it is clean: a flush may be writing it right now, and fail
+        }
+        Block created = new Block(end, time, count);
+        end += BLOCK_SIZE;
+        created.buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        created.buffer.putInt(OFFSET_OWNER, ownerId);
+        created.buffer.putInt(OFFSET_POST, postId);
+        created.buffer.putLong(OFFSET_FIRST_TIME, time);
+        created.buffer.putInt(OFFSET_FIRST_COUNT, count);
+        created.samples = 1;
+        created.dirty = true;
+        postBlocks.add(created);
+    }
+
+    /**
+     * Get the samples of a post in a time range
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param from Start of the range (inclusive, milliseconds since the epoch)
+     * @param to End of the range (exclusive, milliseconds since the epoch)
+     * @return Samples in the order of time
+     * @throws IOException Exception that is thrown if a block couldn't be read
+     */
+    public synchronized Samples query(int ownerId, int postId, long from, long to) throws IOException {
+        long[] times = new long[16];
+        int[] counts = new int[16];
+        int size = 0;
+        for (Block block : blocks.getOrDefault(postKey(ownerId, postId), new ArrayList<>())) {
+            if (block.lastTime < from || block.firstTime >= to)
+                continue;
+            ByteBuffer buffer = block.buffer != null ? block.buffer : read(block.position);
+            long time = block.firstTime;
+            long delta = 0;
+            long count = block.firstCount;
+            int position = BLOCK_HEADER_SIZE;
+            for (int i = 0; i < block.samples; i++) {
+                if (i > 0) {
+                    long value = getVarint(buffer, position);
+                    position += varintSize(value);
+                    delta += unzigzag(value);
+                    time += delta;
+                    value = getVarint(buffer, position);
+                    position += varintSize(value);
+                    count += unzigzag(value);
+                }
+                if (time < from || time >= to)
+                    continue;
+                if (size == times.length) {
+                    times = Arrays.copyOf(times, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                }
+                times[size] = time;
+                counts[size++] = (int) count;
+            }
+        }
+        return new Samples(times, counts, size);
+    }
+
+    /**
+     * Downsample the samples of a post in a time range: the range is cut into buckets of the same length,
+     * and the counts of every bucket that has samples are aggregated
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param from Start of the range and of the first bucket (inclusive, milliseconds since the epoch)
+     * @param to End of the range (exclusive, milliseconds since the epoch)
+     * @param bucketLength Length of a bucket in milliseconds
+     * @return Buckets that have samples, in the order of time
+     * @throws IOException Exception that is thrown if a block couldn't be read
+     */
+    public List<Bucket> downsample(int ownerId, int postId, long from, long to, long bucketLength) throws IOException {
+        if (bucketLength <= 0)
+            throw new IllegalArgumentException(String.valueOf(bucketLength));
+        Samples samples = query(ownerId, postId, from, to);
+        List<Bucket> buckets = new ArrayList<>();
+        int i = 0;
+        while (i < samples.size()) {
+            long start = from + (samples.getTime(i) - from) / bucketLength * bucketLength;
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            long sum = 0;
+            int first = i;
+            for (; i < samples.size() && samples.getTime(i) < start + bucketLength; i++) {
+                int count = samples.getCount(i);
+                min = Math.min(min, count);
+                max = Math.max(max, count);
+                sum += count;
+            }
+            buckets.add(new Bucket(start, i - first, min, max, (double) sum / (i - first)));
+        }
+        return buckets;
+    }
+
+    /**
+     * Get the number of bytes taken by the blocks
+     * @return Size of the file without its header
+     */
+    public synchronized long sizeInBytes() {
+        return end - FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Write the sealed blocks and the open blocks that have changed. The blocks are copied under the lock,
+     * and written without it, so the appends don't wait for the file
+     * @throws IOException Exception that is thrown if a block couldn't be written, it is written by the next flush then
+     */
+    public void flush() throws IOException {
+        synchronized (writeLock) {
+            List<Block> changed = new ArrayList<>();
+            List<ByteBuffer> copies = new ArrayList<>();
+            synchronized (this) {
+                changed.addAll(unwritten);
+                for (List<Block> postBlocks : blocks.values()) {
+                    Block open = postBlocks.get(postBlocks.size() - 1);
+                    if (open.buffer != null && !open.sealed && open.dirty)
+                        changed.add(open);
+                }
+                for (Block block : changed) {
+                    copies.add(copy(block));
+                    block.dirty = false;
+                }
+            }
+            int written = 0;
+            try {
+                for (; written < changed.size(); written++)
+                    write(changed.get(written).position, copies.get(written));
+            } finally {
+                synchronized (this) {
+                    for (int i = 0; i < changed.size(); i++) {
+                        Block block = changed.get(i);
+                        if (i >= written) {
+                            block.dirty = true;
+                        } else if (block.sealed && !block.dirty) {
+                            unwritten.remove(block);
+                            block.buffer = null;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the blocks and close the file
+     * @throws IOException Exception that is thrown if the blocks couldn't be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (writeLock) {
+                try {
+                    channel.force(false);
+                } finally {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the headers of the blocks, and reopen the last block of every post if it has room
+     * @throws IOException Exception that is thrown if the file couldn't be read or has a bad format
+     */
+    private void load() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+        if (channel.size() == 0) {
+            header.putInt(MAGIC).putInt(BLOCK_SIZE).flip();
+            channel.write(header, 0);
+            end = FILE_HEADER_SIZE;
+            return;
+        }
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != BLOCK_SIZE)
+            throw new IOException(ERROR_FORMAT);
+        long blockCount = (channel.size() - FILE_HEADER_SIZE) / BLOCK_SIZE; //A torn block at the end is dropped
+        end = FILE_HEADER_SIZE + blockCount * BLOCK_SIZE;
+        //The file is read sequentially in large chunks, reading the headers alone would cost a call per block
+        ByteBuffer chunk = ByteBuffer.allocate(LOAD_CHUNK_BLOCKS * BLOCK_SIZE);
+        for (long first = 0; first < blockCount; first += LOAD_CHUNK_BLOCKS) {
+            int count = (int) Math.min(LOAD_CHUNK_BLOCKS, blockCount - first);
+            chunk.clear().limit(count * BLOCK_SIZE);
+            readFully(chunk, FILE_HEADER_SIZE + first * BLOCK_SIZE);
+            for (int i = 0; i < count; i++) {
+                int base = i * BLOCK_SIZE;
+                int samples = chunk.getChar(base + OFFSET_SAMPLES);
+                if (samples == 0) //Reserved, but never written
+                    continue;
+                Block block = new Block(FILE_HEADER_SIZE + (first + i) * BLOCK_SIZE,
+                        chunk.getLong(base + OFFSET_FIRST_TIME), chunk.getInt(base + OFFSET_FIRST_COUNT));
+                block.lastTime = chunk.getLong(base + OFFSET_LAST_TIME);
+                block.samples = samples;
+                block.used = chunk.getChar(base + OFFSET_USED);
+                if (block.used > BLOCK_SIZE - BLOCK_HEADER_SIZE)
+                    throw new IOException(ERROR_FORMAT);
+                blocks.computeIfAbsent(postKey(chunk.getInt(base + OFFSET_OWNER), chunk.getInt(base + OFFSET_POST)),
+                        key -> new ArrayList<>()).add(block);
+            }
+        }
+        for (List<Block> postBlocks : blocks.values()) {
+            Block last = postBlocks.get(postBlocks.size() - 1);
+            if (last.samples < MAX_BLOCK_SAMPLES && BLOCK_HEADER_SIZE + last.used + MAX_SAMPLE_SIZE <= BLOCK_SIZE)
+                reopen(last);
+        }
+    }
+
+    /**
+     * Make a block open again, restoring the state of the last sample
+     * @param block Block that has room
+     * @throws IOException Exception that is thrown if the block couldn't be read
+     */
+    private void reopen(Block block) throws IOException {
+        ByteBuffer buffer = read(block.position);
+        long count = block.firstCount;
+        int position = BLOCK_HEADER_SIZE;
+        for (int i = 1; i < block.samples; i++) {
+            long value = getVarint(buffer, position);
+            position += varintSize(value);
+            block.lastDelta += unzigzag(value);
+            value = getVarint(buffer, position);
+            position += varintSize(value);
+            count += unzigzag(value);
+        }
+        block.lastCount = (int) count;
+        block.buffer = buffer;
+    }
+
+    /**
+     * Copy the contents of a block with its header brought up to date
+     * @param block Block that has contents
+     * @return Copy of the whole block
+     */
+    private static ByteBuffer copy(Block block) {
+        block.buffer.putChar(OFFSET_SAMPLES, (char) block.samples);
+        block.buffer.putChar(OFFSET_USED, (char) block.used);
+        block.buffer.putLong(OFFSET_LAST_TIME, block.lastTime);
+        ByteBuffer whole = block.buffer.duplicate();
+        whole.clear();
+        ByteBuffer copy = ByteBuffer.allocate(BLOCK_SIZE);
+        copy.put(whole).flip();
+        return copy;
+    }
+
+    /**
+     * Write a block in its place
+     * @param position Position of the block in the file
+     * @param contents Contents of the whole block
+     * @throws IOException Exception that is thrown if the block couldn't be written
+     */
+    private void write(long position, ByteBuffer contents) throws IOException {
+        while (contents.hasRemaining())
+            channel.write(contents, position + contents.position());
+    }
+
+    /**
+     * Read a block
+     * @param position Position of the block in the file
+     * @return Contents of the block
+     * @throws IOException Exception that is thrown if the block couldn't be read
+     */
+    private ByteBuffer read(long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+        readFully(buffer, position);
+        return buffer;
+    }
+
+    /**
+     * Fill a buffer from the file
+     * @param buffer Buffer to fill up to its limit
+     * @param position Position in the file
+     * @throws IOException Exception that is thrown if the file ends too early
+     */
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position() - start) < 0)
+                throw new IOException(ERROR_FORMAT);
+        }
+    }
+
+    /**
+     * Build the key of a post
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Key of the post
+     */
+    private static long postKey(int ownerId, int postId) {
+        return ((long) ownerId << 32) | (postId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Map a signed value to an unsigned one, so that the values close to zero take few varint bytes
+     * @param value Signed value
+     * @return Zigzag-encoded value
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Restore a signed value from its zigzag encoding
+     * @param value Zigzag-encoded value
+     * @return Signed value
+     */
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Get the number of bytes of a value as a varint
+     * @param value Unsigned value
+     * @return Number of bytes (1 to 10)
+     */
+    private static int varintSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Write a varint: 7 bits a byte, the lowest first, the high bit set in all the bytes but the last
+     * @param buffer Destination
+     * @param position Position of the first byte
+     * @param value Unsigned value
+     * @return Position after the last byte
+     */
+    private static int putVarint(ByteBuffer buffer, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put(position++, (byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put(position++, (byte) value);
+        return position;
+    }
+
+    /**
+     * Read a varint
+     * @param buffer Source
+     * @param position Position of the first byte
+     * @return Unsigned value
+     */
+    private static long getVarint(ByteBuffer buffer, int position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get(position++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Check whether a user has liked a post
+ */
+interface LikeCheck {
+    /**
+     * Start the check
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param userId ID of the user
+     * @return Future result of the check
+     */
+    CompletableFuture<Boolean> isLiked(int ownerId, int postId, int userId);
+}
@@ -0,0 +1,144 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalescing layer in front of the like checks.
+ * Concurrent checks of the same target and post share a single call, and its result is reused by the checks
+ * made within a short time after it, so duplicate tasks cost one request. The results are kept with LRU eviction.
+ * A failed check is shared by the checks waiting for it, but isn't cached.
+ */
+class LikeCheckCache implements LikeCheck {
+    private static final String FORMAT_STATISTICS = "Like checks: %d cached, %d hits, %d coalesced, %d misses, %d evicted";
+
+    /**
+     * Target and post of a check
+     */
+    private static class Key {
+        private final int ownerId;
+        private final int postId;
+        private final int userId;
+
+        Key(int ownerId, int postId, int userId) {
+            this.ownerId = ownerId;
+            this.postId = postId;
+            this.userId = userId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return ownerId == key.ownerId && postId == key.postId && userId == key.userId;
+        }
+
+        @Override
+        public int hashCode() {
+            return (ownerId * 31 + postId) * 31 + userId;
+        }
+    }
+
+    /**
+     * Cached result
+     */
+    private static class CachedCheck {
+        final boolean liked;
+        final long checkedAt; //Time in nanoseconds the check has been started at
+
+        CachedCheck(boolean liked, long checkedAt) {
+            this.liked = liked;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private final LikeCheck check; //Makes the calls
+    private final long ttl; //Time in nanoseconds a result is reused (0 if only the concurrent checks share it)
+    private final LinkedHashMap<Key, CachedCheck> results; //Results in the order of access
+    private final ConcurrentMap<Key, CompletableFuture<Boolean>> inFlight; //Calls that haven't finished yet
+    private final AtomicLong hits;
+    private final AtomicLong coalesced;
+    private final AtomicLong misses;
+    private final AtomicLong evicted;
+
+    /**
+     * Create a cache
+     * @param check Makes the calls
+     * @param capacity Maximal number of results
+     * @param ttl Time in nanoseconds a result is reused (0 if only the concurrent checks share it)
+     */
+    LikeCheckCache(LikeCheck check, int capacity, long ttl) {
+        this.check = check;
+        this.ttl = ttl;
+        this.results = new LinkedHashMap<Key, CachedCheck>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, CachedCheck> eldest) {
+                if (size() <= capacity)
+                    return false;
+                evicted.incrementAndGet();
+                return true;
+            }
+        };
+        this.inFlight = new ConcurrentHashMap<>();
+        this.hits = new AtomicLong();
+        this.coalesced = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evicted = new AtomicLong();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isLiked(int ownerId, int postId, int userId) {
+        Key key = new Key(ownerId, postId, userId);
+        if (ttl > 0) {
+            synchronized (this) {
+                CachedCheck entry = results.get(key);
+                if (entry != null && System.nanoTime() - entry.checkedAt < ttl) {
+                    hits.incrementAndGet();
+                    return CompletableFuture.completedFuture(entry.liked);
+                }
+                if (entry != null) //Stale
+                    results.remove(key);
+            }
+        }
+        CompletableFuture<Boolean> created = new CompletableFuture<>();
+        CompletableFuture<Boolean> shared = inFlight.putIfAbsent(key, created);
+        if (shared != null) {
+            coalesced.incrementAndGet();
+            return shared;
+        }
+        misses.incrementAndGet();
+        long checkedAt = System.nanoTime();
+        check.isLiked(ownerId, postId, userId).whenComplete((liked, e) -> {
+            if (e == null && ttl > 0) {
+                synchronized (this) {
+                    results.put(key, new CachedCheck(liked, checkedAt));
+                }
+            }
+            inFlight.remove(key, created); //Removed after the result is cached, so no check falls in between
+            if (e != null)
+                created.completeExceptionally(e);
+            else
+                created.complete(liked);
+        });
+        return created;
+    }
+
+    /**
+     * Write the cache statistics to the log
+     */
+    void report() {
+        int size;
+        synchronized (this) {
+            size = results.size();
+        }
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(FORMAT_STATISTICS,
+                size, hits.get(), coalesced.get(), misses.get(), evicted.get()));
+    }
+}
@@ -0,0 +1,41 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.objects.likes.responses.IsLikedResponse;
+import com.vk.api.sdk.queries.likes.LikesType;
+import personal.fedorbarinov.vkliketracker.api.AsyncApiClient;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynchronous like checks.
+ * Every check is a likes.isLiked request sent without blocking, so a few threads may keep
+ * as many checks in flight as the transport allows.
+ */
+public class LikeChecker {
+    private final AsyncApiClient api; //Sends the requests without blocking
+    private final UserActor user; //Current authorized user
+
+    /**
+     * Public constructor of the class
+     * @param api Sends the requests without blocking
+     * @param user Current authorized user
+     */
+    public LikeChecker(AsyncApiClient api, UserActor user) {
+        this.api = api;
+        this.user = user;
+    }
+
+    /**
+     * Check whether a user has liked a post
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param userId ID of the user
+     * @return Future like status (completed with ApiException or ClientException on failure)
+     */
+    public CompletableFuture<LikeStatus> check(int ownerId, int postId, int userId) {
+        return api.call(api.getVkClient().likes().isLiked(user, LikesType.POST, postId)
+                .ownerId(ownerId).userId(userId), IsLikedResponse.class)
+                .thenApply(response -> new LikeStatus(ownerId, postId, userId, response.isLiked()));
+    }
+}
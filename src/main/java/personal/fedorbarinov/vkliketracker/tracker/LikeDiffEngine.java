@@ -0,0 +1,246 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import com.vk.api.sdk.objects.likes.responses.GetListResponse;
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds who has liked or unliked a post since the previous poll.
+ * likes.getList returns the newest likes first, so new likes gather at the beginning of the list
+ * while its tail stays the same. Pages are downloaded one by one until a page lines up with the
+ * stored list and the like count confirms that nothing has changed beyond it.
+ */
+class LikeDiffEngine {
+    private static final String STATE_FILE_FORMAT = "wall%d_%d.state";
+    private static final String LOG_MSG_BASELINE = "[wall%d_%d]: %d likers are known";
+    private static final String LOG_MSG_FOOTPRINT = "[wall%d_%d]: %d likers take %d bytes %s";
+    private static final String ON_HEAP = "on the heap";
+    private static final String OFF_HEAP = "off the heap";
+    private static final String LOG_MSG_STATE_READ = "Post state couldn't be read: %s";
+    private static final String LOG_MSG_STATE_WRITE = "Post state couldn't be written: %s";
+
+    /**
+     * Growing list of primitive ints
+     */
+    private static class IntList {
+        private int[] items = new int[LikerScanner.PAGE_SIZE];
+        private int size;
+
+        void add(int item) {
+            if (size == items.length)
+                items = Arrays.copyOf(items, size << 1);
+            items[size++] = item;
+        }
+
+        int get(int index) {
+            return items[index];
+        }
+
+        int[] items() {
+            return items;
+        }
+
+        int size() {
+            return size;
+        }
+    }
+
+    private final LikerScanner scanner; //Scanner of post likers
+    private final Path stateDirectory; //Directory the post states are persisted to
+    private final LikeEventListener listener; //Receives like and unlike events
+    private final boolean offHeap; //Are the liker bitmaps kept outside of the Java heap?
+    private final Map<Long, PostState> states; //Last known likers of every post
+
+    /**
+     * Create a diff engine
+     * @param scanner Scanner of post likers
+     * @param stateDirectory Directory the post states are persisted to
+     * @param listener Receives like and unlike events
+     * @param offHeap Should the liker bitmaps be kept outside of the Java heap?
+     */
+    LikeDiffEngine(LikerScanner scanner, Path stateDirectory, LikeEventListener listener, boolean offHeap) {
+        this.scanner = scanner;
+        this.stateDirectory = stateDirectory;
+        this.listener = listener;
+        this.offHeap = offHeap;
+        this.states = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Poll a post for changes. The first poll of a post downloads all its likers and emits no events.
+     * Polls of the same post must not overlap.
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Future current likers of the post
+     */
+    CompletableFuture<PostState> poll(int ownerId, int postId) {
+        PostState old = state(ownerId, postId);
+        CompletableFuture<GetListResponse> firstPage = scanner.fetchPage(ownerId, postId, 0);
+        if (old == null) {
+            return firstPage.thenCompose(page -> scanner.scanList(ownerId, postId, page)).thenApply(likers -> {
+                PostState state = new PostState(likers, offHeap);
+                Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_BASELINE, ownerId, postId, state.size()));
+                store(ownerId, postId, state);
+                return state;
+            });
+        }
+        IntList fresh = new IntList();
+        return firstPage.thenCompose(page -> continuePoll(ownerId, postId, old, fresh, page, 0));
+    }
+
+    /**
+     * Take a downloaded page into account and download the next one if needed
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param old Stored likers
+     * @param fresh Likers downloaded during this poll
+     * @param page The last downloaded page
+     * @param offset Offset of the page
+     * @return Future current likers of the post
+     */
+    private CompletableFuture<PostState> continuePoll(int ownerId, int postId, PostState old, IntList fresh,
+                                                      GetListResponse page, int offset) {
+        for (Integer liker : page.getItems())
+            fresh.add(liker);
+        int alignedEnd = alignedEnd(old, fresh, page.getItems().size(), page.getCount());
+        if (alignedEnd != PostState.MISSING) //The rest of the list is the same as stored
+            return CompletableFuture.completedFuture(update(ownerId, postId, old, fresh, alignedEnd + 1));
+        int next = offset + LikerScanner.PAGE_SIZE;
+        if (page.getItems().isEmpty() || next >= page.getCount()) //The whole list has been downloaded
+            return CompletableFuture.completedFuture(update(ownerId, postId, old, fresh, old.size()));
+        return scanner.fetchPage(ownerId, postId, next)
+                .thenCompose(nextPage -> continuePoll(ownerId, postId, old, fresh, nextPage, next));
+    }
+
+    /**
+     * Check whether the last downloaded page lines up with the stored list.
+     * The trailing likers of the page must follow the stored order, the likers before them must be new,
+     * and the like count must be equal to the downloaded likers plus the stored likers after the page.
+     * @param old Stored likers
+     * @param fresh Likers downloaded during this poll
+     * @param pageSize Number of likers in the last page
+     * @param count Current like count
+     * @return Position in the stored list the page ends at (PostState.MISSING if the page doesn't line up)
+     */
+    private static int alignedEnd(PostState old, IntList fresh, int pageSize, int count) {
+        if (pageSize == 0)
+            return PostState.MISSING;
+        int last = fresh.size() - 1;
+        int end = old.positionOf(fresh.get(last));
+        if (end == PostState.MISSING || fresh.size() + old.size() - 1 - end != count)
+            return PostState.MISSING;
+        int run = 0;
+        while (run < pageSize && end - run >= 0 && fresh.get(last - run) == old.get(end - run))
+            run++;
+        for (int i = run; i < pageSize; i++)
+            if (old.contains(fresh.get(last - i)))
+                return PostState.MISSING;
+        return end;
+    }
+
+    /**
+     * Emit events for the changes and store the current likers.
+     * The likes and unlikes are found with bitmap differences, so the events of a poll come in the order of user IDs.
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param old Stored likers
+     * @param fresh Likers downloaded during this poll
+     * @param tailStart Position in the stored list the unchanged tail starts at
+     * @return Current likers of the post
+     */
+    private PostState update(int ownerId, int postId, PostState old, IntList fresh, int tailStart) {
+        long timestamp = System.currentTimeMillis();
+        LikerBitmap seen = LikerBitmap.of(fresh.items(), 0, fresh.size());
+        LikerBitmap replaced = new LikerBitmap(); //Stored likers the downloaded pages have replaced
+        for (int i = 0; i < tailStart; i++)
+            replaced.add(old.get(i));
+        seen.andNot(old.getLikerSet()).forEach(liker ->
+                listener.onEvent(new LikeEvent(ownerId, postId, liker, timestamp, LikeEvent.Kind.LIKE)));
+        replaced.andNot(seen).forEach(liker ->
+                listener.onEvent(new LikeEvent(ownerId, postId, liker, timestamp, LikeEvent.Kind.UNLIKE)));
+
+        int[] likers = new int[seen.cardinality() + old.size() - tailStart];
+        int size = 0;
+        LikerBitmap added = new LikerBitmap();
+        for (int i = 0; i < fresh.size(); i++)
+            if (added.add(fresh.get(i)))
+                likers[size++] = fresh.get(i);
+        for (int i = tailStart; i < old.size(); i++)
+            if (!seen.contains(old.get(i)))
+                likers[size++] = old.get(i);
+        LikerBitmap likerSet = old.getLikerSet().andNot(replaced).or(seen);
+        PostState state = new PostState(size == likers.length ? likers : Arrays.copyOf(likers, size),
+                PostState.place(likerSet, offHeap));
+        store(ownerId, postId, state);
+        return state;
+    }
+
+    /**
+     * Write the memory footprint of every known post to the log
+     */
+    void report() {
+        for (Map.Entry<Long, PostState> entry : states.entrySet()) {
+            long key = entry.getKey(); //See Task.postKey()
+            PostState state = entry.getValue();
+            Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_FOOTPRINT,
+                    (int) (key >> 32), (int) key, state.size(), state.sizeInBytes(),
+                    state.getLikerSet().isOffHeap() ? OFF_HEAP : ON_HEAP));
+        }
+    }
+
+    /**
+     * Get the stored likers of a post, reading them from disk if necessary
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Stored likers (null if the post hasn't been polled yet)
+     */
+    private PostState state(int ownerId, int postId) {
+        PostState state = states.get(Task.postKey(ownerId, postId));
+        if (state != null)
+            return state;
+        Path path = statePath(ownerId, postId);
+        if (!Files.exists(path))
+            return null;
+        try {
+            state = PostState.read(path, offHeap);
+            states.put(Task.postKey(ownerId, postId), state);
+            return state;
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_STATE_READ, e.getLocalizedMessage()));
+            return null;
+        }
+    }
+
+    /**
+     * Keep the likers of a post in memory and persist them
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param state Current likers
+     */
+    private void store(int ownerId, int postId, PostState state) {
+        states.put(Task.postKey(ownerId, postId), state);
+        try {
+            Files.createDirectories(stateDirectory);
+            state.write(statePath(ownerId, postId));
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_STATE_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Get the path to the state file of a post
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Path to the file
+     */
+    private Path statePath(int ownerId, int postId) {
+        return stateDirectory.resolve(String.format(STATE_FILE_FORMAT, ownerId, postId));
+    }
+}
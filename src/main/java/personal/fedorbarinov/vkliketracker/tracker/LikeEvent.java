@@ -0,0 +1,45 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+/**
+ * A user has liked or unliked a post
+ */
+public class LikeEvent {
+    private static final String FORMAT_EVENT = "wall%d_%d: %d %s";
+
+    /**
+     * The kind of an event
+     */
+    public enum Kind {
+        LIKE,
+        UNLIKE
+    }
+
+    private final int ownerId; //Whose post was liked
+    private final int postId; //Which post was liked
+    private final int userId; //Who liked
+    private final long timestamp; //Time the change has been detected at (milliseconds since the epoch)
+    private final Kind kind;
+
+    public LikeEvent(int ownerId, int postId, int userId, long timestamp, Kind kind) {
+        this.ownerId = ownerId;
+        this.postId = postId;
+        this.userId = userId;
+        this.timestamp = timestamp;
+        this.kind = kind;
+    }
+
+    public int getOwnerId() { return ownerId; }
+
+    public int getPostId() { return postId; }
+
+    public int getUserId() { return userId; }
+
+    public long getTimestamp() { return timestamp; }
+
+    public Kind getKind() { return kind; }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT_EVENT, ownerId, postId, userId, kind == Kind.LIKE ? "liked" : "unliked");
+    }
+}
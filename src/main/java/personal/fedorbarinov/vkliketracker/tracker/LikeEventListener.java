@@ -0,0 +1,12 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+/**
+ * Receives like and unlike events found by the tracker
+ */
+public interface LikeEventListener {
+    /**
+     * Handle an event
+     * @param event Like or unlike event
+     */
+    void onEvent(LikeEvent event);
+}
@@ -0,0 +1,35 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+/**
+ * Result of a check: whether a user has liked a wall post
+ */
+public class LikeStatus {
+    private static final String FORMAT_STATUS = "id%d %s wall%d_%d";
+    private static final String LIKED = "liked";
+    private static final String NOT_LIKED = "hasn't liked";
+
+    private final int ownerId; //Whose post is checked
+    private final int postId; //Which post is checked
+    private final int userId; //Who is checked
+    private final boolean liked;
+
+    LikeStatus(int ownerId, int postId, int userId, boolean liked) {
+        this.ownerId = ownerId;
+        this.postId = postId;
+        this.userId = userId;
+        this.liked = liked;
+    }
+
+    public int getOwnerId() { return ownerId; }
+
+    public int getPostId() { return postId; }
+
+    public int getUserId() { return userId; }
+
+    public boolean isLiked() { return liked; }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT_STATUS, userId, liked ? LIKED : NOT_LIKED, ownerId, postId);
+    }
+}
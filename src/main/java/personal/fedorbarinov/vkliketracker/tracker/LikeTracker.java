@@ -2,16 +2,53 @@ package personal.fedorbarinov.vkliketracker.tracker;
 
 import com.vk.api.sdk.client.VkApiClient;
 import com.vk.api.sdk.client.actors.UserActor;
-import com.vk.api.sdk.exceptions.ApiException;
-import com.vk.api.sdk.exceptions.ClientException;
-import com.vk.api.sdk.httpclient.HttpTransportClient;
+import com.vk.api.sdk.exceptions.ApiAuthException;
 import com.vk.api.sdk.objects.likes.responses.IsLikedResponse;
-import com.vk.api.sdk.objects.utils.DomainResolved;
 import com.vk.api.sdk.objects.utils.DomainResolvedType;
-import com.vk.api.sdk.queries.likes.LikesType;
 import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.api.ActorPool;
+import personal.fedorbarinov.vkliketracker.api.AdaptiveLimiter;
+import personal.fedorbarinov.vkliketracker.api.AsyncApiClient;
+import personal.fedorbarinov.vkliketracker.api.AsyncTransport;
+import personal.fedorbarinov.vkliketracker.api.ConfigurableVkApiClient;
+import personal.fedorbarinov.vkliketracker.api.ExecuteBatcher;
+import personal.fedorbarinov.vkliketracker.cluster.ClusterNode;
+import personal.fedorbarinov.vkliketracker.cluster.HashRing;
+import personal.fedorbarinov.vkliketracker.metrics.ApiMetrics;
 import personal.fedorbarinov.vkliketracker.parsing.Parser;
 import personal.fedorbarinov.vkliketracker.parsing.TaskConfigParser;
+import personal.fedorbarinov.vkliketracker.parsing.TaskFileReader;
+import personal.fedorbarinov.vkliketracker.parsing.TaskListWatcher;
+import personal.fedorbarinov.vkliketracker.parsing.WallListParser;
+import personal.fedorbarinov.vkliketracker.storage.BinaryResultSink;
+import personal.fedorbarinov.vkliketracker.storage.EventLog;
+import personal.fedorbarinov.vkliketracker.storage.JsonLinesResultSink;
+import personal.fedorbarinov.vkliketracker.storage.LikeSeries;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Like tracking engine
@@ -19,9 +56,33 @@ import personal.fedorbarinov.vkliketracker.parsing.TaskConfigParser;
 public class LikeTracker {
     private static final String BAD_POST_LINK  = "Couldn't parse link to the wall post";
     private static final String BAD_TARGET  = "Target user doesn't exist";
+    private static final String BAD_OWNER  = "Wall owner %s doesn't exist";
+    private static final String BAD_SINCE  = "Couldn't parse date %s, it should be written as yyyy-MM-dd";
+    private static final String WALL_LIST_ERROR  = "Wall list couldn't be read: %s";
     private static final String POST_LIKED  = "The post is liked";
     private static final String POST_NOT_LIKED  = "The post is not liked";
+    private static final String INTERRUPTED  = "Tracking has been interrupted";
+    private static final String AUTH_FAILED  = "The API has rejected the token: %s";
+    private static final String EVENT_LOG_ERROR  = "Event log couldn't be opened: %s";
+    private static final String LOG_MSG_EVENT_LOG_CLOSE  = "Event log couldn't be closed: %s";
+    private static final String RESULTS_ERROR  = "Result file couldn't be opened: %s";
+    private static final String CHECKPOINT_ERROR = "Scan checkpoint directory couldn't be created: %s";
+    private static final String LIKE_SERIES_ERROR = "Like series couldn't be opened: %s";
+    private static final String LOG_MSG_LIKE_SERIES_WRITE = "Like series couldn't be written: %s";
+    private static final String LOG_MSG_RESULTS_WRITE  = "Results couldn't be written: %s";
+    private static final String RESULTS_FORMAT_BINARY  = "BINARY";
+    private static final String FORMAT_RESULT  = "[%s]: %s";
+    private static final String LOG_MSG_RELOADED  = "Task list reloaded: %d tasks added, %d removed, %d posts scheduled";
+    private static final String LOG_MSG_REBALANCED  = "Cluster rebalanced: %d node(s), %d posts taken over, %d handed over, %d of %d posts owned";
     private static final String EXCEPTION_PREFIX  = "[LikeTracker]:"; //Prefix for an exception
+    private static final int SCAN_MIN_TARGETS = 2; //Posts with fewer targets are never scanned
+    private static final int RATE_LIMIT_BURST = 1; //Requests are spread evenly instead of bursting
+    private static final int STREAM_BLOCKS_IN_FLIGHT = 4; //Blocks of a streamed task list checked at once
+    private static final int STREAM_LATENCY_SAMPLES = 1 << 20; //Latencies kept for the statistics of a streamed task list or a wall scan
+    private static final long BAD_LINK_KEY = Task.postKey(0, 0); //The node owning it reports the tasks with bad links
+    private static final Pattern OWNER_ID = Pattern.compile("-?[0-9]+"); //Wall of a user (or a community if negative)
+    private static final Pattern USER_PAGE = Pattern.compile("id([0-9]+)"); //Page of a user without a screen name
+    private static final Pattern COMMUNITY_PAGE = Pattern.compile("(?:club|public|event)([0-9]+)"); //Same for a community
 
     /**
      * Exception that is thrown during tracking
@@ -32,70 +93,1193 @@ public class LikeTracker {
         }
     }
 
-    private UserActor user; //Current authorized user
+    /**
+     * Exception that is thrown when the API rejects the token of the user, so that tracking can't go on
+     */
+    public class AuthFailedException extends TrackingException {
+        AuthFailedException(String s) {
+            super(s);
+        }
+    }
+
+    /**
+     * Periodic check of a post in daemon mode, its tasks may change while it is scheduled
+     */
+    private static class ScheduledPost {
+        private volatile List<Task> tasks; //Replaced as a whole on every change
+        private ScheduledFuture<?> future; //Cancelled once the post has no tasks (null while another node checks it)
+
+        ScheduledPost(List<Task> tasks) {
+            this.tasks = tasks;
+        }
+    }
+
+    private ActorPool pool; //Tokens of the authorized users the requests are spread across
     private VkApiClient vkClient; //VK client instance
-    private Parser.ParsingResult task; //Task ontained from parser
+    private AsyncTransport transport; //Shared non-blocking transport
+    private int maxInFlight; //Maximal number of requests in flight
+    private List<Parser.ParsingResult> tasks; //Tasks obtained from parser
+    private Path taskListPath; //Task list parsed while it is tracked (null if the tasks are parsed already)
+    private int parseThreads; //Number of threads parsing the task list
+    private boolean hotReload; //Should the task list be reloaded whenever it changes (daemon mode only)?
+    private Path wallsPath; //List of the walls scanned for the posts the target has liked (null if there is no scan)
+    private long since; //Unix time in seconds, older posts of the walls aren't checked (0 if there is no cutoff)
+    private int maxPosts; //Most posts checked per wall (0 if there is no limit)
+    private int wallThreads; //Number of walls paged at once
+    private int threads; //Number of worker threads
+    private int batchSize; //Number of API calls packed into one "execute" request
+    private long batchLinger; //Time in milliseconds a batch waits for more calls
+    private boolean daemon; //Should the tasks be re-checked periodically?
+    private long interval; //Time in milliseconds between two checks of a task in daemon mode
+    private boolean trackChanges; //Should likes and unlikes since the previous check be found?
+    private Path statePath; //Directory the last known likers of the posts are persisted to
+    private boolean offHeapLikers; //Should the last known likers be kept outside of the Java heap?
+    private Path eventLogPath; //Directory of the like and unlike event log (null if events aren't stored)
+    private ScreenNameCache nameCache; //Resolved screen names, persisted between runs
+    private int checkCacheSize; //Maximal number of like check results kept for reuse
+    private long checkCacheTtl; //Time in nanoseconds a like check result is reused
+    private Path resultsPath; //File the results are written to (null if they are only logged)
+    private Path clusterDir; //Directory of the cluster the tasks are shared with (null if there is no cluster)
+    private String nodeId; //ID of the node in the cluster (null for the default one)
+    private String resultsFormat; //Format of the result file (JSONL or BINARY)
+    private Path checkpointPath; //Directory the progress of the long scans is saved to (null if it isn't saved)
+    private long checkpointMaxAge; //Time in milliseconds after which a scan isn't resumed from its checkpoint
+    private Path likeSeriesPath; //File of the like count series of the posts (null if the counts aren't sampled)
 
-    private Integer targetId; //Who liked
-    private Integer ownerId; //Whose post was liked
-    private Integer postId; //Which post was liked
+    private ExecutorService executor; //Worker pool of the current run, handles the responses
+    private AdaptiveLimiter limiter; //Limit of the calls in flight of the current run, adapted to throttling
+    private AsyncApiClient api; //Sends the requests of the current run without blocking
+    private LikeChecker checker; //Checks the targets with likes.isLiked one by one
+    private LikerScanner scanner; //Scanner of post likers
+    private ExecuteBatcher batcher; //Packs isLiked and resolveScreenName calls into "execute" requests
+    private LikeCheckCache checkCache; //Shares the likes.isLiked calls of identical checks
+    private LikeDiffEngine diffEngine; //Finds likes and unlikes (null unless changes are tracked)
+    private EventLog eventLog; //Stores like and unlike events (null if events aren't stored)
+    private ResultSink resultSink; //Receives the results of the checks (null if they are only logged)
+    private ScanCheckpoints checkpoints; //Progress of the long scans of the current run (null if it isn't saved)
+    private LikeSeries likeSeries; //Receives a like count sample at every check of a post (null if there is none)
+    private volatile TrackingStatistics statistics; //Statistics of the current run (or report window)
+    private TrackingScheduler scheduler; //Runs the periodic checks in daemon mode
+    private ClusterNode cluster; //Node of the cluster of the current run (null if there is no cluster)
+    private Map<Long, ScheduledPost> scheduledPosts; //Periodic checks by post key in daemon mode
+    private CompletableFuture<Void> authFailure; //Completed with AuthFailedException once the token is rejected
 
-    public LikeTracker(UserActor user, Parser.ParsingResult task) {
-        this.user = user;
-        this.vkClient = new VkApiClient(HttpTransportClient.getInstance());
-        this.task = task;
+    /**
+     * Public constructor of the class
+     * @param users Authorized users (each of them has its own rate limit)
+     * @param config Parameters obtained from the task config
+     * @param tasks Tasks obtained from parser
+     */
+    public LikeTracker(List<UserActor> users, Parser.ParsingResult config, List<Parser.ParsingResult> tasks) {
+        this.pool = new ActorPool(users, Double.parseDouble(config.get(TaskConfigParser.RATE_LIMIT_LABEL)), RATE_LIMIT_BURST);
+        this.transport = AsyncTransport.getInstance();
+        this.maxInFlight = Integer.parseInt(config.get(TaskConfigParser.MAX_IN_FLIGHT_LABEL));
+        this.transport.setMaxInFlight(maxInFlight);
+        this.vkClient = new ConfigurableVkApiClient(transport, config.get(TaskConfigParser.API_URL_LABEL), null);
+        this.tasks = tasks;
+        this.parseThreads = Integer.parseInt(config.get(TaskConfigParser.PARSE_THREADS_LABEL));
+        this.threads = Integer.parseInt(config.get(TaskConfigParser.THREADS_LABEL));
+        this.batchSize = Integer.parseInt(config.get(TaskConfigParser.BATCH_SIZE_LABEL));
+        this.batchLinger = Long.parseLong(config.get(TaskConfigParser.BATCH_LINGER_LABEL));
+        this.daemon = config.contains(TaskConfigParser.DAEMON_LABEL);
+        this.hotReload = config.contains(TaskConfigParser.HOT_RELOAD_LABEL);
+        this.scheduledPosts = new HashMap<>();
+        this.interval = TimeUnit.SECONDS.toMillis(Long.parseLong(config.get(TaskConfigParser.INTERVAL_LABEL)));
+        this.trackChanges = config.contains(TaskConfigParser.TRACK_CHANGES_LABEL);
+        this.statePath = Paths.get(config.get(TaskConfigParser.STATE_PATH_LABEL));
+        this.offHeapLikers = config.contains(TaskConfigParser.OFF_HEAP_LIKERS_LABEL);
+        if (config.contains(TaskConfigParser.EVENT_LOG_LABEL))
+            this.eventLogPath = Paths.get(config.get(TaskConfigParser.EVENT_LOG_LABEL));
+        this.nameCache = new ScreenNameCache(Paths.get(config.get(TaskConfigParser.NAME_CACHE_LABEL)),
+                Integer.parseInt(config.get(TaskConfigParser.NAME_CACHE_SIZE_LABEL)),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(config.get(TaskConfigParser.NAME_CACHE_TTL_LABEL))),
+                TimeUnit.SECONDS.toMillis(Long.parseLong(config.get(TaskConfigParser.NAME_CACHE_NEGATIVE_TTL_LABEL))));
+        this.checkCacheSize = Integer.parseInt(config.get(TaskConfigParser.CHECK_CACHE_SIZE_LABEL));
+        this.checkCacheTtl = TimeUnit.SECONDS.toNanos(Long.parseLong(config.get(TaskConfigParser.CHECK_CACHE_TTL_LABEL)));
+        if (daemon) //A periodic check never gets the result of the previous one
+            this.checkCacheTtl = Math.min(checkCacheTtl, TimeUnit.MILLISECONDS.toNanos(interval) / 2);
+        if (config.contains(TaskConfigParser.RESULTS_LABEL))
+            this.resultsPath = Paths.get(config.get(TaskConfigParser.RESULTS_LABEL));
+        if (config.contains(TaskConfigParser.CLUSTER_DIR_LABEL))
+            this.clusterDir = Paths.get(config.get(TaskConfigParser.CLUSTER_DIR_LABEL));
+        if (config.contains(TaskConfigParser.NODE_ID_LABEL))
+            this.nodeId = config.get(TaskConfigParser.NODE_ID_LABEL);
+        this.resultsFormat = config.get(TaskConfigParser.RESULTS_FORMAT_LABEL);
+        if (config.contains(TaskConfigParser.CHECKPOINT_DIR_LABEL))
+            this.checkpointPath = Paths.get(config.get(TaskConfigParser.CHECKPOINT_DIR_LABEL));
+        if (config.contains(TaskConfigParser.LIKE_SERIES_LABEL))
+            this.likeSeriesPath = Paths.get(config.get(TaskConfigParser.LIKE_SERIES_LABEL));
+        this.checkpointMaxAge = TimeUnit.SECONDS.toMillis(Long.parseLong(config.get(TaskConfigParser.CHECKPOINT_MAX_AGE_LABEL)));
+        if (config.contains(TaskConfigParser.WALLS_LABEL))
+            this.wallsPath = Paths.get(config.get(TaskConfigParser.WALLS_LABEL));
+        if (config.contains(TaskConfigParser.SINCE_LABEL))
+            this.since = parseSince(config.get(TaskConfigParser.SINCE_LABEL));
+        this.maxPosts = Integer.parseInt(config.get(TaskConfigParser.MAX_POSTS_LABEL));
+        this.wallThreads = Integer.parseInt(config.get(TaskConfigParser.WALL_THREADS_LABEL));
     }
 
     /**
-     * Run tracking
+     * Constructor of the class for a task list that is parsed while it is tracked
+     * @param users Authorized users (each of them has its own rate limit)
+     * @param config Parameters obtained from the task config
+     * @param taskListPath Path to the task list
+     */
+    public LikeTracker(List<UserActor> users, Parser.ParsingResult config, Path taskListPath) {
+        this(users, config, Collections.<Parser.ParsingResult>emptyList());
+        this.taskListPath = taskListPath;
+    }
+
+    /**
+     * Run tracking of all the tasks on a bounded worker pool.
+     * In daemon mode the tasks are re-checked periodically until the thread is interrupted.
+     * The run is stopped as soon as the API rejects the token of the user.
+     * In cluster mode only the posts owned by the node are checked.
+     * @throws AuthFailedException Exception that is thrown if the API has rejected the token
      * @throws TrackingException Exception that is thrown during tracking
      */
     public void run() throws TrackingException {
-        processTaskParameters();
+        if (clusterDir != null) {
+            try {
+                cluster = new ClusterNode(clusterDir, nodeId);
+            } catch (ClusterNode.ClusterException e) {
+                throw new TrackingException(e.getMessage());
+            }
+        }
+        if (trackChanges && eventLogPath != null) {
+            try {
+                eventLog = EventLog.open(eventLogPath, EventLog.DEFAULT_SEGMENT_RECORDS);
+            } catch (IOException e) {
+                closeCluster();
+                throw new TrackingException(buildErrorMessage(String.format(EVENT_LOG_ERROR, e.getLocalizedMessage())));
+            }
+        }
+        if (resultsPath != null) {
+            try {
+                resultSink = RESULTS_FORMAT_BINARY.equalsIgnoreCase(resultsFormat)
+                        ? new BinaryResultSink(resultsPath) : new JsonLinesResultSink(resultsPath);
+            } catch (IOException e) {
+                closeEventLog();
+                closeCluster();
+                throw new TrackingException(buildErrorMessage(String.format(RESULTS_ERROR, e.getLocalizedMessage())));
+            }
+        }
+        if (checkpointPath != null) {
+            try {
+                checkpoints = new ScanCheckpoints(checkpointPath, checkpointMaxAge);
+            } catch (IOException e) {
+                closeResultSink();
+                closeEventLog();
+                closeCluster();
+                throw new TrackingException(buildErrorMessage(String.format(CHECKPOINT_ERROR, e.getLocalizedMessage())));
+            }
+        }
+        if (likeSeriesPath != null) {
+            try {
+                likeSeries = LikeSeries.open(likeSeriesPath);
+            } catch (IOException e) {
+                closeCheckpoints();
+                closeResultSink();
+                closeEventLog();
+                closeCluster();
+                throw new TrackingException(buildErrorMessage(String.format(LIKE_SERIES_ERROR, e.getLocalizedMessage())));
+            }
+        }
+        statistics = new TrackingStatistics(statisticsCapacity());
+        authFailure = new CompletableFuture<>();
+        executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        limiter = new AdaptiveLimiter(AdaptiveLimiter.DEFAULT_INITIAL_LIMIT, maxInFlight);
+        ApiMetrics.getInstance().registerLimiter(limiter);
+        api = new AsyncApiClient(vkClient, transport, pool, limiter, executor);
+        UserActor user = pool.getPrimary(); //Queries are built with it, but made with any token of the pool
+        scanner = new LikerScanner(api, user, checkpoints);
+        checker = new LikeChecker(api, user);
+        batcher = new ExecuteBatcher(api, user, batchSize, batchLinger);
+        checkCache = new LikeCheckCache(this::checkLike, checkCacheSize, checkCacheTtl);
+        if (trackChanges)
+            diffEngine = new LikeDiffEngine(scanner, statePath, this::onEvent, offHeapLikers);
+        statistics.start();
         try {
-            //Check whether targetId liked postId of ownerId
-            IsLikedResponse isLikedResponse = vkClient.likes().isLiked(user, LikesType.POST, postId)
-                    .ownerId(ownerId).userId(targetId)
-                    .execute();
-            if (isLikedResponse.isLiked())
-                Logger.getInstance().log(Logger.LogKind.INFO, POST_LIKED);
+            if (cluster != null)
+                cluster.awaitMembers();
+            if (taskListPath != null && daemon && hotReload)
+                runWatched();
+            else if (taskListPath != null)
+                runStream();
+            else if (wallsPath != null)
+                runWallScan(tasks.get(0).get(TaskConfigParser.TARGET_LABEL));
             else
-                Logger.getInstance().log(Logger.LogKind.INFO, POST_NOT_LIKED);
-        } catch (ClientException | ApiException e) {
-            throw new TrackingException(buildErrorMessage(e.getLocalizedMessage()));
+                runList();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrackingException(buildErrorMessage(INTERRUPTED));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TrackingException)
+                throw (TrackingException) e.getCause();
+            throw new TrackingException(buildErrorMessage(e.getCause().getLocalizedMessage()));
+        } finally {
+            batcher.close();
+            api.close();
+            executor.shutdownNow();
+            statistics.finish();
+            statistics.report();
+            pool.report();
+            limiter.report();
+            checkCache.report();
+            if (diffEngine != null)
+                diffEngine.report();
+            closeEventLog();
+            closeResultSink();
+            closeCheckpoints();
+            closeLikeSeries();
+            closeCluster();
         }
     }
 
     /**
-     * Process task parameters manually (a.e. substitute data)
+     * Track the parsed tasks: resolve the screen names, then check the tasks grouped by post
+     * @throws InterruptedException The thread has been interrupted
+     * @throws ExecutionException Exception holding AuthFailedException if the token has been rejected
      * @throws TrackingException Exception that is thrown during tracking
      */
-    private void processTaskParameters() throws TrackingException {
+    private void runList() throws InterruptedException, ExecutionException, TrackingException {
+        //Resolve the uncached screen names in one pass, then process task parameters concurrently
+        Map<String, CompletableFuture<Integer>> targets = resolveTargets();
+        List<CompletableFuture<Task>> processing = new ArrayList<>(tasks.size());
+        for (Parser.ParsingResult parameters : tasks)
+            processing.add(processTask(parameters, targets));
+        awaitAll(processing);
+        nameCache.report();
+        nameCache.write(); //Written right away, since a daemon may never finish
+
+        //Group the tasks by post, so that a post with many targets is checked at once
+        Map<Long, List<Task>> posts = groupByPost(Collections.<Task>emptyList(), processing);
+        if (daemon)
+            runPeriodically(posts, null);
+        else
+            awaitAll(Collections.singletonList(checkPosts(posts)));
+    }
+
+    /**
+     * Track the tasks of the task list while it is being parsed. Every parsed block is processed and grouped
+     * by post on its own, then checked right away, while the next blocks are parsed. Only a few blocks
+     * are checked at once, so the reader waits instead of filling the memory with tasks.
+     * A post whose tasks fall into several blocks is checked once per block.
+     * In daemon mode the tasks of all the blocks are collected and re-checked periodically.
+     * @throws InterruptedException The thread has been interrupted
+     * @throws ExecutionException Exception holding AuthFailedException if the token has been rejected
+     * @throws TrackingException Exception that is thrown if the task list couldn't be parsed
+     */
+    private void runStream() throws InterruptedException, ExecutionException, TrackingException {
+        Map<Long, List<Task>> posts = new HashMap<>(); //Tasks of all the blocks, collected in daemon mode only
+        Deque<CompletableFuture<Void>> pending = new ArrayDeque<>(); //Blocks being processed or checked
+        try (TaskFileReader reader = new TaskFileReader(taskListPath, parseThreads)) {
+            reader.start();
+            TaskFileReader.TaskBlock block;
+            while ((block = reader.next()) != null) {
+                CompletableFuture<Map<Long, List<Task>>> grouped = processBlock(block);
+                pending.add(daemon ? grouped.thenAccept(blockPosts -> mergePosts(posts, blockPosts))
+                        : grouped.thenCompose(this::checkPosts));
+                while (pending.size() > STREAM_BLOCKS_IN_FLIGHT)
+                    awaitAll(Collections.singletonList(pending.poll()));
+            }
+        } catch (Parser.ParsingException e) {
+            throw new TrackingException(e.getMessage());
+        }
+        awaitAll(new ArrayList<>(pending));
+        nameCache.report();
+        nameCache.write();
+        if (daemon)
+            runPeriodically(posts, null);
+    }
+
+    /**
+     * Scan the walls of the wall list for the posts the target has liked. The owners are resolved first,
+     * then the walls are paged and their posts are checked at once by the pipeline of the wall scanner.
+     * Only the liked posts are logged, every result goes to the statistics and the result file.
+     * The walls are scanned once, even in daemon mode.
+     * @param target Target as it was written
+     * @throws InterruptedException The thread has been interrupted
+     * @throws ExecutionException Exception holding AuthFailedException if the token has been rejected,
+     * or TrackingException if the target isn't a user
+     * @throws TrackingException Exception that is thrown if the wall list couldn't be read
+     */
+    private void runWallScan(String target) throws InterruptedException, ExecutionException, TrackingException {
+        List<String> walls;
+        try (FileInputStream in = new FileInputStream(wallsPath.toFile())) {
+            walls = new WallListParser().parse(in);
+        } catch (IOException e) {
+            throw new TrackingException(buildErrorMessage(String.format(WALL_LIST_ERROR, e.getLocalizedMessage())));
+        } catch (Parser.ParsingException e) {
+            throw new TrackingException(e.getMessage());
+        }
+
+        CompletableFuture<Integer> targetId = isUserId(target)
+                ? CompletableFuture.completedFuture(Integer.parseInt(target))
+                : resolveTarget(target, new HashMap<>());
+        List<CompletableFuture<Integer>> resolving = new ArrayList<>(walls.size());
+        for (String wall : walls)
+            resolving.add(resolveOwner(wall));
+        awaitAll(resolving);
+        awaitAll(Collections.singletonList(targetId));
+        nameCache.report();
+        nameCache.write();
+        List<Integer> owners = new ArrayList<>(walls.size());
+        for (CompletableFuture<Integer> owner : resolving)
+            if (owner.join() != null && owns(owner.join())) //Another node of the cluster scans the rest
+                owners.add(owner.join());
+
+        try (WallScanner wallScanner = new WallScanner(api, pool.getPrimary(), this::isLiked, wallThreads, since, maxPosts)) {
+            awaitAll(Collections.singletonList(wallScanner.scan(owners, target, targetId.join(), new WallScanner.Listener() {
+                @Override
+                public void onChecked(Task task, boolean liked, long startTime) {
+                    if (liked) {
+                        registerResult(task, true, startTime);
+                        return;
+                    }
+                    long latency = System.nanoTime() - startTime; //Not logged, most of the posts aren't liked
+                    statistics.register(TrackingStatistics.Outcome.NOT_LIKED, latency);
+                    emitResult(task, TrackingResult.Status.NOT_LIKED, latency);
+                }
+
+                @Override
+                public void onFailed(Task task, Throwable error, long startTime) {
+                    checkAuthFailure(error);
+                    registerFailure(task, buildErrorMessage(String.format(FORMAT_RESULT, task, errorMessage(error))), startTime);
+                }
+            })));
+        }
+    }
+
+    /**
+     * Resolve the owner of a wall: a user or community ID, a page address or a screen name
+     * (the screen names are batched into "execute" requests), an owner that doesn't exist is logged
+     * @param wall Wall as it was written, possibly a link
+     * @return Future owner ID, negative for a community (null if the owner doesn't exist)
+     */
+    private CompletableFuture<Integer> resolveOwner(String wall) {
+        String name = wall.substring(wall.lastIndexOf('/') + 1);
+        if (name.startsWith("wall")) //A link to the wall, or even to one of its posts
+            name = name.substring("wall".length()).split("_")[0];
+        if (OWNER_ID.matcher(name).matches())
+            return CompletableFuture.completedFuture(Integer.parseInt(name));
+        Matcher page = USER_PAGE.matcher(name);
+        if (page.matches())
+            return CompletableFuture.completedFuture(Integer.parseInt(page.group(1)));
+        page = COMMUNITY_PAGE.matcher(name);
+        if (page.matches())
+            return CompletableFuture.completedFuture(-Integer.parseInt(page.group(1)));
+        return batcher.resolveScreenName(name).handle((resolved, e) -> {
+            if (e != null && isAuthError(e))
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            if (e != null || resolved == null || resolved.getType() == DomainResolvedType.APPLICATION) {
+                Logger.getInstance().log(Logger.LogKind.ERROR, buildErrorMessage(String.format(BAD_OWNER, wall)));
+                return null;
+            }
+            return resolved.getType() == DomainResolvedType.USER ? resolved.getObjectId() : -resolved.getObjectId();
+        });
+    }
+
+    /**
+     * Parse the date the walls are scanned since
+     * @param date Date written as yyyy-MM-dd, the day starts at midnight UTC
+     * @return Unix time in seconds
+     */
+    private long parseSince(String date) {
+        try {
+            return LocalDate.parse(date).atStartOfDay(ZoneOffset.UTC).toEpochSecond();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException(buildErrorMessage(String.format(BAD_SINCE, date)));
+        }
+    }
+
+    /**
+     * Track the tasks of the task list in daemon mode, reloading it whenever it changes.
+     * Only the added and removed tasks are processed by a reload, the checks of the rest go on as they were.
+     * @throws InterruptedException The thread has been interrupted
+     * @throws ExecutionException Exception holding AuthFailedException if the token has been rejected
+     * @throws TrackingException Exception that is thrown if the task list couldn't be parsed
+     */
+    private void runWatched() throws InterruptedException, ExecutionException, TrackingException {
+        try (TaskListWatcher watcher = new TaskListWatcher(taskListPath)) {
+            Map<Long, List<Task>> posts = new HashMap<>();
+            List<CompletableFuture<Void>> processing = new ArrayList<>();
+            for (TaskFileReader.TaskBlock block : watcher.reload().getAdded())
+                processing.add(processBlock(block).thenAccept(blockPosts -> mergePosts(posts, blockPosts)));
+            awaitAll(processing);
+            nameCache.report();
+            nameCache.write();
+            runPeriodically(posts, watcher);
+        } catch (Parser.ParsingException e) {
+            throw new TrackingException(e.getMessage());
+        }
+    }
+
+    /**
+     * Apply a change of the task list: the checks of the removed tasks are stopped,
+     * the added tasks are processed and scheduled
+     * @param change Added and removed tasks
+     */
+    private void onTaskListChange(TaskListWatcher.Change change) {
+        int removed = unscheduleTasks(change.getRemoved());
+        List<CompletableFuture<Map<Long, List<Task>>>> processing = new ArrayList<>(change.getAdded().size());
+        for (TaskFileReader.TaskBlock block : change.getAdded())
+            processing.add(processBlock(block));
+        Map<Long, List<Task>> posts = new HashMap<>();
+        int added = 0;
+        for (CompletableFuture<Map<Long, List<Task>>> future : processing) { //Failures are registered already
+            Map<Long, List<Task>> blockPosts = future.join();
+            for (List<Task> postTasks : blockPosts.values())
+                added += postTasks.size();
+            mergePosts(posts, blockPosts);
+        }
+        schedulePosts(posts);
+        int scheduled;
+        synchronized (scheduledPosts) {
+            scheduled = scheduledPosts.size();
+        }
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_RELOADED, added, removed, scheduled));
+    }
+
+    /**
+     * Schedule periodic checks of posts, the first checks are spread evenly over the interval.
+     * The tasks of a post that is scheduled already are added to its check.
+     * @param posts Tasks by post key
+     */
+    private void schedulePosts(Map<Long, List<Task>> posts) {
+        synchronized (scheduledPosts) {
+            int index = 0;
+            for (Map.Entry<Long, List<Task>> post : posts.entrySet()) {
+                ScheduledPost scheduled = scheduledPosts.get(post.getKey());
+                if (scheduled != null) {
+                    List<Task> tasks = new ArrayList<>(scheduled.tasks);
+                    tasks.addAll(post.getValue());
+                    scheduled.tasks = tasks;
+                    continue;
+                }
+                ScheduledPost created = new ScheduledPost(post.getValue());
+                if (owns(post.getKey())) //Kept anyway, the node may take the post over
+                    created.future = scheduler.schedule(() -> checkPost(created.tasks), index++ * interval / posts.size());
+                scheduledPosts.put(post.getKey(), created);
+            }
+        }
+    }
+
+    /**
+     * Stop the periodic checks of tasks, a post without tasks is unscheduled
+     * @param blocks Removed tasks
+     * @return Number of the tasks that have been scheduled
+     */
+    private int unscheduleTasks(List<TaskFileReader.TaskBlock> blocks) {
+        //Count the removed targets of every post, a task may be listed more than once
+        Map<Long, Map<String, Integer>> removals = new HashMap<>();
+        for (TaskFileReader.TaskBlock block : blocks)
+            for (int i = 0; i < block.size(); i++)
+                if (block.hasValidLink(i))
+                    removals.computeIfAbsent(Task.postKey(block.getOwnerId(i), block.getPostId(i)), key -> new HashMap<>())
+                            .merge(block.getTarget(i), 1, Integer::sum);
+        int removed = 0;
+        synchronized (scheduledPosts) {
+            for (Map.Entry<Long, Map<String, Integer>> post : removals.entrySet()) {
+                ScheduledPost scheduled = scheduledPosts.get(post.getKey());
+                if (scheduled == null) //Its tasks have failed to be processed
+                    continue;
+                Map<String, Integer> targets = post.getValue();
+                List<Task> tasks = new ArrayList<>(scheduled.tasks.size());
+                for (Task task : scheduled.tasks) {
+                    Integer count = targets.get(task.getTarget());
+                    if (count == null || count == 0) {
+                        tasks.add(task);
+                        continue;
+                    }
+                    targets.put(task.getTarget(), count - 1);
+                    removed++;
+                }
+                if (tasks.isEmpty()) {
+                    if (scheduled.future != null)
+                        scheduled.future.cancel(false);
+                    scheduledPosts.remove(post.getKey());
+                } else {
+                    scheduled.tasks = tasks;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Move the periodic checks after a node of the cluster has joined or left: the posts the node has taken over
+     * are scheduled (spread evenly over the interval), and the checks of the posts it has handed over are stopped.
+     * The consistent hash ring keeps the rest of the posts where they are.
+     * @param ring Ring of the nodes that are alive now
+     */
+    private void onMembershipChange(HashRing ring) {
+        int handedOver = 0;
+        int owned = 0;
+        int total;
+        List<ScheduledPost> takenOver = new ArrayList<>();
+        synchronized (scheduledPosts) {
+            for (Map.Entry<Long, ScheduledPost> post : scheduledPosts.entrySet()) {
+                ScheduledPost scheduled = post.getValue();
+                boolean owns = cluster.getNodeId().equals(ring.nodeOf(post.getKey()));
+                if (owns)
+                    owned++;
+                if (owns && scheduled.future == null) {
+                    takenOver.add(scheduled);
+                } else if (!owns && scheduled.future != null) {
+                    scheduled.future.cancel(false);
+                    scheduled.future = null;
+                    handedOver++;
+                }
+            }
+            for (int i = 0; i < takenOver.size(); i++) {
+                ScheduledPost scheduled = takenOver.get(i);
+                scheduled.future = scheduler.schedule(() -> checkPost(scheduled.tasks), i * interval / takenOver.size());
+            }
+            total = scheduledPosts.size();
+        }
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_REBALANCED,
+                ring.getNodes().size(), takenOver.size(), handedOver, owned, total));
+    }
+
+    /**
+     * Check whether the node checks a post, or scans a wall
+     * @param key Key of the post, or ID of the wall owner
+     * @return True unless another node of the cluster owns the key
+     */
+    private boolean owns(long key) {
+        return cluster == null || cluster.owns(key);
+    }
+
+    /**
+     * Write the pending scan checkpoints if they are saved
+     */
+    private void closeCheckpoints() {
+        if (checkpoints == null)
+            return;
+        checkpoints.close();
+        checkpoints = null;
+    }
+
+    /**
+     * Leave the cluster if the node has joined it
+     */
+    private void closeCluster() {
+        if (cluster == null)
+            return;
+        cluster.close();
+        cluster = null;
+    }
+
+    /**
+     * Get the number of check latencies kept for the statistics of a run
+     * @return Number of latencies
+     */
+    private int statisticsCapacity() {
+        return taskListPath != null || wallsPath != null ? STREAM_LATENCY_SAMPLES : tasks.size();
+    }
+
+    /**
+     * Get the users whose tokens the API has rejected during the run
+     * @return Rejected users
+     */
+    public List<UserActor> getRejectedUsers() {
+        return pool.getRejected();
+    }
+
+    /**
+     * Wait for futures to complete, or for the token to be rejected
+     * @param futures Futures to wait for
+     * @throws InterruptedException The thread has been interrupted
+     * @throws ExecutionException Exception holding AuthFailedException if the token has been rejected
+     */
+    private void awaitAll(List<? extends CompletableFuture<?>> futures) throws InterruptedException, ExecutionException {
+        CompletableFuture.anyOf(CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])), authFailure).get();
+    }
+
+    /**
+     * Stop the run if an error means that the API has rejected the token
+     * @param error Error, possibly wrapped into CompletionException
+     */
+    private void checkAuthFailure(Throwable error) {
+        if (isAuthError(error) && !authFailure.isDone())
+            authFailure.completeExceptionally(new AuthFailedException(buildErrorMessage(
+                    String.format(AUTH_FAILED, errorMessage(error)))));
+    }
+
+    /**
+     * Log a like or unlike event and store it in the event log
+     * @param event Like or unlike event
+     */
+    private void onEvent(LikeEvent event) {
+        Logger.getInstance().log(Logger.LogKind.INFO, event.toString());
+        if (eventLog != null)
+            eventLog.onEvent(event);
+    }
+
+    /**
+     * Close the event log if it is open
+     */
+    private void closeEventLog() {
+        if (eventLog == null)
+            return;
+        try {
+            eventLog.close();
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_EVENT_LOG_CLOSE, e.getLocalizedMessage()));
+        }
+        eventLog = null;
+    }
+
+    /**
+     * Write the buffered results to the result file
+     */
+    private void flushResults() {
+        if (resultSink == null)
+            return;
+        try {
+            resultSink.flush();
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_RESULTS_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Write the open blocks of the like series to its file
+     */
+    private void flushLikeSeries() {
+        if (likeSeries == null)
+            return;
+        try {
+            likeSeries.flush();
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_LIKE_SERIES_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Close the like series if it is open
+     */
+    private void closeLikeSeries() {
+        if (likeSeries == null)
+            return;
+        try {
+            likeSeries.close();
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_LIKE_SERIES_WRITE, e.getLocalizedMessage()));
+        }
+        likeSeries = null;
+    }
+
+    /**
+     * Close the result sink if it is open
+     */
+    private void closeResultSink() {
+        if (resultSink == null)
+            return;
+        try {
+            resultSink.close();
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_RESULTS_WRITE, e.getLocalizedMessage()));
+        }
+        resultSink = null;
+    }
+
+    /**
+     * Re-check every post periodically, the first checks are spread evenly over the interval.
+     * Statistics are reported once per interval.
+     * @param posts Tasks grouped by post
+     * @param watcher Watcher of the task list that passes its changes to the schedule (null if it isn't watched)
+     * @throws InterruptedException The thread has been interrupted
+     * @throws ExecutionException Exception holding AuthFailedException if the token has been rejected
+     * @throws TrackingException Exception that is thrown if the task list couldn't be watched
+     */
+    private void runPeriodically(Map<Long, List<Task>> posts, TaskListWatcher watcher)
+            throws InterruptedException, ExecutionException, TrackingException {
+        try (TrackingScheduler scheduler = new TrackingScheduler(interval)) {
+            this.scheduler = scheduler;
+            schedulePosts(posts);
+            if (cluster != null)
+                cluster.start(this::onMembershipChange);
+            if (watcher != null) {
+                try {
+                    watcher.start(this::onTaskListChange);
+                } catch (Parser.ParsingException e) {
+                    throw new TrackingException(e.getMessage());
+                }
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    authFailure.get(interval, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) { //The usual case, the token is still accepted
+                }
+                TrackingStatistics window = statistics;
+                statistics = new TrackingStatistics(statisticsCapacity());
+                statistics.start();
+                window.finish();
+                window.report();
+                scheduler.report();
+                pool.report();
+                limiter.report();
+                checkCache.report();
+                flushResults();
+                flushLikeSeries();
+                if (diffEngine != null)
+                    diffEngine.report();
+            }
+        }
+    }
+
+    /**
+     * Resolve the target screen names of all the tasks. Cached names are taken from the cache,
+     * the rest are resolved at once (the calls are batched into "execute" requests) and cached.
+     * @return Future user ID of every screen name (completed with TrackingException if the name isn't a user)
+     */
+    private Map<String, CompletableFuture<Integer>> resolveTargets() {
+        Map<String, CompletableFuture<Integer>> targets = new HashMap<>();
+        for (Parser.ParsingResult parameters : tasks) {
+            String name = parameters.get(TaskConfigParser.TARGET_LABEL);
+            if (!isUserId(name))
+                resolveTarget(name, targets);
+        }
+        return targets;
+    }
+
+    /**
+     * Resolve a target screen name, unless it is being resolved already.
+     * A cached name is taken from the cache, otherwise it is resolved (the call is batched
+     * into an "execute" request) and cached.
+     * @param name Screen name
+     * @param targets Future user IDs of the screen names being resolved, the name is added there
+     * @return Future user ID (completed with TrackingException if the name isn't a user)
+     */
+    private CompletableFuture<Integer> resolveTarget(String name, Map<String, CompletableFuture<Integer>> targets) {
+        CompletableFuture<Integer> target = targets.get(name);
+        if (target != null)
+            return target;
+        Integer cached = nameCache.get(name);
+        if (cached != null) {
+            target = cached == ScreenNameCache.NOT_A_USER
+                    ? failedFuture(new TrackingException(buildErrorMessage(BAD_TARGET)))
+                    : CompletableFuture.completedFuture(cached);
+        } else { //Transform screen_name to user ID
+            target = batcher.resolveScreenName(name).handle((resolved, e) -> {
+                if (e != null && isAuthError(e))
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                if (e != null) //Not cached, the name may be resolved next time
+                    throw new CompletionException(new TrackingException(buildErrorMessage(BAD_TARGET)));
+                if (resolved == null || resolved.getType() != DomainResolvedType.USER) {
+                    nameCache.putNotUser(name);
+                    throw new CompletionException(new TrackingException(buildErrorMessage(BAD_TARGET)));
+                }
+                nameCache.putUser(name, resolved.getObjectId());
+                return resolved.getObjectId();
+            });
+        }
+        targets.put(name, target);
+        return target;
+    }
+
+    /**
+     * Process a block of the streamed task list, a failure is registered right away
+     * @param block Parsed tasks
+     * @return Future processed tasks grouped by post
+     */
+    private CompletableFuture<Map<Long, List<Task>>> processBlock(TaskFileReader.TaskBlock block) {
+        Map<String, CompletableFuture<Integer>> targets = new HashMap<>();
+        List<Task> ready = new ArrayList<>(block.size()); //Tasks with user IDs need no requests
+        List<CompletableFuture<Task>> processing = new ArrayList<>();
+        for (int i = 0; i < block.size(); i++) {
+            long startTime = System.nanoTime();
+            String target = block.getTarget(i);
+            if (!block.hasValidLink(i)) {
+                if (owns(BAD_LINK_KEY))
+                    registerFailure(new Task(target, 0, 0, 0), buildErrorMessage(BAD_POST_LINK), startTime);
+                continue;
+            }
+            int ownerId = block.getOwnerId(i);
+            int postId = block.getPostId(i);
+            boolean owned = owns(Task.postKey(ownerId, postId));
+            if (!owned && !daemon) //Another node of the cluster checks it
+                continue;
+            String name = block.getName(i);
+            if (name == null) {
+                ready.add(new Task(target, block.getTargetId(i), ownerId, postId));
+                continue;
+            }
+            processing.add(handleProcessed(target, resolveTarget(name, targets)
+                    .thenApply(userId -> new Task(name, userId, ownerId, postId)), startTime, owned));
+        }
+        return CompletableFuture.allOf(processing.toArray(new CompletableFuture[0]))
+                .thenApply(done -> groupByPost(ready, processing));
+    }
+
+    /**
+     * Group processed tasks by post
+     * @param ready Tasks processed already
+     * @param processing Future processed tasks (null in case of failure), they must be completed
+     * @return Tasks by post key
+     */
+    private static Map<Long, List<Task>> groupByPost(List<Task> ready, List<CompletableFuture<Task>> processing) {
+        Map<Long, List<Task>> posts = new HashMap<>();
+        for (Task task : ready)
+            posts.computeIfAbsent(postKey(task), key -> new ArrayList<>()).add(task);
+        for (CompletableFuture<Task> future : processing) {
+            Task task = future.join();
+            if (task != null)
+                posts.computeIfAbsent(postKey(task), key -> new ArrayList<>()).add(task);
+        }
+        return posts;
+    }
+
+    /**
+     * Add tasks grouped by post to other ones
+     * @param posts Tasks by post key the tasks are added to
+     * @param added Added tasks by post key
+     */
+    private static void mergePosts(Map<Long, List<Task>> posts, Map<Long, List<Task>> added) {
+        synchronized (posts) {
+            for (Map.Entry<Long, List<Task>> post : added.entrySet())
+                posts.computeIfAbsent(post.getKey(), key -> new ArrayList<>()).addAll(post.getValue());
+        }
+    }
+
+    /**
+     * Check all the targets of several posts
+     * @param posts Tasks by post key
+     * @return Future that is completed when all the targets are checked
+     */
+    private CompletableFuture<Void> checkPosts(Map<Long, List<Task>> posts) {
+        List<CompletableFuture<Void>> checks = new ArrayList<>(posts.size());
+        for (Map.Entry<Long, List<Task>> post : posts.entrySet())
+            if (owns(post.getKey())) //Another node of the cluster checks the rest
+                checks.add(checkPost(post.getValue()));
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Process parameters of a single task, a failure is registered right away
+     * @param parameters Task parameters
+     * @param targets Future user IDs of the target screen names
+     * @return Future processed task (null in case of failure)
+     */
+    private CompletableFuture<Task> processTask(Parser.ParsingResult parameters,
+                                                Map<String, CompletableFuture<Integer>> targets) {
+        long startTime = System.nanoTime();
+        return handleProcessed(parameters.get(TaskConfigParser.TARGET_LABEL),
+                processTaskParameters(parameters, targets), startTime, true);
+    }
+
+    /**
+     * Register the failure of a processed task right away
+     * @param target Target as it was written in the task
+     * @param processed Future processed task
+     * @param startTime Time the processing has been started at
+     * @param report Should a failure be registered (False if another node of the cluster reports it)?
+     * @return Future processed task (null in case of failure)
+     */
+    private CompletableFuture<Task> handleProcessed(String target, CompletableFuture<Task> processed, long startTime,
+                                                    boolean report) {
+        return processed.handle((task, e) -> {
+            if (e == null)
+                return task;
+            checkAuthFailure(e);
+            if (report) //The IDs stay unknown
+                registerFailure(new Task(target, 0, 0, 0), errorMessage(e), startTime);
+            return null;
+        });
+    }
+
+    /**
+     * Check all the targets of a post, and sample its like count if the counts are stored.
+     * The count comes with the likers downloaded for the check, a post checked with likes.isLiked alone
+     * takes a request for it
+     * @param postTasks Tasks of the same post
+     * @return Future that is completed when all the targets are checked and the count is sampled
+     */
+    private CompletableFuture<Void> checkPost(List<Task> postTasks) {
+        CompletableFuture<Integer> check = checkTargets(postTasks);
+        LikeSeries series = likeSeries;
+        if (series == null)
+            return check.thenApply(count -> null);
+        Task head = postTasks.get(0);
+        if (downloadsLikers(postTasks))
+            return check.thenAccept(count -> sampleLikes(series, head.getOwnerId(), head.getPostId(), count));
+        CompletableFuture<Void> sample = scanner.fetchCount(head.getOwnerId(), head.getPostId()).handle((count, e) -> {
+            if (e != null)
+                checkAuthFailure(e);
+            else
+                sampleLikes(series, head.getOwnerId(), head.getPostId(), count);
+            return null;
+        });
+        return CompletableFuture.allOf(check, sample);
+    }
+
+    /**
+     * Store a like count sample of a post, a count that is unknown is skipped
+     * @param series Like series
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param count Number of likes (null if the check has failed)
+     */
+    private static void sampleLikes(LikeSeries series, int ownerId, int postId, Integer count) {
+        if (count != null)
+            series.append(ownerId, postId, System.currentTimeMillis(), count);
+    }
+
+    /**
+     * Check whether the likers of a post are downloaded to check its targets, rather than checked with likes.isLiked
+     * @param postTasks Tasks of the same post
+     * @return True if the likers are downloaded (False otherwise)
+     */
+    private boolean downloadsLikers(List<Task> postTasks) {
+        return diffEngine != null || postTasks.size() >= SCAN_MIN_TARGETS;
+    }
+
+    /**
+     * Check all the targets of a post.
+     * When changes are tracked, the post is polled by the diff engine and the targets are looked up
+     * in its current likers.
+     * Otherwise a post with a single target is checked with likes.isLiked. A post with several targets
+     * gets the first page of likers downloaded with likes.getList: the targets found there are liked,
+     * and the rest are checked either with a full scan or with likes.isLiked, whichever takes fewer requests.
+     * @param postTasks Tasks of the same post
+     * @return Future number of likes of the post, completed when all the targets are checked
+     * (null if the likers haven't been downloaded)
+     */
+    private CompletableFuture<Integer> checkTargets(List<Task> postTasks) {
+        long startTime = System.nanoTime();
+        Task head = postTasks.get(0);
+        if (diffEngine != null) {
+            return diffEngine.poll(head.getOwnerId(), head.getPostId()).handle((likers, e) -> {
+                if (e != null) {
+                    registerFailures(postTasks, e, startTime);
+                    return null;
+                }
+                for (Task task : postTasks)
+                    registerResult(task, likers.contains(task.getTargetId()), startTime);
+                return likers.size();
+            });
+        }
+        if (!downloadsLikers(postTasks))
+            return checkEach(postTasks, startTime).thenApply(ignored -> null);
+
+        return scanner.fetchPage(head.getOwnerId(), head.getPostId(), 0)
+                .handle((firstPage, e) -> {
+                    if (e != null) {
+                        registerFailures(postTasks, e, startTime);
+                        return CompletableFuture.<Integer>completedFuture(null);
+                    }
+                    Integer count = firstPage.getCount();
+                    LikerBitmap firstLikers = new LikerBitmap();
+                    LikerScanner.addAll(firstLikers, firstPage);
+                    List<Task> unresolved = new ArrayList<>();
+                    for (Task task : postTasks) {
+                        if (firstLikers.contains(task.getTargetId()))
+                            registerResult(task, true, startTime);
+                        else
+                            unresolved.add(task);
+                    }
+
+                    int remainingPages = LikerScanner.pages(firstPage.getCount()) - 1;
+                    if (unresolved.isEmpty() || remainingPages <= 0) { //The first page holds every liker
+                        for (Task task : unresolved)
+                            registerResult(task, false, startTime);
+                        return CompletableFuture.completedFuture(count);
+                    }
+                    if (remainingPages > unresolved.size()) //Checking targets one by one is cheaper
+                        return checkEach(unresolved, startTime).thenApply(ignored -> count);
+                    return scanner.scan(head.getOwnerId(), head.getPostId(), firstPage).handle((likers, scanError) -> {
+                        if (scanError != null)
+                            registerFailures(unresolved, scanError, startTime);
+                        else
+                            for (Task task : unresolved)
+                                registerResult(task, likers.contains(task.getTargetId()), startTime);
+                        return count;
+                    });
+                }).thenCompose(future -> future);
+    }
+
+    /**
+     * Check the targets one by one with likes.isLiked (the calls are batched into "execute" requests,
+     * unless the batch size is 1)
+     * @param tasks Tasks to be checked
+     * @param startTime Time the check has been started at
+     * @return Future that is completed when all the targets are checked
+     */
+    private CompletableFuture<Void> checkEach(List<Task> tasks, long startTime) {
+        List<CompletableFuture<Void>> checks = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            CompletableFuture<Boolean> liked = isLiked(task.getOwnerId(), task.getPostId(), task.getTargetId());
+            checks.add(liked.handle((result, e) -> {
+                if (e != null) {
+                    checkAuthFailure(e);
+                    registerFailure(task, buildErrorMessage(String.format(FORMAT_RESULT, task, errorMessage(e))), startTime);
+                } else {
+                    registerResult(task, result, startTime);
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Check whether a user has liked a post. Identical checks made at once share a call,
+     * and a recent result is reused.
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param userId ID of the user
+     * @return Future result of the check
+     */
+    private CompletableFuture<Boolean> isLiked(int ownerId, int postId, int userId) {
+        return checkCache.isLiked(ownerId, postId, userId);
+    }
+
+    /**
+     * Call likes.isLiked (the call is batched into an "execute" request, unless the batch size is 1)
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param userId ID of the user
+     * @return Future result of the check
+     */
+    private CompletableFuture<Boolean> checkLike(int ownerId, int postId, int userId) {
+        return batchSize > 1
+                ? batcher.isLiked(ownerId, postId, userId).thenApply(IsLikedResponse::isLiked)
+                : checker.check(ownerId, postId, userId).thenApply(LikeStatus::isLiked);
+    }
+
+    /**
+     * Register and log the result of a check
+     * @param task Checked task
+     * @param liked Whether the post is liked
+     * @param startTime Time the check has been started at
+     */
+    private void registerResult(Task task, boolean liked, long startTime) {
+        long latency = System.nanoTime() - startTime;
+        statistics.register(liked ? TrackingStatistics.Outcome.LIKED : TrackingStatistics.Outcome.NOT_LIKED, latency);
+        Logger.getInstance().log(Logger.LogKind.INFO,
+                String.format(FORMAT_RESULT, task, liked ? POST_LIKED : POST_NOT_LIKED));
+        emitResult(task, liked ? TrackingResult.Status.LIKED : TrackingResult.Status.NOT_LIKED, latency);
+    }
+
+    /**
+     * Register and log a failed check
+     * @param task Failed task
+     * @param message Error message
+     * @param startTime Time the check has been started at
+     */
+    private void registerFailure(Task task, String message, long startTime) {
+        long latency = System.nanoTime() - startTime;
+        statistics.register(TrackingStatistics.Outcome.FAILED, latency);
+        Logger.getInstance().log(Logger.LogKind.ERROR, message);
+        emitResult(task, TrackingResult.Status.FAILED, latency);
+    }
+
+    /**
+     * Pass the result of a check to the result sink
+     * @param task Checked task
+     * @param status Status of the check
+     * @param latency Check latency in nanoseconds
+     */
+    private void emitResult(Task task, TrackingResult.Status status, long latency) {
+        ResultSink sink = resultSink;
+        if (sink != null)
+            sink.onResult(new TrackingResult(task.getTarget(), task.getTargetId(), task.getOwnerId(), task.getPostId(),
+                    status, System.currentTimeMillis(), latency));
+    }
+
+    /**
+     * Register failed checks of several tasks caused by the same error
+     * @param tasks Failed tasks
+     * @param error Error thrown during the check
+     * @param startTime Time the check has been started at
+     */
+    private void registerFailures(List<Task> tasks, Throwable error, long startTime) {
+        checkAuthFailure(error);
+        for (Task task : tasks)
+            registerFailure(task, buildErrorMessage(String.format(FORMAT_RESULT, task, errorMessage(error))), startTime);
+    }
+
+    /**
+     * Build a key identifying the post of a task
+     * @param task A task
+     * @return Owner ID and post ID packed into a long
+     */
+    private static long postKey(Task task) {
+        return Task.postKey(task.getOwnerId(), task.getPostId());
+    }
+
+    /**
+     * Process task parameters manually (a.e. substitute data).
+     * Package-private for the benchmarks.
+     * @param parameters Task parameters
+     * @param targets Future user IDs of the target screen names
+     * @return Future processed task
+     */
+    CompletableFuture<Task> processTaskParameters(Parser.ParsingResult parameters,
+                                                         Map<String, CompletableFuture<Integer>> targets) {
         //Processing link
-        String link = task.get(TaskConfigParser.POST_LINK_LABEL);
+        String link = parameters.get(TaskConfigParser.POST_LINK_LABEL);
         String[] segments = link.split("wall");
         String postData = segments[segments.length - 1];
         segments = postData.split("_");
         if (segments.length != 2)
-            throw new TrackingException(buildErrorMessage(BAD_POST_LINK));
-        this.ownerId = Integer.parseInt(segments[0]);
-        this.postId = Integer.parseInt(segments[1]);
+            return failedFuture(new TrackingException(buildErrorMessage(BAD_POST_LINK)));
+        int ownerId;
+        int postId;
+        try {
+            ownerId = Integer.parseInt(segments[0]);
+            postId = Integer.parseInt(segments[1]);
+        } catch (NumberFormatException e) {
+            return failedFuture(new TrackingException(buildErrorMessage(BAD_POST_LINK)));
+        }
 
         //Processing target
-        String name = task.get(TaskConfigParser.TARGET_LABEL);
-        if (!name.matches("[0-9]+")) {
-            try {
-                //Transform screen_name to user ID
-                DomainResolved resolved = vkClient.utils().resolveScreenName(user, name)
-                        .execute();
-                if (resolved.getType() != DomainResolvedType.USER)
-                    throw new TrackingException(buildErrorMessage(BAD_TARGET));
-                this.targetId = resolved.getObjectId();
-            } catch (ApiException | ClientException e) {
-                throw new TrackingException(buildErrorMessage(BAD_TARGET));
-            }
-        } else //In case the target parameter is already an ID
-            this.targetId = Integer.parseInt(name);
+        String name = parameters.get(TaskConfigParser.TARGET_LABEL);
+        if (isUserId(name)) //In case the target parameter is already an ID
+            return CompletableFuture.completedFuture(new Task(name, Integer.parseInt(name), ownerId, postId));
+        return targets.get(name).thenApply(userId -> new Task(name, userId, ownerId, postId));
+    }
+
+    /**
+     * Check whether a target is given by its user ID rather than its screen name
+     * @param target Target parameter
+     * @return True if the target is a user ID (False otherwise)
+     */
+    private static boolean isUserId(String target) {
+        return target.matches("[0-9]+");
+    }
+
+    /**
+     * Check whether an error means that the API has rejected the token of the user
+     * @param error Error, possibly wrapped into CompletionException
+     * @return True if the token has been rejected (False otherwise)
+     */
+    private static boolean isAuthError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof ApiAuthException;
+    }
+
+    /**
+     * Create a future that is completed with an exception
+     * @param e Exception
+     * @param <T> Type of the future result
+     * @return Failed future
+     */
+    private static <T> CompletableFuture<T> failedFuture(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Get the message of an error a future has been completed with
+     * @param error Error, possibly wrapped into CompletionException
+     * @return Error message
+     */
+    private static String errorMessage(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause.getLocalizedMessage();
     }
 
     /**
@@ -0,0 +1,666 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Compressed set of user IDs in the manner of Roaring bitmaps.
+ * An ID is split into the high and the low 16 bits. IDs with the same high bits share a container:
+ * a sorted array of the low bits while there are at most 4096 of them, and a bitmap of 65536 bits otherwise.
+ * So a liker takes at most 2 bytes instead of a boxed Integer in a hash table.
+ * A bitmap isn't thread-safe, but one that is no longer modified can be read concurrently.
+ */
+class LikerBitmap {
+    private static final int ARRAY_MAX_SIZE = 4096; //A larger array would take more space than a bitmap
+    private static final int BITMAP_WORDS = 1024; //65536 bits
+    private static final int INITIAL_ARRAY_CAPACITY = 4;
+    private static final int CONTAINER_OVERHEAD = 48; //Approximate size of a container object with its buffer
+    private static final String ERROR_FORMAT = "Bad liker bitmap format";
+
+    /**
+     * Low 16 bits of the IDs with the same high 16 bits
+     */
+    private abstract static class Container {
+        abstract int cardinality();
+
+        abstract boolean contains(char low);
+
+        /**
+         * Add the low bits of an ID
+         * @param low Low 16 bits
+         * @return Container holding the value (this one or a converted one)
+         */
+        abstract Container add(char low);
+
+        /**
+         * Set the bits of the values in a bitmap
+         * @param words Bitmap of 65536 bits
+         */
+        abstract void orInto(long[] words);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        /**
+         * Get the number of bytes the values take
+         * @return Number of bytes
+         */
+        abstract int payloadBytes();
+
+        /**
+         * Copy the container to a buffer
+         * @param memory Buffer of payloadBytes() bytes
+         * @return Container that keeps its values in the buffer
+         */
+        abstract Container copyTo(ByteBuffer memory);
+
+        abstract void write(DataOutput out) throws IOException;
+    }
+
+    /**
+     * Sorted array of low bits
+     */
+    private static final class ArrayContainer extends Container {
+        private CharBuffer values; //Sorted low bits, only the first size values are used
+        private int size;
+
+        ArrayContainer(CharBuffer values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        int cardinality() {
+            return size;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return search(low) >= 0;
+        }
+
+        @Override
+        Container add(char low) {
+            int index;
+            if (size == 0 || values.get(size - 1) < low) { //Values added in ascending order are just appended
+                index = size;
+            } else {
+                index = search(low);
+                if (index >= 0)
+                    return this;
+                index = -index - 1;
+            }
+            if (size == ARRAY_MAX_SIZE) {
+                long[] words = new long[BITMAP_WORDS];
+                orInto(words);
+                return new BitmapContainer(LongBuffer.wrap(words), size).add(low);
+            }
+            if (size == values.capacity()) {
+                CharBuffer grown = CharBuffer.allocate(Math.min(ARRAY_MAX_SIZE, Math.max(INITIAL_ARRAY_CAPACITY, size << 1)));
+                grown.put(prefix(size));
+                values = grown;
+            }
+            for (int i = size; i > index; i--)
+                values.put(i, values.get(i - 1));
+            values.put(index, low);
+            size++;
+            return this;
+        }
+
+        @Override
+        void orInto(long[] words) {
+            for (int i = 0; i < size; i++) {
+                char low = values.get(i);
+                words[low >>> 6] |= 1L << low;
+            }
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < size; i++)
+                action.accept(high << 16 | values.get(i));
+        }
+
+        @Override
+        int payloadBytes() {
+            return size * Character.BYTES;
+        }
+
+        @Override
+        Container copyTo(ByteBuffer memory) {
+            CharBuffer copy = memory.asCharBuffer();
+            copy.put(prefix(size));
+            return new ArrayContainer(copy, size);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            for (int i = 0; i < size; i++)
+                out.writeChar(values.get(i));
+        }
+
+        /**
+         * Keep the values that are (or aren't) present in another container
+         * @param other Another container
+         * @param present Should the values present in the other container be kept?
+         * @return Kept values (null if there are none)
+         */
+        Container filter(Container other, boolean present) {
+            char[] kept = new char[size];
+            int keptSize = 0;
+            for (int i = 0; i < size; i++) {
+                char low = values.get(i);
+                if (other.contains(low) == present)
+                    kept[keptSize++] = low;
+            }
+            return keptSize == 0 ? null : new ArrayContainer(CharBuffer.wrap(kept), keptSize);
+        }
+
+        /**
+         * Merge with another array (the result must fit into an array)
+         * @param other Another array
+         * @return Values of both arrays
+         */
+        Container merge(ArrayContainer other) {
+            char[] merged = new char[size + other.size];
+            int i = 0;
+            int j = 0;
+            int mergedSize = 0;
+            while (i < size && j < other.size) {
+                char a = values.get(i);
+                char b = other.values.get(j);
+                merged[mergedSize++] = a <= b ? a : b;
+                if (a <= b)
+                    i++;
+                if (b <= a)
+                    j++;
+            }
+            while (i < size)
+                merged[mergedSize++] = values.get(i++);
+            while (j < other.size)
+                merged[mergedSize++] = other.values.get(j++);
+            return new ArrayContainer(CharBuffer.wrap(merged), mergedSize);
+        }
+
+        /**
+         * Find a value with the binary search
+         * @param low Low 16 bits
+         * @return Index of the value (-insertionPoint - 1 if it isn't present)
+         */
+        private int search(char low) {
+            int from = 0;
+            int to = size - 1;
+            while (from <= to) {
+                int middle = (from + to) >>> 1;
+                char value = values.get(middle);
+                if (value < low)
+                    from = middle + 1;
+                else if (value > low)
+                    to = middle - 1;
+                else
+                    return middle;
+            }
+            return -from - 1;
+        }
+
+        /**
+         * Get a view of the first values
+         * @param length Number of values
+         * @return View of the values
+         */
+        private CharBuffer prefix(int length) {
+            CharBuffer prefix = values.duplicate();
+            prefix.position(0);
+            prefix.limit(length);
+            return prefix;
+        }
+    }
+
+    /**
+     * Bitmap of 65536 bits
+     */
+    private static final class BitmapContainer extends Container {
+        private final LongBuffer words;
+        private int cardinality; //Number of set bits
+
+        BitmapContainer(LongBuffer words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words.get(low >>> 6) & 1L << low) != 0;
+        }
+
+        @Override
+        Container add(char low) {
+            long word = words.get(low >>> 6);
+            if ((word & 1L << low) == 0) {
+                words.put(low >>> 6, word | 1L << low);
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        void orInto(long[] target) {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                target[i] |= words.get(i);
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                long word = words.get(i);
+                while (word != 0) {
+                    action.accept(high << 16 | i << 6 | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        int payloadBytes() {
+            return BITMAP_WORDS * Long.BYTES;
+        }
+
+        @Override
+        Container copyTo(ByteBuffer memory) {
+            LongBuffer copy = memory.asLongBuffer();
+            LongBuffer source = words.duplicate();
+            source.clear();
+            copy.put(source);
+            return new BitmapContainer(copy, cardinality);
+        }
+
+        @Override
+        void write(DataOutput out) throws IOException {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                out.writeLong(words.get(i));
+        }
+
+        long word(int index) {
+            return words.get(index);
+        }
+    }
+
+    private char[] keys; //High 16 bits of the containers in ascending order
+    private Container[] containers;
+    private int size; //Number of containers
+    private int cardinality; //Number of IDs
+    private boolean offHeap; //Are the containers kept in a direct buffer?
+
+    /**
+     * Create an empty bitmap
+     */
+    LikerBitmap() {
+        this(INITIAL_ARRAY_CAPACITY);
+    }
+
+    private LikerBitmap(int capacity) {
+        this.keys = new char[capacity];
+        this.containers = new Container[capacity];
+    }
+
+    /**
+     * Create a bitmap of a part of an array
+     * @param values Array of IDs
+     * @param from Index of the first ID (inclusive)
+     * @param to Index of the last ID (exclusive)
+     * @return Created bitmap
+     */
+    static LikerBitmap of(int[] values, int from, int to) {
+        int[] sorted = Arrays.copyOfRange(values, from, to);
+        Arrays.sort(sorted); //Sorted IDs are appended to the containers without shifting
+        LikerBitmap bitmap = new LikerBitmap();
+        for (int value : sorted)
+            bitmap.add(value);
+        return bitmap;
+    }
+
+    /**
+     * Add an ID
+     * @param value User ID
+     * @return True if the ID wasn't present before (False otherwise)
+     */
+    boolean add(int value) {
+        char high = (char) (value >>> 16);
+        int index = size - 1;
+        if (size == 0 || keys[index] != high) {
+            index = search(high);
+            if (index < 0) {
+                index = -index - 1;
+                insert(index, high, new ArrayContainer(CharBuffer.allocate(INITIAL_ARRAY_CAPACITY), 0));
+            }
+        }
+        Container container = containers[index];
+        int before = container.cardinality();
+        containers[index] = container.add((char) value);
+        if (containers[index].cardinality() == before)
+            return false;
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * Check whether an ID is present
+     * @param value User ID
+     * @return True if the ID is present (False otherwise)
+     */
+    boolean contains(int value) {
+        int index = search((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    /**
+     * Get the number of IDs
+     * @return Number of IDs
+     */
+    int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Pass every ID to an action, in the ascending order of the unsigned values
+     * @param action Receives the IDs
+     */
+    void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++)
+            containers[i].forEach(keys[i], action);
+    }
+
+    /**
+     * Get the IDs present in this or another bitmap
+     * @param other Another bitmap
+     * @return New bitmap on the heap
+     */
+    LikerBitmap or(LikerBitmap other) {
+        LikerBitmap result = new LikerBitmap(Math.max(INITIAL_ARRAY_CAPACITY, size + other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            int order = i == size ? 1 : j == other.size ? -1 : Character.compare(keys[i], other.keys[j]);
+            if (order < 0) {
+                result.append(keys[i], or(containers[i], null));
+                i++;
+            } else if (order > 0) {
+                result.append(other.keys[j], or(other.containers[j], null));
+                j++;
+            } else {
+                result.append(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the IDs present in both this and another bitmap
+     * @param other Another bitmap
+     * @return New bitmap on the heap
+     */
+    LikerBitmap and(LikerBitmap other) {
+        LikerBitmap result = new LikerBitmap(Math.max(INITIAL_ARRAY_CAPACITY, Math.min(size, other.size)));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            int order = Character.compare(keys[i], other.keys[j]);
+            if (order < 0) {
+                i++;
+            } else if (order > 0) {
+                j++;
+            } else {
+                result.append(keys[i], and(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the IDs present in this bitmap but not in another one
+     * @param other Another bitmap
+     * @return New bitmap on the heap
+     */
+    LikerBitmap andNot(LikerBitmap other) {
+        LikerBitmap result = new LikerBitmap(Math.max(INITIAL_ARRAY_CAPACITY, size));
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i])
+                j++;
+            boolean shared = j < other.size && other.keys[j] == keys[i];
+            result.append(keys[i], shared ? andNot(containers[i], other.containers[j]) : or(containers[i], null));
+        }
+        return result;
+    }
+
+    /**
+     * Copy the bitmap to a single direct buffer outside of the Java heap.
+     * The copy can be modified, but the changed array containers move back to the heap.
+     * @return Off-heap copy
+     */
+    LikerBitmap toOffHeap() {
+        int bytes = 0;
+        for (int i = 0; i < size; i++)
+            bytes += containers[i].payloadBytes();
+        ByteBuffer memory = ByteBuffer.allocateDirect(Math.max(1, bytes)).order(ByteOrder.nativeOrder());
+        LikerBitmap copy = new LikerBitmap(Math.max(INITIAL_ARRAY_CAPACITY, size));
+        copy.size = size;
+        copy.cardinality = cardinality;
+        copy.offHeap = true;
+        System.arraycopy(keys, 0, copy.keys, 0, size);
+        //Bitmaps go first, so that their words stay aligned
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < size; i++) {
+                if (containers[i] instanceof BitmapContainer != (pass == 0))
+                    continue;
+                int length = containers[i].payloadBytes();
+                memory.limit(memory.position() + length);
+                copy.containers[i] = containers[i].copyTo(memory.slice().order(ByteOrder.nativeOrder()));
+                memory.position(memory.limit());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Check whether the bitmap is kept outside of the Java heap
+     * @return True if the bitmap is off-heap (False otherwise)
+     */
+    boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * Get the approximate number of bytes the bitmap takes
+     * @return Number of bytes
+     */
+    long sizeInBytes() {
+        long bytes = (long) keys.length * (Character.BYTES + Integer.BYTES);
+        for (int i = 0; i < size; i++) {
+            Container container = containers[i];
+            bytes += CONTAINER_OVERHEAD + (container instanceof ArrayContainer
+                    ? ((ArrayContainer) container).values.capacity() * Character.BYTES : container.payloadBytes());
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the bitmap: the number of containers, then the key, the cardinality and the values of every container
+     * @param out Destination
+     * @throws IOException Exception that is thrown if the bitmap couldn't be written
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeChar(keys[i]);
+            out.writeInt(containers[i].cardinality());
+            containers[i].write(out);
+        }
+    }
+
+    /**
+     * Read a bitmap written by write()
+     * @param in Source
+     * @return Read bitmap on the heap
+     * @throws IOException Exception that is thrown if the bitmap couldn't be read
+     */
+    static LikerBitmap read(DataInput in) throws IOException {
+        int containers = in.readInt();
+        if (containers < 0 || containers > 1 << 16)
+            throw new IOException(ERROR_FORMAT);
+        LikerBitmap bitmap = new LikerBitmap(Math.max(INITIAL_ARRAY_CAPACITY, containers));
+        int previous = -1;
+        for (int i = 0; i < containers; i++) {
+            char key = in.readChar();
+            int cardinality = in.readInt();
+            if (key <= previous || cardinality <= 0 || cardinality > 1 << 16)
+                throw new IOException(ERROR_FORMAT);
+            previous = key;
+            if (cardinality <= ARRAY_MAX_SIZE) {
+                char[] values = new char[cardinality];
+                for (int j = 0; j < cardinality; j++)
+                    values[j] = in.readChar();
+                bitmap.append(key, new ArrayContainer(CharBuffer.wrap(values), cardinality));
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                for (int j = 0; j < BITMAP_WORDS; j++)
+                    words[j] = in.readLong();
+                bitmap.append(key, new BitmapContainer(LongBuffer.wrap(words), cardinality));
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get the union of two containers
+     * @param x A container
+     * @param y Another container (null to copy the first one)
+     * @return New container on the heap
+     */
+    private static Container or(Container x, Container y) {
+        if (x instanceof ArrayContainer && (y == null
+                || y instanceof ArrayContainer && x.cardinality() + y.cardinality() <= ARRAY_MAX_SIZE))
+            return ((ArrayContainer) x).merge(y == null ? new ArrayContainer(CharBuffer.allocate(0), 0) : (ArrayContainer) y);
+        long[] words = new long[BITMAP_WORDS];
+        x.orInto(words);
+        if (y != null)
+            y.orInto(words);
+        return fromWords(words);
+    }
+
+    /**
+     * Get the intersection of two containers
+     * @param x A container
+     * @param y Another container
+     * @return New container on the heap (null if it is empty)
+     */
+    private static Container and(Container x, Container y) {
+        if (x instanceof ArrayContainer)
+            return ((ArrayContainer) x).filter(y, true);
+        if (y instanceof ArrayContainer)
+            return ((ArrayContainer) y).filter(x, true);
+        long[] words = new long[BITMAP_WORDS];
+        for (int i = 0; i < BITMAP_WORDS; i++)
+            words[i] = ((BitmapContainer) x).word(i) & ((BitmapContainer) y).word(i);
+        return fromWords(words);
+    }
+
+    /**
+     * Get the values of a container that aren't present in another one
+     * @param x A container
+     * @param y Another container
+     * @return New container on the heap (null if it is empty)
+     */
+    private static Container andNot(Container x, Container y) {
+        if (x instanceof ArrayContainer)
+            return ((ArrayContainer) x).filter(y, false);
+        long[] words = new long[BITMAP_WORDS];
+        x.orInto(words);
+        if (y instanceof ArrayContainer) {
+            y.forEach(0, low -> words[low >>> 6] &= ~(1L << low));
+        } else {
+            for (int i = 0; i < BITMAP_WORDS; i++)
+                words[i] &= ~((BitmapContainer) y).word(i);
+        }
+        return fromWords(words);
+    }
+
+    /**
+     * Create a container of the bits of a bitmap, choosing the smaller representation
+     * @param words Bitmap of 65536 bits
+     * @return New container (null if no bit is set)
+     */
+    private static Container fromWords(long[] words) {
+        int cardinality = 0;
+        for (long word : words)
+            cardinality += Long.bitCount(word);
+        if (cardinality == 0)
+            return null;
+        if (cardinality > ARRAY_MAX_SIZE)
+            return new BitmapContainer(LongBuffer.wrap(words), cardinality);
+        char[] values = new char[cardinality];
+        int index = 0;
+        for (int i = 0; i < BITMAP_WORDS; i++) {
+            long word = words[i];
+            while (word != 0) {
+                values[index++] = (char) (i << 6 | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return new ArrayContainer(CharBuffer.wrap(values), cardinality);
+    }
+
+    /**
+     * Find a container with the binary search
+     * @param high High 16 bits
+     * @return Index of the container (-insertionPoint - 1 if it isn't present)
+     */
+    private int search(char high) {
+        return Arrays.binarySearch(keys, 0, size, high);
+    }
+
+    /**
+     * Add a container after the last one
+     * @param high High 16 bits, greater than the keys of the present containers
+     * @param container Container (ignored if null)
+     */
+    private void append(char high, Container container) {
+        if (container != null) {
+            insert(size, high, container);
+            cardinality += container.cardinality();
+        }
+    }
+
+    /**
+     * Insert a container
+     * @param index Position of the container
+     * @param high High 16 bits
+     * @param container Container
+     */
+    private void insert(int index, char high, Container container) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+            containers = Arrays.copyOf(containers, size << 1);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = high;
+        containers[index] = container;
+        size++;
+    }
+}
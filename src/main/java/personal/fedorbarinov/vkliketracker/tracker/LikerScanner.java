@@ -0,0 +1,231 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.objects.likes.responses.GetListResponse;
+import com.vk.api.sdk.queries.likes.LikesGetListFilter;
+import com.vk.api.sdk.queries.likes.LikesType;
+import personal.fedorbarinov.vkliketracker.api.AsyncApiClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Downloads the whole list of users who liked a post with likes.getList
+ */
+class LikerScanner {
+    static final int PAGE_SIZE = 1000; //The largest page likes.getList returns
+    private static final int CHECKPOINT_PAGES = 20; //Pages downloaded between two checkpoints of a scan
+
+    /**
+     * Scan of a post that saves its progress, started over or resumed from a checkpoint
+     */
+    private class CheckpointedScan {
+        private final int ownerId;
+        private final int postId;
+        private final int likes; //Number of likes as of the first page
+        private final long startedAt; //Unix time in milliseconds the scan (or the scan it resumes) has been started at
+        private final int start; //Offset of the first page downloaded by the scan
+        private final LikerBitmap likers; //Likers of the downloaded prefix of the pages
+        private final GetListResponse[] pages; //Pages downloaded after a page that hasn't come yet
+        private int done; //Number of pages of the prefix
+        private int unsaved; //Number of pages of the prefix that aren't in the last checkpoint
+        private int[] unsavedLikers; //Likers of the pages that aren't in the last checkpoint
+        private int unsavedCount; //Number of the likers that are used
+
+        CheckpointedScan(int ownerId, int postId, GetListResponse firstPage) {
+            this.ownerId = ownerId;
+            this.postId = postId;
+            this.likes = firstPage.getCount();
+            ScanCheckpoints.Checkpoint checkpoint = checkpoints.load(ownerId, postId, likes);
+            if (checkpoint != null) {
+                this.startedAt = checkpoint.startedAt;
+                this.likers = checkpoint.likers;
+                //Likes and unlikes since the checkpoint shift the likers, so the pages overlap by the change of their number
+                this.start = Math.max(PAGE_SIZE, checkpoint.offset - Math.abs(likes - checkpoint.likes));
+            } else {
+                this.startedAt = System.currentTimeMillis();
+                this.likers = new LikerBitmap();
+                this.start = PAGE_SIZE;
+            }
+            this.pages = new GetListResponse[Math.max(0, (likes - start + PAGE_SIZE - 1) / PAGE_SIZE)];
+            this.unsavedLikers = new int[CHECKPOINT_PAGES * PAGE_SIZE];
+            addPage(firstPage); //Saved with the next checkpoint, the likes to come push its likers out of the first page
+        }
+
+        /**
+         * Download the pages concurrently, saving the progress every few pages and once the scan fails
+         * @return Future bitmap of IDs of all the likers
+         */
+        CompletableFuture<LikerBitmap> run() {
+            List<CompletableFuture<Void>> futures = new ArrayList<>(pages.length);
+            for (int page = 0; page < pages.length; page++) {
+                int index = page;
+                futures.add(fetchPage(ownerId, postId, start + page * PAGE_SIZE).thenAccept(response -> onPage(index, response)));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((ignored, e) -> {
+                if (e != null) {
+                    synchronized (this) {
+                        if (unsaved > 0)
+                            save();
+                    }
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }
+                checkpoints.remove(ownerId, postId);
+                return likers;
+            });
+        }
+
+        /**
+         * Add a page to the prefix, or keep it until the pages before it have come
+         * @param index Index of the page
+         * @param page Downloaded page
+         */
+        private synchronized void onPage(int index, GetListResponse page) {
+            pages[index] = page;
+            while (done < pages.length && pages[done] != null) {
+                addPage(pages[done]);
+                pages[done++] = null;
+                unsaved++;
+            }
+            if (unsaved >= CHECKPOINT_PAGES)
+                save();
+        }
+
+        /**
+         * Add the likers of a page to the prefix and to the next checkpoint
+         * @param page Downloaded page
+         */
+        private void addPage(GetListResponse page) {
+            for (Integer liker : page.getItems()) {
+                likers.add(liker);
+                if (unsavedCount == unsavedLikers.length)
+                    unsavedLikers = Arrays.copyOf(unsavedLikers, unsavedCount << 1);
+                unsavedLikers[unsavedCount++] = liker;
+            }
+        }
+
+        /**
+         * Save the pages of the prefix added since the last checkpoint. Only their likers are copied,
+         * the file is written on the thread of the checkpoints
+         */
+        private void save() {
+            checkpoints.save(ownerId, postId, startedAt, likes, start + done * PAGE_SIZE, Arrays.copyOf(unsavedLikers, unsavedCount));
+            unsaved = 0;
+            unsavedCount = 0;
+        }
+    }
+
+    private AsyncApiClient api; //Sends the requests without blocking
+    private UserActor user; //Current authorized user
+    private ScanCheckpoints checkpoints; //Progress of the long scans (null if it isn't saved)
+
+    LikerScanner(AsyncApiClient api, UserActor user) {
+        this(api, user, null);
+    }
+
+    LikerScanner(AsyncApiClient api, UserActor user, ScanCheckpoints checkpoints) {
+        this.api = api;
+        this.user = user;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Get the number of pages needed to download all the likers
+     * @param likes Number of likes of a post
+     * @return Number of pages
+     */
+    static int pages(int likes) {
+        return (likes + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Download a page of likers
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param offset Offset of the first liker in the page
+     * @return Future page of likers with the total number of likes (completed with ApiException or ClientException)
+     */
+    CompletableFuture<GetListResponse> fetchPage(int ownerId, int postId, int offset) {
+        return api.call(api.getVkClient().likes().getList(user, LikesType.POST)
+                .ownerId(ownerId).itemId(postId)
+                .filter(LikesGetListFilter.LIKES)
+                .offset(offset).count(PAGE_SIZE), GetListResponse.class);
+    }
+
+    /**
+     * Get the number of likes of a post, with a page of a single liker
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Future number of likes (completed with ApiException or ClientException)
+     */
+    CompletableFuture<Integer> fetchCount(int ownerId, int postId) {
+        return api.call(api.getVkClient().likes().getList(user, LikesType.POST)
+                .ownerId(ownerId).itemId(postId)
+                .filter(LikesGetListFilter.LIKES)
+                .count(1), GetListResponse.class).thenApply(GetListResponse::getCount);
+    }
+
+    /**
+     * Download the rest of the likers concurrently, page by page.
+     * The progress of a long scan is saved if there are checkpoints, and a scan that has been cut short resumes from it
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param firstPage The first page which is already downloaded
+     * @return Future bitmap of IDs of all the likers
+     */
+    CompletableFuture<LikerBitmap> scan(int ownerId, int postId, GetListResponse firstPage) {
+        if (checkpoints != null && pages(firstPage.getCount()) > CHECKPOINT_PAGES)
+            return new CheckpointedScan(ownerId, postId, firstPage).run();
+        return scanList(ownerId, postId, firstPage).thenApply(list -> LikerBitmap.of(list, 0, list.length));
+    }
+
+    /**
+     * Download the rest of the likers concurrently, keeping the order of likes.getList
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param firstPage The first page which is already downloaded
+     * @return Future list of IDs of all the likers
+     */
+    CompletableFuture<int[]> scanList(int ownerId, int postId, GetListResponse firstPage) {
+        int pages = pages(firstPage.getCount());
+        List<CompletableFuture<GetListResponse>> futures = new ArrayList<>(Math.max(0, pages - 1));
+        for (int page = 1; page < pages; page++)
+            futures.add(fetchPage(ownerId, postId, page * PAGE_SIZE));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            int size = firstPage.getItems().size();
+            for (CompletableFuture<GetListResponse> future : futures)
+                size += future.join().getItems().size();
+            int[] likers = new int[size];
+            int index = copy(firstPage, likers, 0);
+            for (CompletableFuture<GetListResponse> future : futures)
+                index = copy(future.join(), likers, index);
+            return likers;
+        });
+    }
+
+    /**
+     * Copy likers of a page to an array
+     * @param page Page of likers
+     * @param likers Destination array
+     * @param index Position the first liker is copied to
+     * @return Position after the last copied liker
+     */
+    static int copy(GetListResponse page, int[] likers, int index) {
+        for (Integer liker : page.getItems())
+            likers[index++] = liker;
+        return index;
+    }
+
+    /**
+     * Add likers of a page to a bitmap
+     * @param likers Bitmap of likers
+     * @param page Page of likers
+     */
+    static void addAll(LikerBitmap likers, GetListResponse page) {
+        for (Integer liker : page.getItems())
+            likers.add(liker);
+    }
+}
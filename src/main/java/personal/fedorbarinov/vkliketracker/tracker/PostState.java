@@ -0,0 +1,147 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Last known likers of a post in the order likes.getList returns them (the newest first)
+ */
+class PostState {
+    static final int MISSING = -1; //Position of a user who isn't a liker
+    private static final int MAGIC = 0x564B4C32; //"VKL2", marks a state file
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String ERROR_FORMAT = "Bad post state file format";
+
+    private final int[] likers;
+    private final LikerBitmap likerSet; //The same likers in a compressed bitmap
+
+    /**
+     * Create a state
+     * @param likers Distinct likers, the newest first
+     * @param likerSet Bitmap of the same likers
+     */
+    PostState(int[] likers, LikerBitmap likerSet) {
+        this.likers = likers;
+        this.likerSet = likerSet;
+    }
+
+    /**
+     * Create a state, building the bitmap of the likers
+     * @param likers Distinct likers, the newest first
+     * @param offHeap Should the bitmap be kept outside of the Java heap?
+     */
+    PostState(int[] likers, boolean offHeap) {
+        this(likers, place(LikerBitmap.of(likers, 0, likers.length), offHeap));
+    }
+
+    /**
+     * Get the number of likers
+     * @return Number of likers
+     */
+    int size() {
+        return likers.length;
+    }
+
+    /**
+     * Get a liker at a position
+     * @param position Position in the list
+     * @return User ID
+     */
+    int get(int position) {
+        return likers[position];
+    }
+
+    /**
+     * Get the position of a liker
+     * @param userId User ID
+     * @return Position in the list (MISSING if the user isn't a liker)
+     */
+    int positionOf(int userId) {
+        if (!likerSet.contains(userId))
+            return MISSING;
+        //New likes gather at the beginning of the list, so a recent liker is found quickly
+        for (int i = 0; i < likers.length; i++)
+            if (likers[i] == userId)
+                return i;
+        return MISSING;
+    }
+
+    /**
+     * Check whether the user is a liker
+     * @param userId User ID
+     * @return True if the user has liked the post (False otherwise)
+     */
+    boolean contains(int userId) {
+        return likerSet.contains(userId);
+    }
+
+    /**
+     * Get the likers as a bitmap
+     * @return Bitmap of the likers
+     */
+    LikerBitmap getLikerSet() {
+        return likerSet;
+    }
+
+    /**
+     * Get the approximate number of bytes the state takes
+     * @return Number of bytes
+     */
+    long sizeInBytes() {
+        return (long) likers.length * Integer.BYTES + likerSet.sizeInBytes();
+    }
+
+    /**
+     * Move a bitmap off the heap if needed
+     * @param bitmap Bitmap on the heap
+     * @param offHeap Should the bitmap be kept outside of the Java heap?
+     * @return The bitmap or its off-heap copy
+     */
+    static LikerBitmap place(LikerBitmap bitmap, boolean offHeap) {
+        return offHeap ? bitmap.toOffHeap() : bitmap;
+    }
+
+    /**
+     * Read a state from a file
+     * @param path Path to the file
+     * @param offHeap Should the bitmap be kept outside of the Java heap?
+     * @return Read state
+     * @throws IOException Exception that is thrown if the file couldn't be read
+     */
+    static PostState read(Path path, boolean offHeap) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException(ERROR_FORMAT);
+            int[] likers = new int[in.readInt()];
+            for (int i = 0; i < likers.length; i++)
+                likers[i] = in.readInt();
+            LikerBitmap likerSet = LikerBitmap.read(in);
+            if (likerSet.cardinality() != likers.length)
+                throw new IOException(ERROR_FORMAT);
+            return new PostState(likers, place(likerSet, offHeap));
+        }
+    }
+
+    /**
+     * Write the state to a file: the likers in their order, then their bitmap. The file is replaced atomically
+     * @param path Path to the file
+     * @throws IOException Exception that is thrown if the file couldn't be written
+     */
+    void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(likers.length);
+            for (int liker : likers)
+                out.writeInt(liker);
+            likerSet.write(out); //Saves sorting the likers again when the file is read
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
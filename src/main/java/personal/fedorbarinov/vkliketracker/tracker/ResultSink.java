@@ -0,0 +1,28 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of the checks in a machine-readable form.
+ * Results may be buffered until the sink is flushed or closed.
+ */
+public interface ResultSink extends AutoCloseable {
+    /**
+     * Handle a result, called concurrently by the worker threads
+     * @param result Result of a check
+     */
+    void onResult(TrackingResult result);
+
+    /**
+     * Write the buffered results
+     * @throws IOException Exception that is thrown if the results couldn't be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Write the buffered results and release the output
+     * @throws IOException Exception that is thrown if the results couldn't be written
+     */
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,276 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable progress of the likes.getList scans, a file per post.
+ * A checkpoint holds the offset the pages have been downloaded up to, the likers found before it and the time
+ * the scan has been started at, so a scan cut short by a crash or an error resumes where it has stopped.
+ * The file holds the time the scan has been started at, followed by a record per save with the offset and
+ * the likers found since the previous save, so a save costs as much as the pages it adds, however long the scan is.
+ * The records are appended on a thread of their own. A record cut short by a crash is ignored, and cut off
+ * the file when the scan resumes, so that the records appended after it are read back as they have been written.
+ */
+class ScanCheckpoints implements AutoCloseable {
+    private static final int MAGIC = 0x564B4353; //"VKCS", marks a checkpoint file
+    private static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES; //Magic, owner, post and start time
+    private static final int RECORD_HEADER_SIZE = 3 * Integer.BYTES; //Likes, offset and number of likers
+    private static final String FILE_FORMAT = "wall%d_%d.scan";
+    private static final String THREAD_NAME = "ScanCheckpoints";
+    private static final long CLOSE_TIMEOUT = 10; //Time in seconds the pending writes are waited for on close
+    private static final String ERROR_FORMAT = "Bad scan checkpoint file format";
+    private static final String LOG_MSG_RESUMED = "Scan of wall%d_%d resumed at offset %d (%d likers found %d s ago)";
+    private static final String LOG_MSG_STALE = "Checkpoint of wall%d_%d is stale (%d s old, %d likes then, %d now), the scan starts over";
+    private static final String LOG_MSG_ERROR = "Scan checkpoint %s: %s";
+
+    /**
+     * Progress of a scan
+     */
+    static class Checkpoint {
+        final long startedAt; //Unix time in milliseconds the scan has been started at
+        final int likes; //Number of likes of the post as of the last page
+        final int offset; //Every page before it has been downloaded
+        final LikerBitmap likers; //Likers found before the offset
+        final long length; //Size in bytes of the file up to the end of the last whole record
+
+        Checkpoint(long startedAt, int likes, int offset, LikerBitmap likers, long length) {
+            this.startedAt = startedAt;
+            this.likes = likes;
+            this.offset = offset;
+            this.likers = likers;
+            this.length = length;
+        }
+    }
+
+    private final Path directory;
+    private final long maxAge; //Time in milliseconds after which a checkpoint isn't resumed
+    private final ExecutorService writer; //Appends the records in the order they are saved in
+    private final Set<Path> broken; //Files a record couldn't be appended to, used by the writer thread only
+
+    /**
+     * Create a store of checkpoints
+     * @param directory Directory of the checkpoint files, created if necessary
+     * @param maxAge Time in milliseconds after which a checkpoint isn't resumed
+     * @throws IOException Exception that is thrown if the directory couldn't be created
+     */
+    ScanCheckpoints(Path directory, long maxAge) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxAge = maxAge;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.broken = new HashSet<>();
+    }
+
+    /**
+     * Load the checkpoint of a post, unless it is stale: too old, or the number of likes has changed
+     * by more than a page, so that the pages have shifted past the offset. A stale checkpoint is removed,
+     * a record cut short at the end of a resumed one is cut off before the next record is appended
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param likes Current number of likes of the post
+     * @return Checkpoint (null if there is none or it is stale)
+     */
+    Checkpoint load(int ownerId, int postId, int likes) {
+        Path file = file(ownerId, postId);
+        Checkpoint checkpoint;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != ownerId || in.readInt() != postId)
+                throw new IOException(ERROR_FORMAT);
+            checkpoint = readRecords(in, in.readLong());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_ERROR, file.getFileName(), e.getLocalizedMessage()));
+            remove(ownerId, postId);
+            return null;
+        }
+        long age = System.currentTimeMillis() - checkpoint.startedAt;
+        if (age > maxAge || Math.abs(likes - checkpoint.likes) > LikerScanner.PAGE_SIZE) {
+            Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_STALE, ownerId, postId,
+                    TimeUnit.MILLISECONDS.toSeconds(age), checkpoint.likes, likes));
+            remove(ownerId, postId);
+            return null;
+        }
+        long length = checkpoint.length;
+        writer.execute(() -> truncate(file, length));
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_RESUMED, ownerId, postId,
+                checkpoint.offset, checkpoint.likers.cardinality(), TimeUnit.MILLISECONDS.toSeconds(age)));
+        return checkpoint;
+    }
+
+    /**
+     * Save the progress of the scan of a post since its previous save, the file is written later on the writer thread
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param startedAt Unix time in milliseconds the scan has been started at, written if the file is new
+     * @param likes Number of likes of the post as of the last page
+     * @param offset Every page before it has been downloaded
+     * @param likers Likers found since the previous save, the array is owned by the checkpoints from now on
+     */
+    void save(int ownerId, int postId, long startedAt, int likes, int offset, int[] likers) {
+        Path file = file(ownerId, postId);
+        writer.execute(() -> append(file, ownerId, postId, startedAt, likes, offset, likers));
+    }
+
+    /**
+     * Remove the checkpoint of a post after its scan has finished, once its pending writes are done
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     */
+    void remove(int ownerId, int postId) {
+        Path file = file(ownerId, postId);
+        writer.execute(() -> {
+            broken.remove(file);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_ERROR, file.getFileName(), e.getLocalizedMessage()));
+            }
+        });
+    }
+
+    /**
+     * Write the pending checkpoints and stop the writer thread
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(CLOSE_TIMEOUT, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Read the records of a checkpoint file up to the first one that is cut short
+     * @param in Stream positioned after the header
+     * @param startedAt Unix time in milliseconds the scan has been started at
+     * @return Checkpoint of the last whole record
+     * @throws IOException Exception that is thrown if the file couldn't be read or has no whole record
+     */
+    private static Checkpoint readRecords(DataInputStream in, long startedAt) throws IOException {
+        LikerBitmap likers = new LikerBitmap();
+        int likes = -1;
+        int offset = -1;
+        long length = HEADER_SIZE;
+        while (true) {
+            int recordLikes;
+            int recordOffset;
+            int[] recordLikers;
+            try {
+                recordLikes = in.readInt();
+                recordOffset = in.readInt();
+                int size = in.readInt();
+                if (size < 0)
+                    throw new IOException(ERROR_FORMAT);
+                recordLikers = new int[size];
+                for (int i = 0; i < size; i++)
+                    recordLikers[i] = in.readInt();
+            } catch (EOFException e) { //The end of the file, or a record a crash has cut short
+                break;
+            }
+            for (int liker : recordLikers)
+                likers.add(liker);
+            likes = recordLikes;
+            offset = recordOffset;
+            length += RECORD_HEADER_SIZE + (long) recordLikers.length * Integer.BYTES;
+        }
+        if (offset < 0)
+            throw new IOException(ERROR_FORMAT);
+        return new Checkpoint(startedAt, likes, offset, likers, length);
+    }
+
+    /**
+     * Append a record to a checkpoint file, creating the file with its header if there is none.
+     * Once a record couldn't be appended, the file is removed and the scan isn't saved any more:
+     * the later records would lack the likers of the lost one
+     * @param file Checkpoint file
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @param startedAt Unix time in milliseconds the scan has been started at
+     * @param likes Number of likes of the post as of the last page
+     * @param offset Every page before it has been downloaded
+     * @param likers Likers found since the previous record
+     */
+    private void append(Path file, int ownerId, int postId, long startedAt, int likes, int offset, int[] likers) {
+        if (broken.contains(file))
+            return;
+        try {
+            boolean created = Files.notExists(file);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)))) {
+                if (created) {
+                    out.writeInt(MAGIC);
+                    out.writeInt(ownerId);
+                    out.writeInt(postId);
+                    out.writeLong(startedAt);
+                }
+                out.writeInt(likes);
+                out.writeInt(offset);
+                out.writeInt(likers.length);
+                for (int liker : likers)
+                    out.writeInt(liker);
+            }
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_ERROR, file.getFileName(), e.getLocalizedMessage()));
+            broken.add(file);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) { //A file cut short is read up to its last whole record
+            }
+        }
+    }
+
+    /**
+     * Cut off a record a crash has cut short at the end of a checkpoint file, if there is one
+     * @param file Checkpoint file
+     * @param length Size in bytes of the file up to the end of the last whole record
+     */
+    private void truncate(Path file, long length) {
+        if (broken.contains(file))
+            return;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            if (channel.size() > length)
+                channel.truncate(length);
+        } catch (NoSuchFileException ignored) { //Created anew by the next record
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_ERROR, file.getFileName(), e.getLocalizedMessage()));
+            broken.add(file);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException ignored) { //Nothing is appended to it any more, so it is still read up to its last whole record
+            }
+        }
+    }
+
+    /**
+     * Get the checkpoint file of a post
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Path to the file
+     */
+    private Path file(int ownerId, int postId) {
+        return directory.resolve(String.format(FILE_FORMAT, ownerId, postId));
+    }
+}
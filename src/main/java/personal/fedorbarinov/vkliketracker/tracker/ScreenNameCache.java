@@ -0,0 +1,196 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of screen name resolutions with LRU eviction and a time to live.
+ * Names that aren't users (communities, applications, unknown names) are cached too, with their own time to live.
+ * The cache is a text file with a line per name: the name, the user ID (NOT_A_USER for a negative entry)
+ * and the expiration time in milliseconds since the epoch.
+ */
+class ScreenNameCache {
+    static final int NOT_A_USER = 0; //User IDs are positive
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String SEPARATOR = " ";
+    private static final String FORMAT_LINE = "%s %d %d";
+    private static final String FORMAT_STATISTICS = "Screen names: %d cached, %d hits (%d negative), %d misses, %d expired, %d evicted";
+    private static final String LOG_MSG_READ = "Screen name cache couldn't be read: %s";
+    private static final String LOG_MSG_WRITE = "Screen name cache couldn't be written: %s";
+    private static final String LOG_MSG_BAD_LINE = "Screen name cache bad line: %s";
+
+    /**
+     * Cached resolution
+     */
+    private static class CachedName {
+        final int userId; //User ID (NOT_A_USER for a negative entry)
+        final long expiresAt; //Expiration time in milliseconds since the epoch
+
+        CachedName(int userId, long expiresAt) {
+            this.userId = userId;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final Path path; //Path to the cache file
+    private final long ttl; //Time in milliseconds a user entry is valid
+    private final long negativeTtl; //Time in milliseconds a negative entry is valid
+    private final LinkedHashMap<String, CachedName> entries; //Entries in the order of access
+    private final AtomicLong hits;
+    private final AtomicLong negativeHits;
+    private final AtomicLong misses;
+    private final AtomicLong expired;
+    private final AtomicLong evicted;
+
+    /**
+     * Create a cache, reading its file if it exists
+     * @param path Path to the cache file
+     * @param capacity Maximal number of entries
+     * @param ttl Time in milliseconds a user entry is valid
+     * @param negativeTtl Time in milliseconds a negative entry is valid
+     */
+    ScreenNameCache(Path path, int capacity, long ttl, long negativeTtl) {
+        this.path = path;
+        this.ttl = ttl;
+        this.negativeTtl = negativeTtl;
+        this.entries = new LinkedHashMap<String, CachedName>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedName> eldest) {
+                if (size() <= capacity)
+                    return false;
+                evicted.incrementAndGet();
+                return true;
+            }
+        };
+        this.hits = new AtomicLong();
+        this.negativeHits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.expired = new AtomicLong();
+        this.evicted = new AtomicLong();
+        if (Files.exists(path))
+            read();
+    }
+
+    /**
+     * Look up a screen name
+     * @param screenName Screen name
+     * @return User ID, NOT_A_USER if the name isn't a user, or null if the name isn't cached
+     */
+    synchronized Integer get(String screenName) {
+        CachedName entry = entries.get(screenName);
+        if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(screenName);
+            expired.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        if (entry.userId == NOT_A_USER)
+            negativeHits.incrementAndGet();
+        return entry.userId;
+    }
+
+    /**
+     * Cache a resolved user
+     * @param screenName Screen name
+     * @param userId User ID
+     */
+    synchronized void putUser(String screenName, int userId) {
+        entries.put(screenName, new CachedName(userId, System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Cache a name that isn't a user
+     * @param screenName Screen name
+     */
+    synchronized void putNotUser(String screenName) {
+        entries.put(screenName, new CachedName(NOT_A_USER, System.currentTimeMillis() + negativeTtl));
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Write the cache statistics to the log
+     */
+    void report() {
+        int size;
+        synchronized (this) {
+            size = entries.size();
+        }
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(FORMAT_STATISTICS,
+                size, getHits(), negativeHits.get(), getMisses(), expired.get(), evicted.get()));
+    }
+
+    /**
+     * Write the unexpired entries to the cache file, the least recently used first.
+     * The file is replaced atomically.
+     */
+    synchronized void write() {
+        long now = System.currentTimeMillis();
+        Path temp = path.resolveSibling(path.getFileName() + TEMP_SUFFIX);
+        try {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(temp))) {
+                for (Map.Entry<String, CachedName> entry : entries.entrySet())
+                    if (entry.getValue().expiresAt > now)
+                        out.println(String.format(FORMAT_LINE,
+                                entry.getKey(), entry.getValue().userId, entry.getValue().expiresAt));
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_WRITE, e.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Read the unexpired entries from the cache file, keeping their order of use
+     */
+    private void read() {
+        long now = System.currentTimeMillis();
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(SEPARATOR);
+                CachedName entry = parts.length == 3 ? parseEntry(parts[1], parts[2]) : null;
+                if (entry == null)
+                    Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_BAD_LINE, line));
+                else if (entry.expiresAt > now)
+                    entries.put(parts[0], entry);
+            }
+        } catch (IOException e) {
+            Logger.getInstance().log(Logger.LogKind.WARNING, String.format(LOG_MSG_READ, e.getLocalizedMessage()));
+        }
+        evicted.set(0); //Dropping the tail of an oversized file isn't an eviction
+    }
+
+    /**
+     * Parse an entry of the cache file
+     * @param userId User ID
+     * @param expiresAt Expiration time
+     * @return Parsed entry (null in case of bad format)
+     */
+    private static CachedName parseEntry(String userId, String expiresAt) {
+        try {
+            return new CachedName(Integer.parseInt(userId), Long.parseLong(expiresAt));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+/**
+ * Processed tracking task: whether a target has liked a wall post
+ */
+public class Task {
+    private static final String FORMAT_TASK = "%s -> wall%d_%d";
+
+    private final String target; //Target as it was written in the task
+    private final int targetId; //Who liked
+    private final int ownerId; //Whose post was liked
+    private final int postId; //Which post was liked
+
+    Task(String target, int targetId, int ownerId, int postId) {
+        this.target = target;
+        this.targetId = targetId;
+        this.ownerId = ownerId;
+        this.postId = postId;
+    }
+
+    public String getTarget() { return target; }
+
+    public int getTargetId() { return targetId; }
+
+    public int getOwnerId() { return ownerId; }
+
+    public int getPostId() { return postId; }
+
+    /**
+     * Build a key identifying a post
+     * @param ownerId Owner of the post
+     * @param postId ID of the post
+     * @return Owner ID and post ID packed into a long
+     */
+    static long postKey(int ownerId, int postId) {
+        return ((long) ownerId << 32) | (postId & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(FORMAT_TASK, target, ownerId, postId);
+    }
+}
@@ -0,0 +1,48 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+/**
+ * Result of a single check of a task
+ */
+public class TrackingResult {
+    /**
+     * Status of a check
+     */
+    public enum Status {
+        LIKED,
+        NOT_LIKED,
+        FAILED
+    }
+
+    private final String target; //Target as it was written in the task
+    private final int targetId; //Who liked (0 if the target hasn't been resolved)
+    private final int ownerId; //Whose post was liked (0 if the link hasn't been parsed)
+    private final int postId; //Which post was liked (0 if the link hasn't been parsed)
+    private final Status status;
+    private final long timestamp; //Time the check has finished at (milliseconds since the epoch)
+    private final long latency; //Check latency in nanoseconds
+
+    public TrackingResult(String target, int targetId, int ownerId, int postId, Status status,
+                          long timestamp, long latency) {
+        this.target = target;
+        this.targetId = targetId;
+        this.ownerId = ownerId;
+        this.postId = postId;
+        this.status = status;
+        this.timestamp = timestamp;
+        this.latency = latency;
+    }
+
+    public String getTarget() { return target; }
+
+    public int getTargetId() { return targetId; }
+
+    public int getOwnerId() { return ownerId; }
+
+    public int getPostId() { return postId; }
+
+    public Status getStatus() { return status; }
+
+    public long getTimestamp() { return timestamp; }
+
+    public long getLatency() { return latency; }
+}
@@ -0,0 +1,157 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Re-runs checks periodically and watches whether the schedule is kept.
+ * A tick is late if it starts noticeably after its planned time, and it is dropped
+ * if the check of the previous tick hasn't finished yet.
+ */
+class TrackingScheduler implements AutoCloseable {
+    private static final String FORMAT_SCHEDULE = "Schedule: queue depth %d, lag avg %.1f ms / max %.1f ms, late ticks %d, dropped ticks %d";
+    private static final double LATE_FRACTION = 0.1; //A tick is late if it lags behind by this part of the interval
+    private static final double NANOS_IN_MILLI = 1e6;
+
+    /**
+     * Periodic check
+     */
+    private class Job implements Runnable {
+        private final Supplier<CompletableFuture<Void>> check;
+        private final long firstTime; //Planned time of the first tick
+        private final AtomicBoolean running; //Is the check of the previous tick still running?
+        private long ticks; //Number of the ticks so far
+
+        Job(Supplier<CompletableFuture<Void>> check, long firstTime) {
+            this.check = check;
+            this.firstTime = firstTime;
+            this.running = new AtomicBoolean();
+        }
+
+        @Override
+        public void run() {
+            registerLag(System.nanoTime() - (firstTime + ticks++ * interval));
+            if (!running.compareAndSet(false, true)) { //The schedule exceeds the capacity
+                droppedTicks.incrementAndGet();
+                return;
+            }
+            queueDepth.incrementAndGet();
+            try {
+                check.get().whenComplete((result, e) -> finish());
+            } catch (RuntimeException e) { //The job must survive, otherwise it won't be run again
+                finish();
+                Logger.getInstance().log(Logger.LogKind.ERROR, e.toString());
+            }
+        }
+
+        private void finish() {
+            queueDepth.decrementAndGet();
+            running.set(false);
+        }
+    }
+
+    private final long interval; //Time in nanoseconds between two ticks of a check
+    private final ScheduledThreadPoolExecutor timer;
+    private final AtomicInteger queueDepth; //Number of checks that are started but not finished
+    private final AtomicLong lateTicks;
+    private final AtomicLong droppedTicks;
+    private final AtomicLong lagSum; //Sum of the tick lags since the last report
+    private final AtomicLong lagCount; //Number of the ticks since the last report
+    private final AtomicLong lagMax; //The largest tick lag since the last report
+
+    /**
+     * Create a scheduler
+     * @param interval Time in milliseconds between two ticks of a check
+     */
+    TrackingScheduler(long interval) {
+        this.interval = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer.setRemoveOnCancelPolicy(true); //Checks of removed tasks are cancelled
+        this.queueDepth = new AtomicInteger();
+        this.lateTicks = new AtomicLong();
+        this.droppedTicks = new AtomicLong();
+        this.lagSum = new AtomicLong();
+        this.lagCount = new AtomicLong();
+        this.lagMax = new AtomicLong();
+    }
+
+    /**
+     * Schedule a periodic check
+     * @param check Starts the check and returns the future of its completion
+     * @param initialDelay Time in milliseconds before the first tick
+     * @return Future of the periodic check, cancelling it stops the check
+     */
+    ScheduledFuture<?> schedule(Supplier<CompletableFuture<Void>> check, long initialDelay) {
+        long delay = TimeUnit.MILLISECONDS.toNanos(initialDelay);
+        return timer.scheduleAtFixedRate(new Job(check, System.nanoTime() + delay), delay, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the number of checks that are started but not finished
+     * @return Queue depth
+     */
+    int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * Get the number of ticks that started too late
+     * @return Number of late ticks
+     */
+    long getLateTicks() {
+        return lateTicks.get();
+    }
+
+    /**
+     * Get the number of ticks that were skipped because the previous check was still running
+     * @return Number of dropped ticks
+     */
+    long getDroppedTicks() {
+        return droppedTicks.get();
+    }
+
+    /**
+     * Write the schedule metrics to the log and start a new lag window
+     */
+    void report() {
+        long count = lagCount.getAndSet(0);
+        long sum = lagSum.getAndSet(0);
+        long max = lagMax.getAndSet(0);
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(FORMAT_SCHEDULE,
+                getQueueDepth(),
+                count > 0 ? sum / (double) count / NANOS_IN_MILLI : 0.0,
+                max / NANOS_IN_MILLI,
+                getLateTicks(),
+                getDroppedTicks()));
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Register the lag of a tick behind its planned time
+     * @param lag Lag in nanoseconds
+     */
+    private void registerLag(long lag) {
+        lag = Math.max(0, lag);
+        if (lag > interval * LATE_FRACTION)
+            lateTicks.incrementAndGet();
+        lagSum.addAndGet(lag);
+        lagCount.incrementAndGet();
+        lagMax.accumulateAndGet(lag, Math::max);
+    }
+}
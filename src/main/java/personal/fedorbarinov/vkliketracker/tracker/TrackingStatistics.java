@@ -0,0 +1,118 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import personal.fedorbarinov.vkliketracker.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Aggregated statistics of a tracking run
+ */
+class TrackingStatistics {
+    private static final String FORMAT_CHECKS = "Checks: %d (liked: %d, not liked: %d, failed: %d)";
+    private static final String FORMAT_WALL_TIME = "Wall time: %.3f s";
+    private static final String FORMAT_THROUGHPUT = "Throughput: %.1f checks/sec";
+    private static final String FORMAT_LATENCY = "Check latency, ms: min %.1f, avg %.1f, p50 %.1f, p99 %.1f, max %.1f";
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    /**
+     * Outcome of a single check
+     */
+    enum Outcome {
+        LIKED,
+        NOT_LIKED,
+        FAILED
+    }
+
+    private final long[] latencies; //Latencies of the finished checks in nanoseconds
+    private final AtomicInteger finished; //Number of the finished checks
+    private final AtomicInteger liked;
+    private final AtomicInteger notLiked;
+    private final AtomicInteger failed;
+
+    private long startTime;
+    private long finishTime;
+
+    TrackingStatistics(int capacity) {
+        this.latencies = new long[capacity];
+        this.finished = new AtomicInteger();
+        this.liked = new AtomicInteger();
+        this.notLiked = new AtomicInteger();
+        this.failed = new AtomicInteger();
+    }
+
+    /**
+     * Mark the beginning of the run
+     */
+    void start() {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Mark the end of the run
+     */
+    void finish() {
+        finishTime = System.nanoTime();
+    }
+
+    /**
+     * Register a finished check
+     * @param outcome Outcome of the check
+     * @param latency Check latency in nanoseconds
+     */
+    void register(Outcome outcome, long latency) {
+        switch (outcome) {
+            case LIKED:
+                liked.incrementAndGet();
+                break;
+            case NOT_LIKED:
+                notLiked.incrementAndGet();
+                break;
+            case FAILED:
+                failed.incrementAndGet();
+                break;
+        }
+        int index = finished.getAndIncrement();
+        if (index < latencies.length)
+            latencies[index] = latency;
+    }
+
+    /**
+     * Write the statistics to the log
+     */
+    void report() {
+        Logger logger = Logger.getInstance();
+        int total = finished.get();
+        int count = Math.min(total, latencies.length); //Latencies beyond the capacity aren't kept
+        double wallTime = (finishTime - startTime) / NANOS_IN_SECOND;
+        logger.log(Logger.LogKind.INFO, String.format(FORMAT_CHECKS, total, liked.get(), notLiked.get(), failed.get()));
+        logger.log(Logger.LogKind.INFO, String.format(FORMAT_WALL_TIME, wallTime));
+        if (count == 0)
+            return;
+        logger.log(Logger.LogKind.INFO, String.format(FORMAT_THROUGHPUT, wallTime > 0 ? total / wallTime : 0.0));
+
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        long sum = 0;
+        for (long latency : sorted)
+            sum += latency;
+        logger.log(Logger.LogKind.INFO, String.format(FORMAT_LATENCY,
+                sorted[0] / NANOS_IN_MILLI,
+                sum / (double) count / NANOS_IN_MILLI,
+                percentile(sorted, 0.5) / NANOS_IN_MILLI,
+                percentile(sorted, 0.99) / NANOS_IN_MILLI,
+                sorted[count - 1] / NANOS_IN_MILLI));
+    }
+
+    /**
+     * Get a percentile of sorted values
+     * @param sorted Sorted values
+     * @param fraction Percentile as a fraction of 1
+     * @return Value of the percentile
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
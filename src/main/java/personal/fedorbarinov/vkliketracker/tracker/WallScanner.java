@@ -0,0 +1,266 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.objects.wall.WallPostFull;
+import com.vk.api.sdk.objects.wall.responses.GetResponse;
+import personal.fedorbarinov.vkliketracker.api.AsyncApiClient;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the posts of many walls a target has liked.
+ * The scan is a pipeline of three stages joined by bounded queues: pagers download a few walls at once
+ * page by page with wall.get, a checker checks the target against every post as soon as it is paged,
+ * and an emitter hands the results over one by one. A full queue holds the stage before it back,
+ * so the walls are paged no faster than their posts are checked.
+ * Paging of a wall stops at the first post older than the cutoff (except for a pinned post, which may be
+ * older than the rest) or after the limit of posts, so walls aren't scanned years back.
+ */
+class WallScanner implements AutoCloseable {
+    static final int PAGE_SIZE = 100; //The largest page wall.get returns
+    private static final int POST_QUEUE_SIZE = 1000; //Posts paged and waiting to be checked
+    private static final int CHECK_WINDOW = 256; //Posts being checked or waiting to be emitted
+    private static final String THREAD_NAME = "WallScanner";
+
+    /**
+     * Receiver of the results, it is called from a single thread
+     */
+    interface Listener {
+        /**
+         * Called when a post has been checked
+         * @param task The target and the post
+         * @param liked Whether the target has liked the post
+         * @param startTime Time the check has been started at
+         */
+        void onChecked(Task task, boolean liked, long startTime);
+
+        /**
+         * Called when a post couldn't be checked, or a wall couldn't be paged (the post ID is 0 then)
+         * @param task The target and the post
+         * @param error Error of the check
+         * @param startTime Time the check has been started at
+         */
+        void onFailed(Task task, Throwable error, long startTime);
+    }
+
+    /**
+     * Stage of the pipeline running in its own thread
+     */
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    /**
+     * Paged post waiting to be checked
+     */
+    private static class Post {
+        private final Task task;
+        private final int likes; //Number of likes of the post (-1 if it is unknown)
+
+        Post(Task task, int likes) {
+            this.task = task;
+            this.likes = likes;
+        }
+    }
+
+    /**
+     * Result of a check waiting to be emitted
+     */
+    private static class Result {
+        private final Task task;
+        private final boolean liked;
+        private final Throwable error; //Error of the check (null if it has succeeded)
+        private final long startTime;
+
+        Result(Task task, boolean liked, Throwable error, long startTime) {
+            this.task = task;
+            this.liked = liked;
+            this.error = error;
+            this.startTime = startTime;
+        }
+    }
+
+    private static final Post END_OF_POSTS = new Post(null, 0);
+    private static final Result END_OF_RESULTS = new Result(null, false, null, 0);
+
+    private final AsyncApiClient api; //Sends the requests without blocking
+    private final UserActor user; //Current authorized user
+    private final LikeCheck check;
+    private final int walls; //Number of walls paged at once
+    private final long since; //Unix time in seconds, older posts aren't checked (0 if there is no cutoff)
+    private final int maxPosts; //Most posts checked per wall (0 if there is no limit)
+    private final BlockingQueue<Post> posts; //Paged posts
+    private final BlockingQueue<Result> results; //Finished checks, never more than the window
+    private final Semaphore window; //Permits for the posts between the checker and the emitter
+    private final ExecutorService stages; //Threads of the stages
+
+    /**
+     * Create a scanner
+     * @param api Sends the requests without blocking
+     * @param user Current authorized user
+     * @param check Checks whether the target has liked a post
+     * @param walls Number of walls paged at once
+     * @param since Unix time in seconds, older posts aren't checked (0 if there is no cutoff)
+     * @param maxPosts Most posts checked per wall (0 if there is no limit)
+     */
+    WallScanner(AsyncApiClient api, UserActor user, LikeCheck check, int walls, long since, int maxPosts) {
+        this.api = api;
+        this.user = user;
+        this.check = check;
+        this.walls = Math.max(1, walls);
+        this.since = since;
+        this.maxPosts = maxPosts;
+        this.posts = new ArrayBlockingQueue<>(POST_QUEUE_SIZE);
+        this.results = new ArrayBlockingQueue<>(CHECK_WINDOW);
+        this.window = new Semaphore(CHECK_WINDOW);
+        this.stages = Executors.newFixedThreadPool(this.walls + 2, runnable -> {
+            Thread thread = new Thread(runnable, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Scan the walls, a scanner is meant for a single scan
+     * @param owners Owners of the walls
+     * @param target Target as it was written
+     * @param targetId ID of the target
+     * @param listener Receiver of the results
+     * @return Future that is completed when every result has been emitted
+     */
+    CompletableFuture<Void> scan(List<Integer> owners, String target, int targetId, Listener listener) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ConcurrentLinkedQueue<Integer> remaining = new ConcurrentLinkedQueue<>(owners);
+        int pagers = Math.min(walls, Math.max(1, owners.size()));
+        AtomicInteger activePagers = new AtomicInteger(pagers);
+        for (int i = 0; i < pagers; i++) {
+            stages.execute(() -> runStage(done, () -> {
+                Integer ownerId;
+                while ((ownerId = remaining.poll()) != null)
+                    page(ownerId, target, targetId);
+                if (activePagers.decrementAndGet() == 0)
+                    posts.put(END_OF_POSTS);
+            }));
+        }
+        stages.execute(() -> runStage(done, this::check));
+        stages.execute(() -> runStage(done, () -> emit(listener, done)));
+        return done;
+    }
+
+    /**
+     * Stop the stages
+     */
+    @Override
+    public void close() {
+        stages.shutdownNow();
+    }
+
+    /**
+     * Run a stage, the scan fails if the stage does
+     * @param done Future of the scan
+     * @param stage The stage
+     */
+    private static void runStage(CompletableFuture<Void> done, Stage stage) {
+        try {
+            stage.run();
+        } catch (InterruptedException e) { //The scanner has been closed
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Page a wall from the newest post until the cutoff, the limit or the end of the wall
+     * @param ownerId Owner of the wall
+     * @param target Target as it was written
+     * @param targetId ID of the target
+     * @throws InterruptedException The scanner has been closed
+     */
+    private void page(int ownerId, String target, int targetId) throws InterruptedException {
+        int offset = 0;
+        int paged = 0;
+        while (true) {
+            long startTime = System.nanoTime();
+            GetResponse page;
+            try {
+                page = api.call(api.getVkClient().wall().get(user)
+                        .ownerId(ownerId).offset(offset).count(PAGE_SIZE), GetResponse.class).get();
+            } catch (ExecutionException e) { //The wall may be closed or deleted
+                window.acquire();
+                results.put(new Result(new Task(target, targetId, ownerId, 0), false, e.getCause(), startTime));
+                return;
+            }
+            List<WallPostFull> items = page.getItems();
+            boolean stop = items.isEmpty();
+            for (WallPostFull post : items) {
+                boolean pinned = post.getIsPinned() != null && post.getIsPinned() != 0;
+                if (since > 0 && post.getDate() != null && post.getDate() < since) {
+                    if (pinned) //The rest of the wall may still be newer
+                        continue;
+                    stop = true;
+                    break;
+                }
+                if (maxPosts > 0 && paged >= maxPosts) {
+                    stop = true;
+                    break;
+                }
+                int likes = post.getLikes() != null && post.getLikes().getCount() != null ? post.getLikes().getCount() : -1;
+                posts.put(new Post(new Task(target, targetId, ownerId, post.getId()), likes));
+                paged++;
+            }
+            offset += items.size();
+            if (stop || page.getCount() == null || offset >= page.getCount())
+                return;
+        }
+    }
+
+    /**
+     * Check the paged posts until the pagers are done, then wait for the results to be emitted
+     * @throws InterruptedException The scanner has been closed
+     */
+    private void check() throws InterruptedException {
+        Post post;
+        while ((post = posts.take()) != END_OF_POSTS) {
+            window.acquire();
+            long startTime = System.nanoTime();
+            Task task = post.task;
+            if (post.likes == 0) { //Nobody has liked it, no request is needed
+                results.put(new Result(task, false, null, startTime));
+                continue;
+            }
+            check.isLiked(task.getOwnerId(), task.getPostId(), task.getTargetId()).whenComplete((liked, e) ->
+                    results.add(new Result(task, e == null && liked, e, startTime))); //There is room, it's in the window
+        }
+        window.acquire(CHECK_WINDOW);
+        results.put(END_OF_RESULTS);
+        window.release(CHECK_WINDOW);
+    }
+
+    /**
+     * Hand the results over to the listener until the checker is done
+     * @param listener Receiver of the results
+     * @param done Future of the scan, completed at the end
+     * @throws InterruptedException The scanner has been closed
+     */
+    private void emit(Listener listener, CompletableFuture<Void> done) throws InterruptedException {
+        Result result;
+        while ((result = results.take()) != END_OF_RESULTS) {
+            window.release();
+            if (result.error != null)
+                listener.onFailed(result.task, result.error, result.startTime);
+            else
+                listener.onChecked(result.task, result.liked, result.startTime);
+        }
+        done.complete(null);
+    }
+}
@@ -0,0 +1,79 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Config parser of the load driver
+ */
+public class LoadTestConfigParser extends ConfigParser {
+    public static final String API_URL_LABEL = "API_URL";
+    public static final String OAUTH_URL_LABEL = "OAUTH_URL";
+    public static final String MODE_LABEL = "MODE";
+    public static final String REQUESTS_LABEL = "REQUESTS";
+    public static final String CONCURRENCY_LABEL = "CONCURRENCY";
+    public static final String BATCH_SIZE_LABEL = "BATCH_SIZE";
+    public static final String TOKENS_LABEL = "TOKENS";
+    public static final String RATE_LIMIT_LABEL = "RATE_LIMIT";
+    public static final String THREADS_LABEL = "THREADS";
+
+    private static final String DEFAULT_API_URL = "http://127.0.0.1:8080/method/";
+    private static final String DEFAULT_OAUTH_URL = "http://127.0.0.1:8080/";
+    private static final String DEFAULT_MODE = "CHECK";
+    private static final String DEFAULT_REQUESTS = "10000";
+    private static final String DEFAULT_CONCURRENCY = "64";
+    private static final String DEFAULT_BATCH_SIZE = "25";
+    private static final String DEFAULT_TOKENS = "1";
+    private static final String DEFAULT_RATE_LIMIT = "3";
+    private static final String DEFAULT_THREADS = "4";
+
+    private static Set<String> parametersNames;
+    private static Set<String> optionsNames;
+
+    static {
+        parametersNames = new TreeSet<>();
+        parametersNames.add(API_URL_LABEL);
+        parametersNames.add(OAUTH_URL_LABEL);
+        parametersNames.add(MODE_LABEL);
+        parametersNames.add(REQUESTS_LABEL);
+        parametersNames.add(CONCURRENCY_LABEL);
+        parametersNames.add(BATCH_SIZE_LABEL);
+        parametersNames.add(TOKENS_LABEL);
+        parametersNames.add(RATE_LIMIT_LABEL);
+        parametersNames.add(THREADS_LABEL);
+        optionsNames = new TreeSet<>();
+    }
+
+    @Override
+    protected boolean checkedParametersAppend() {
+        if (!parameters.contains(API_URL_LABEL))
+            parameters.put(API_URL_LABEL, DEFAULT_API_URL);
+        if (!parameters.contains(OAUTH_URL_LABEL))
+            parameters.put(OAUTH_URL_LABEL, DEFAULT_OAUTH_URL);
+        if (!parameters.contains(MODE_LABEL))
+            parameters.put(MODE_LABEL, DEFAULT_MODE);
+        if (!parameters.contains(REQUESTS_LABEL))
+            parameters.put(REQUESTS_LABEL, DEFAULT_REQUESTS);
+        if (!parameters.contains(CONCURRENCY_LABEL))
+            parameters.put(CONCURRENCY_LABEL, DEFAULT_CONCURRENCY);
+        if (!parameters.contains(BATCH_SIZE_LABEL))
+            parameters.put(BATCH_SIZE_LABEL, DEFAULT_BATCH_SIZE);
+        if (!parameters.contains(TOKENS_LABEL))
+            parameters.put(TOKENS_LABEL, DEFAULT_TOKENS);
+        if (!parameters.contains(RATE_LIMIT_LABEL))
+            parameters.put(RATE_LIMIT_LABEL, DEFAULT_RATE_LIMIT);
+        if (!parameters.contains(THREADS_LABEL))
+            parameters.put(THREADS_LABEL, DEFAULT_THREADS);
+        return true;
+    }
+
+    @Override
+    protected boolean isValidParameter(String parameter) {
+        return parametersNames.contains(parameter);
+    }
+
+    @Override
+    protected boolean isValidOption(String option) {
+        return optionsNames.contains(option);
+    }
+}
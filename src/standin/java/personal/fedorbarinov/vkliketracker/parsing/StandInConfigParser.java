@@ -0,0 +1,74 @@
+package personal.fedorbarinov.vkliketracker.parsing;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Config parser of the local VK API stand-in server
+ */
+public class StandInConfigParser extends ConfigParser {
+    public static final String PORT_LABEL = "PORT";
+    public static final String THREADS_LABEL = "THREADS";
+    public static final String LATENCY_LABEL = "LATENCY";
+    public static final String LATENCY_JITTER_LABEL = "LATENCY_JITTER";
+    public static final String ERROR_RATE_LABEL = "ERROR_RATE";
+    public static final String RATE_LIMIT_LABEL = "RATE_LIMIT";
+    public static final String LIKERS_LABEL = "LIKERS";
+    public static final String WALL_POSTS_LABEL = "WALL_POSTS";
+
+    private static final String DEFAULT_PORT = "8080";
+    private static final String DEFAULT_THREADS = "8";
+    private static final String DEFAULT_LATENCY = "20";
+    private static final String DEFAULT_LATENCY_JITTER = "10";
+    private static final String DEFAULT_ERROR_RATE = "0";
+    private static final String DEFAULT_RATE_LIMIT = "3";
+    private static final String DEFAULT_LIKERS = "1000000";
+    private static final String DEFAULT_WALL_POSTS = "1000";
+
+    private static Set<String> parametersNames;
+    private static Set<String> optionsNames;
+
+    static {
+        parametersNames = new TreeSet<>();
+        parametersNames.add(PORT_LABEL);
+        parametersNames.add(THREADS_LABEL);
+        parametersNames.add(LATENCY_LABEL);
+        parametersNames.add(LATENCY_JITTER_LABEL);
+        parametersNames.add(ERROR_RATE_LABEL);
+        parametersNames.add(RATE_LIMIT_LABEL);
+        parametersNames.add(LIKERS_LABEL);
+        parametersNames.add(WALL_POSTS_LABEL);
+        optionsNames = new TreeSet<>();
+    }
+
+    @Override
+    protected boolean checkedParametersAppend() {
+        if (!parameters.contains(PORT_LABEL))
+            parameters.put(PORT_LABEL, DEFAULT_PORT);
+        if (!parameters.contains(THREADS_LABEL))
+            parameters.put(THREADS_LABEL, DEFAULT_THREADS);
+        if (!parameters.contains(LATENCY_LABEL))
+            parameters.put(LATENCY_LABEL, DEFAULT_LATENCY);
+        if (!parameters.contains(LATENCY_JITTER_LABEL))
+            parameters.put(LATENCY_JITTER_LABEL, DEFAULT_LATENCY_JITTER);
+        if (!parameters.contains(ERROR_RATE_LABEL))
+            parameters.put(ERROR_RATE_LABEL, DEFAULT_ERROR_RATE);
+        if (!parameters.contains(RATE_LIMIT_LABEL))
+            parameters.put(RATE_LIMIT_LABEL, DEFAULT_RATE_LIMIT);
+        if (!parameters.contains(LIKERS_LABEL))
+            parameters.put(LIKERS_LABEL, DEFAULT_LIKERS);
+        if (!parameters.contains(WALL_POSTS_LABEL))
+            parameters.put(WALL_POSTS_LABEL, DEFAULT_WALL_POSTS);
+        return true;
+    }
+
+    @Override
+    protected boolean isValidParameter(String parameter) {
+        return parametersNames.contains(parameter);
+    }
+
+    @Override
+    protected boolean isValidOption(String option) {
+        return optionsNames.contains(option);
+    }
+}
@@ -0,0 +1,254 @@
+package personal.fedorbarinov.vkliketracker.standin;
+
+import com.vk.api.sdk.client.VkApiClient;
+import com.vk.api.sdk.client.actors.ServiceActor;
+import com.vk.api.sdk.client.actors.UserActor;
+import com.vk.api.sdk.exceptions.ApiException;
+import com.vk.api.sdk.exceptions.ClientException;
+import com.vk.api.sdk.objects.UserAuthResponse;
+import com.vk.api.sdk.objects.likes.responses.GetListResponse;
+import com.vk.api.sdk.queries.likes.LikesGetListFilter;
+import com.vk.api.sdk.queries.likes.LikesType;
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.api.ActorPool;
+import personal.fedorbarinov.vkliketracker.api.AsyncApiClient;
+import personal.fedorbarinov.vkliketracker.api.AsyncTransport;
+import personal.fedorbarinov.vkliketracker.api.ConfigurableVkApiClient;
+import personal.fedorbarinov.vkliketracker.api.ExecuteBatcher;
+import personal.fedorbarinov.vkliketracker.parsing.LoadTestConfigParser;
+import personal.fedorbarinov.vkliketracker.parsing.Parser;
+import personal.fedorbarinov.vkliketracker.tracker.LikeChecker;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Load driver of the API client: makes a number of requests with a bounded number of them in flight,
+ * then reports the throughput and the latency percentiles. Meant to be run against the stand-in server.
+ * The modes are CHECK (likes.isLiked calls one by one), BATCH (likes.isLiked calls packed into "execute"),
+ * SCAN (pages of likes.getList) and AUTH (a code flow, a client credentials flow and secure.checkToken
+ * made with the blocking client, one round per request).
+ * A request is timed from the moment it is made, so the time it waits for the rate limit of its token counts.
+ */
+public class LoadDriver {
+    private static final String CONFIG_PATH = "loadtest.config"; //Default path to the load test config
+    private static final String MODE_CHECK = "CHECK";
+    private static final String MODE_BATCH = "BATCH";
+    private static final String MODE_SCAN = "SCAN";
+    private static final String MODE_AUTH = "AUTH";
+    private static final String TOKEN_FORMAT = "user%d.loadtest"; //Tokens the stand-in accepts
+    private static final int OWNER_ID = 1;
+    private static final int POST_ID = 1;
+    private static final int PAGE_SIZE = 1000;
+    private static final int APP_ID = 1;
+    private static final String APP_SECRET = "secret";
+    private static final String REDIRECT_URI = "http://127.0.0.1/";
+    private static final long BATCH_LINGER = 5; //Milliseconds
+    private static final int RATE_LIMIT_BURST = 1;
+    private static final double NANOS_IN_MILLI = 1e6;
+    private static final double NANOS_IN_SECOND = 1e9;
+
+    private static final String LOG_MSG_START = "Load test: %s, %d requests, %d in flight, %d token(s) at %s";
+    private static final String LOG_MSG_REQUESTS = "Requests: %d (failed: %d)";
+    private static final String LOG_MSG_ERRORS = "Failures: %d x %s";
+    private static final String LOG_MSG_WALL_TIME = "Wall time: %.3f s";
+    private static final String LOG_MSG_THROUGHPUT = "Throughput: %.1f requests/sec";
+    private static final String LOG_MSG_LATENCY = "Latency, ms: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f";
+    private static final String LOG_MSG_BAD_MODE = "Unknown load test mode: %s";
+    private static final String LOG_MSG_CONFIG_ERROR = "Load test config couldn't be read: %s";
+
+    private final String mode; //Requests that are made
+    private final int requests; //Number of requests
+    private final int concurrency; //Maximal number of requests in flight
+    private final int batchSize; //Number of calls packed into one "execute" in BATCH mode
+    private final int threads; //Number of threads handling the responses
+    private final List<UserActor> actors; //Users whose tokens the requests are spread across
+    private final double rateLimit; //Requests per second allowed for each token
+    private final VkApiClient vkClient; //VK client pointed at the tested endpoint
+    private final long[] latencies; //Latency in nanoseconds of every request
+    private final AtomicLong failures; //Number of failed requests
+    private final Map<String, Integer> errors; //Number of failures by error message
+
+    public static void main(String[] args) {
+        String configPath = args.length > 0 ? args[0] : CONFIG_PATH;
+        try (FileInputStream in = new FileInputStream(configPath)) {
+            new LoadDriver(new LoadTestConfigParser().parse(in)).run();
+        } catch (IOException | Parser.ParsingException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, String.format(LOG_MSG_CONFIG_ERROR, e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * Public constructor of the class
+     * @param config Parameters obtained from the load test config
+     */
+    public LoadDriver(Parser.ParsingResult config) {
+        this.mode = config.get(LoadTestConfigParser.MODE_LABEL);
+        this.requests = Integer.parseInt(config.get(LoadTestConfigParser.REQUESTS_LABEL));
+        this.concurrency = Math.max(1, Integer.parseInt(config.get(LoadTestConfigParser.CONCURRENCY_LABEL)));
+        this.batchSize = Integer.parseInt(config.get(LoadTestConfigParser.BATCH_SIZE_LABEL));
+        this.threads = Integer.parseInt(config.get(LoadTestConfigParser.THREADS_LABEL));
+        this.rateLimit = Double.parseDouble(config.get(LoadTestConfigParser.RATE_LIMIT_LABEL));
+        this.actors = new ArrayList<>();
+        for (int i = 1; i <= Math.max(1, Integer.parseInt(config.get(LoadTestConfigParser.TOKENS_LABEL))); i++)
+            actors.add(new UserActor(i, String.format(TOKEN_FORMAT, i)));
+        AsyncTransport transport = AsyncTransport.getInstance();
+        transport.setMaxInFlight(concurrency);
+        this.vkClient = new ConfigurableVkApiClient(transport, config.get(LoadTestConfigParser.API_URL_LABEL),
+                config.get(LoadTestConfigParser.OAUTH_URL_LABEL));
+        this.latencies = new long[requests];
+        this.failures = new AtomicLong();
+        this.errors = new TreeMap<>();
+    }
+
+    /**
+     * Make the requests and write the report to the log
+     */
+    public void run() {
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_START,
+                mode, requests, concurrency, actors.size(), vkClient.getApiEndpoint()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AsyncApiClient api = new AsyncApiClient(vkClient, AsyncTransport.getInstance(),
+                new ActorPool(actors, rateLimit, RATE_LIMIT_BURST), executor);
+        long start = System.nanoTime();
+        try {
+            switch (mode) {
+                case MODE_CHECK: {
+                    LikeChecker checker = new LikeChecker(api, actors.get(0));
+                    drive(i -> checker.check(OWNER_ID, POST_ID, i + 1));
+                    break;
+                }
+                case MODE_BATCH:
+                    try (ExecuteBatcher batcher = new ExecuteBatcher(api, actors.get(0), batchSize, BATCH_LINGER)) {
+                        drive(i -> batcher.isLiked(OWNER_ID, POST_ID, i + 1));
+                    }
+                    break;
+                case MODE_SCAN:
+                    drive(i -> api.call(vkClient.likes().getList(actors.get(0), LikesType.POST)
+                            .ownerId(OWNER_ID).itemId(POST_ID).filter(LikesGetListFilter.LIKES)
+                            .offset(i * PAGE_SIZE).count(PAGE_SIZE), GetListResponse.class));
+                    break;
+                case MODE_AUTH:
+                    drive(i -> CompletableFuture.runAsync(() -> authorize(i + 1), executor));
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(LOG_MSG_BAD_MODE, mode));
+            }
+            report(System.nanoTime() - start);
+        } finally {
+            api.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Make the requests, keeping at most the given number of them in flight
+     * @param request Makes the request of the given index
+     */
+    private void drive(IntFunction<CompletableFuture<?>> request) {
+        Semaphore inFlight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int i = 0; i < requests; i++) {
+            inFlight.acquireUninterruptibly();
+            int index = i;
+            long sent = System.nanoTime();
+            CompletableFuture<?> future;
+            try {
+                future = request.apply(index);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((result, e) -> {
+                latencies[index] = System.nanoTime() - sent;
+                if (e != null)
+                    registerFailure(e);
+                inFlight.release();
+                done.countDown();
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run the authorization flows the app runs for a user
+     * @param userId ID of the user, given as the authorization code
+     */
+    private void authorize(int userId) {
+        try {
+            UserAuthResponse user = vkClient.oauth()
+                    .userAuthorizationCodeFlow(APP_ID, APP_SECRET, REDIRECT_URI, Integer.toString(userId)).execute();
+            String serviceToken = vkClient.oauth().serviceClientCredentialsFlow(APP_ID, APP_SECRET).execute().getAccessToken();
+            vkClient.secure().checkToken(new ServiceActor(APP_ID, APP_SECRET, serviceToken)).token(user.getAccessToken()).execute();
+        } catch (ApiException | ClientException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Count a failed request
+     * @param error Error of the request
+     */
+    private void registerFailure(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        failures.incrementAndGet();
+        synchronized (errors) {
+            errors.merge(cause.getClass().getSimpleName() + ": " + cause.getMessage(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Write the throughput and the latency percentiles to the log
+     * @param wallTime Time in nanoseconds the requests have taken
+     */
+    private void report(long wallTime) {
+        Logger logger = Logger.getInstance();
+        logger.log(Logger.LogKind.INFO, String.format(LOG_MSG_REQUESTS, requests, failures.get()));
+        synchronized (errors) {
+            for (Map.Entry<String, Integer> error : errors.entrySet())
+                logger.log(Logger.LogKind.WARNING, String.format(LOG_MSG_ERRORS, error.getValue(), error.getKey()));
+        }
+        logger.log(Logger.LogKind.INFO, String.format(LOG_MSG_WALL_TIME, wallTime / NANOS_IN_SECOND));
+        logger.log(Logger.LogKind.INFO, String.format(LOG_MSG_THROUGHPUT, requests * NANOS_IN_SECOND / Math.max(1, wallTime)));
+        if (requests == 0)
+            return;
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        logger.log(Logger.LogKind.INFO, String.format(LOG_MSG_LATENCY,
+                percentile(sorted, 0.5) / NANOS_IN_MILLI,
+                percentile(sorted, 0.9) / NANOS_IN_MILLI,
+                percentile(sorted, 0.99) / NANOS_IN_MILLI,
+                percentile(sorted, 0.999) / NANOS_IN_MILLI,
+                sorted[sorted.length - 1] / NANOS_IN_MILLI));
+    }
+
+    /**
+     * Get a percentile of sorted values
+     * @param sorted Sorted values
+     * @param fraction Percentile as a fraction of 1
+     * @return Value of the percentile
+     */
+    private static long percentile(long[] sorted, double fraction) {
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
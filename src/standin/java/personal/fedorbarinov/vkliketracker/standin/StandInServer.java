@@ -0,0 +1,555 @@
+package personal.fedorbarinov.vkliketracker.standin;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import personal.fedorbarinov.vkliketracker.Logger;
+import personal.fedorbarinov.vkliketracker.parsing.Parser;
+import personal.fedorbarinov.vkliketracker.parsing.StandInConfigParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in of the VK API for load tests.
+ * It answers the methods the app calls (likes.isLiked, likes.getList, wall.get, utils.resolveScreenName,
+ * execute of those calls and secure.checkToken) and the OAuth flows, with a configurable latency, a share of
+ * requests failing with an internal server error and a per-token limit of requests per second beyond which
+ * error 6 is returned. Every post has the same configured number of likers: the users with odd IDs,
+ * so a post with millions of likers costs nothing to keep. Every wall has the same configured number of posts,
+ * one an hour up to the start of the stand-in, with the oldest one pinned. Screen names "idN" resolve to user N,
+ * "clubN" and "publicN" to community N, names starting with "missing" aren't found,
+ * and any other name resolves to a user derived from its hash.
+ * Tokens issued by the stand-in start with "user" or "service", any other token is rejected with error 5.
+ * The responses are delayed on a timer, so slow responses don't hold the handler threads.
+ * The JDK server is tuned with system properties read once per JVM (sun.net.httpserver.nodelay=true and
+ * sun.net.httpserver.maxIdleConnections=4096), which are given on the command line by the Gradle tasks.
+ */
+public class StandInServer implements AutoCloseable {
+    private static final String CONFIG_PATH = "standin.config"; //Default path to the stand-in config
+    private static final String PATH_API = "/method/";
+    private static final String PATH_OAUTH = "/";
+    private static final String PATH_ACCESS_TOKEN = "access_token";
+    private static final String PATH_AUTHORIZE = "authorize";
+    private static final String HOST = "127.0.0.1";
+    private static final int BACKLOG = 1024;
+    private static final long REPORT_INTERVAL = 10; //Seconds between two reports of the served requests
+
+    private static final String METHOD_IS_LIKED = "likes.isLiked";
+    private static final String METHOD_GET_LIST = "likes.getList";
+    private static final String METHOD_WALL_GET = "wall.get";
+    private static final String METHOD_RESOLVE_SCREEN_NAME = "utils.resolveScreenName";
+    private static final String METHOD_EXECUTE = "execute";
+    private static final String METHOD_CHECK_TOKEN = "secure.checkToken";
+    private static final Pattern SCRIPT_CALL = Pattern.compile("API\\.([A-Za-z.]+)\\((\\{[^}]*\\})\\)");
+    private static final Pattern NAME_USER = Pattern.compile("id([0-9]+)");
+    private static final Pattern NAME_GROUP = Pattern.compile("(?:club|public)([0-9]+)");
+    private static final Pattern TOKEN_OWNER = Pattern.compile("user([0-9]+)\\..*");
+    private static final String NAME_MISSING_PREFIX = "missing";
+    private static final String TOKEN_USER_FORMAT = "user%d.%08x";
+    private static final String TOKEN_SERVICE_FORMAT = "service%s.%08x";
+    private static final String TOKEN_USER_PREFIX = "user";
+    private static final String TOKEN_SERVICE_PREFIX = "service";
+    private static final int USER_TOKEN_LIFETIME = 86400; //Seconds
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_WALL_PAGE_SIZE = 100;
+    private static final long POST_SPACING = TimeUnit.HOURS.toSeconds(1); //Time in seconds between two posts of a wall
+
+    private static final int ERROR_UNKNOWN_METHOD = 3;
+    private static final int ERROR_AUTH = 5;
+    private static final int ERROR_TOO_MANY = 6;
+    private static final int ERROR_INTERNAL = 10;
+    private static final int ERROR_INVALID_TOKEN = 15;
+    private static final int ERROR_PARAM = 100;
+    private static final String ERROR_MSG_UNKNOWN_METHOD = "Unknown method passed";
+    private static final String ERROR_MSG_AUTH = "User authorization failed: invalid access_token";
+    private static final String ERROR_MSG_TOO_MANY = "Too many requests per second";
+    private static final String ERROR_MSG_INTERNAL = "Internal server error";
+    private static final String ERROR_MSG_INVALID_TOKEN = "Access denied: invalid token";
+    private static final String ERROR_MSG_PARAM = "One of the parameters specified was missing or invalid: %s";
+    private static final String OAUTH_ERROR_GRANT = "invalid_grant";
+    private static final String OAUTH_ERROR_GRANT_DESCRIPTION = "Code is invalid or expired.";
+
+    private static final String LOG_MSG_STARTED = "Stand-in is listening: API at %s, OAuth at %s";
+    private static final String LOG_MSG_REPORT = "Served %d requests (%d throttled, %d failed)";
+    private static final String LOG_MSG_CONFIG_ERROR = "Stand-in config couldn't be read: %s";
+
+    /**
+     * Error returned instead of the response of a method
+     */
+    private static class ApiError extends Exception {
+        private final int code;
+
+        ApiError(int code, String message) {
+            super(message);
+            this.code = code;
+        }
+    }
+
+    /**
+     * Number of requests made with a token in the current second
+     */
+    private static class Window {
+        private long second; //Second the requests are counted in
+        private int count; //Number of requests made in the second
+    }
+
+    private final HttpServer server;
+    private final ScheduledExecutorService executor; //Handles the requests and sends the delayed responses
+    private final long latency; //Mean time in milliseconds a response is delayed for
+    private final long latencyJitter; //Largest deviation in milliseconds from the mean delay
+    private final double errorRate; //Share of the requests failing with an internal server error
+    private final int rateLimit; //Requests per second allowed for a token (0 if there is no limit)
+    private final int likers; //Number of likers of every post
+    private final int wallPosts; //Number of posts of every wall
+    private final long wallTime; //Time in seconds the newest post of every wall is dated
+    private final Map<String, Window> windows; //Requests of the current second by token
+    private final AtomicInteger nextCode; //Code given by the next authorization, the ID of the user it is for
+    private final AtomicLong served; //Number of requests served
+    private final AtomicLong throttled; //Number of requests rejected with error 6
+    private final AtomicLong failed; //Number of requests failed on purpose
+
+    public static void main(String[] args) {
+        String configPath = args.length > 0 ? args[0] : CONFIG_PATH;
+        Parser.ParsingResult config;
+        try (FileInputStream in = new FileInputStream(configPath)) {
+            config = new StandInConfigParser().parse(in);
+        } catch (IOException | Parser.ParsingException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, String.format(LOG_MSG_CONFIG_ERROR, e.getMessage()));
+            return;
+        }
+        try {
+            new StandInServer(config); //The server threads keep the application running
+        } catch (IOException | IllegalArgumentException e) {
+            Logger.getInstance().log(Logger.LogKind.ERROR, e.getMessage());
+        }
+    }
+
+    /**
+     * Start the stand-in
+     * @param config Parameters obtained from the stand-in config
+     * @throws IOException Exception that is thrown if the port couldn't be bound
+     */
+    public StandInServer(Parser.ParsingResult config) throws IOException {
+        this.latency = Long.parseLong(config.get(StandInConfigParser.LATENCY_LABEL));
+        this.latencyJitter = Math.min(latency, Long.parseLong(config.get(StandInConfigParser.LATENCY_JITTER_LABEL)));
+        this.errorRate = Double.parseDouble(config.get(StandInConfigParser.ERROR_RATE_LABEL));
+        this.rateLimit = Integer.parseInt(config.get(StandInConfigParser.RATE_LIMIT_LABEL));
+        this.likers = Integer.parseInt(config.get(StandInConfigParser.LIKERS_LABEL));
+        this.wallPosts = Integer.parseInt(config.get(StandInConfigParser.WALL_POSTS_LABEL));
+        this.wallTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+        this.windows = new ConcurrentHashMap<>();
+        this.nextCode = new AtomicInteger(1);
+        this.served = new AtomicLong();
+        this.throttled = new AtomicLong();
+        this.failed = new AtomicLong();
+
+        this.executor = new ScheduledThreadPoolExecutor(Integer.parseInt(config.get(StandInConfigParser.THREADS_LABEL)));
+        this.server = HttpServer.create(new InetSocketAddress(HOST,
+                Integer.parseInt(config.get(StandInConfigParser.PORT_LABEL))), BACKLOG);
+        server.setExecutor(executor);
+        server.createContext(PATH_API, this::handleMethod);
+        server.createContext(PATH_OAUTH, this::handleOAuth);
+        server.start();
+        executor.scheduleAtFixedRate(this::report, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_STARTED, getApiUrl(), getOAuthUrl()));
+    }
+
+    /**
+     * Get the base URL of the API methods, the API_URL the app should be given
+     * @return URL ending with a slash
+     */
+    public String getApiUrl() {
+        return "http://" + HOST + ':' + server.getAddress().getPort() + PATH_API;
+    }
+
+    /**
+     * Get the base URL of the OAuth flows, the OAUTH_URL the app should be given
+     * @return URL ending with a slash
+     */
+    public String getOAuthUrl() {
+        return "http://" + HOST + ':' + server.getAddress().getPort() + PATH_OAUTH;
+    }
+
+    /**
+     * Stop the stand-in, the delayed responses are dropped
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        report();
+    }
+
+    /**
+     * Handle an API method request
+     * @param exchange HTTP exchange
+     * @throws IOException Exception that is thrown if the request couldn't be read
+     */
+    private void handleMethod(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestURI().getPath().substring(PATH_API.length());
+        Map<String, String> params = readParams(exchange);
+        JsonObject response = new JsonObject();
+        try {
+            checkRequest(params.get(PATH_ACCESS_TOKEN));
+            if (method.equals(METHOD_EXECUTE))
+                execute(params, response);
+            else
+                response.add("response", call(method, params));
+        } catch (ApiError e) {
+            response.add("error", toError(e));
+        }
+        respondLater(exchange, response);
+    }
+
+    /**
+     * Handle an OAuth request: a code flow or a client credentials flow, or the authorization page,
+     * which redirects at once with the code of the next user
+     * @param exchange HTTP exchange
+     * @throws IOException Exception that is thrown if the request couldn't be read
+     */
+    private void handleOAuth(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath().substring(PATH_OAUTH.length());
+        Map<String, String> params = readParams(exchange);
+        if (path.equals(PATH_AUTHORIZE) && params.containsKey("redirect_uri")) {
+            String redirect = params.get("redirect_uri");
+            exchange.getResponseHeaders().add("Location",
+                    redirect + (redirect.contains("?") ? '&' : '?') + "code=" + nextCode.getAndIncrement());
+            exchange.sendResponseHeaders(302, -1);
+            exchange.close();
+            served.incrementAndGet();
+            return;
+        }
+        if (!path.equals(PATH_ACCESS_TOKEN)) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+        //An OAuth error is sent with status 200, the SDK doesn't read the body of other statuses
+        JsonObject response = new JsonObject();
+        int salt = ThreadLocalRandom.current().nextInt();
+        if ("client_credentials".equals(params.get("grant_type"))) {
+            response.addProperty("access_token", String.format(TOKEN_SERVICE_FORMAT, params.get("client_id"), salt));
+            response.addProperty("expires_in", 0);
+        } else if (params.containsKey("code") && params.get("code").matches("[0-9]+")) {
+            int userId = Integer.parseInt(params.get("code"));
+            response.addProperty("access_token", String.format(TOKEN_USER_FORMAT, userId, salt));
+            response.addProperty("expires_in", USER_TOKEN_LIFETIME);
+            response.addProperty("user_id", userId);
+        } else {
+            response.addProperty("error", OAUTH_ERROR_GRANT);
+            response.addProperty("error_description", OAUTH_ERROR_GRANT_DESCRIPTION);
+        }
+        respondLater(exchange, response);
+    }
+
+    /**
+     * Apply the token check, the rate limit and the error rate to a request
+     * @param token Access token of the request
+     * @throws ApiError Error the request fails with
+     */
+    private void checkRequest(String token) throws ApiError {
+        if (token == null || !(token.startsWith(TOKEN_USER_PREFIX) || token.startsWith(TOKEN_SERVICE_PREFIX)))
+            throw new ApiError(ERROR_AUTH, ERROR_MSG_AUTH);
+        if (rateLimit > 0) {
+            Window window = windows.computeIfAbsent(token, key -> new Window());
+            long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            synchronized (window) {
+                if (window.second != second) {
+                    window.second = second;
+                    window.count = 0;
+                }
+                if (++window.count > rateLimit) {
+                    throttled.incrementAndGet();
+                    throw new ApiError(ERROR_TOO_MANY, ERROR_MSG_TOO_MANY);
+                }
+            }
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            failed.incrementAndGet();
+            throw new ApiError(ERROR_INTERNAL, ERROR_MSG_INTERNAL);
+        }
+    }
+
+    /**
+     * Run the calls of an "execute" script, a failed call gives false and an entry of "execute_errors"
+     * @param params Request parameters
+     * @param response Response object the results are added to
+     * @throws ApiError Error the whole request fails with
+     */
+    private void execute(Map<String, String> params, JsonObject response) throws ApiError {
+        String code = params.get("code");
+        if (code == null)
+            throw new ApiError(ERROR_PARAM, String.format(ERROR_MSG_PARAM, "code"));
+        JsonArray results = new JsonArray();
+        JsonArray errors = new JsonArray();
+        Matcher matcher = SCRIPT_CALL.matcher(code);
+        while (matcher.find()) {
+            String method = matcher.group(1);
+            Map<String, String> callParams = new HashMap<>();
+            try {
+                for (Map.Entry<String, JsonElement> param : new JsonParser().parse(matcher.group(2)).getAsJsonObject().entrySet())
+                    callParams.put(param.getKey(), param.getValue().getAsString());
+                results.add(call(method, callParams));
+            } catch (ApiError e) {
+                JsonObject error = toError(e);
+                error.addProperty("method", method);
+                errors.add(error);
+                results.add(false);
+            } catch (JsonParseException | IllegalStateException | UnsupportedOperationException e) {
+                throw new ApiError(ERROR_PARAM, String.format(ERROR_MSG_PARAM, "code"));
+            }
+        }
+        response.add("response", results);
+        if (errors.size() > 0)
+            response.add("execute_errors", errors);
+    }
+
+    /**
+     * Call a method
+     * @param method Method name
+     * @param params Method parameters
+     * @return Response of the method
+     * @throws ApiError Error the method fails with
+     */
+    private JsonElement call(String method, Map<String, String> params) throws ApiError {
+        switch (method) {
+            case METHOD_IS_LIKED: {
+                JsonObject result = new JsonObject();
+                result.addProperty("liked", isLiker(intParam(params, "user_id")) ? 1 : 0);
+                result.addProperty("copied", 0);
+                return result;
+            }
+            case METHOD_GET_LIST: {
+                int offset = params.containsKey("offset") ? intParam(params, "offset") : 0;
+                int count = params.containsKey("count") ? intParam(params, "count") : DEFAULT_PAGE_SIZE;
+                JsonArray items = new JsonArray();
+                for (int i = Math.max(0, offset), end = Math.min(likers, offset + Math.min(count, MAX_PAGE_SIZE)); i < end; i++)
+                    items.add(2 * i + 1); //The i-th liker
+                JsonObject result = new JsonObject();
+                result.addProperty("count", likers);
+                result.add("items", items);
+                return result;
+            }
+            case METHOD_WALL_GET: {
+                int ownerId = intParam(params, "owner_id");
+                int offset = params.containsKey("offset") ? intParam(params, "offset") : 0;
+                int count = params.containsKey("count") ? intParam(params, "count") : DEFAULT_PAGE_SIZE;
+                JsonArray items = new JsonArray();
+                for (int i = Math.max(0, offset), end = Math.min(wallPosts, offset + Math.min(count, MAX_WALL_PAGE_SIZE)); i < end; i++)
+                    items.add(toPost(ownerId, i == 0 ? 1 : wallPosts - i + 1)); //The pinned post goes first
+                JsonObject result = new JsonObject();
+                result.addProperty("count", wallPosts);
+                result.add("items", items);
+                return result;
+            }
+            case METHOD_RESOLVE_SCREEN_NAME:
+                return resolve(stringParam(params, "screen_name"));
+            case METHOD_CHECK_TOKEN: {
+                Matcher owner = TOKEN_OWNER.matcher(stringParam(params, "token"));
+                if (!owner.matches())
+                    throw new ApiError(ERROR_INVALID_TOKEN, ERROR_MSG_INVALID_TOKEN);
+                JsonObject result = new JsonObject();
+                result.addProperty("success", 1);
+                result.addProperty("user_id", Integer.parseInt(owner.group(1)));
+                result.addProperty("date", TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+                result.addProperty("expire", 0);
+                return result;
+            }
+            default:
+                throw new ApiError(ERROR_UNKNOWN_METHOD, ERROR_MSG_UNKNOWN_METHOD);
+        }
+    }
+
+    /**
+     * Resolve a screen name
+     * @param name Screen name
+     * @return The user or the community the name belongs to (an empty array if it isn't found)
+     */
+    private JsonElement resolve(String name) {
+        if (name.startsWith(NAME_MISSING_PREFIX))
+            return new JsonArray();
+        JsonObject result = new JsonObject();
+        Matcher user = NAME_USER.matcher(name);
+        Matcher group = NAME_GROUP.matcher(name);
+        if (group.matches()) {
+            result.addProperty("type", "group");
+            result.addProperty("object_id", Integer.parseInt(group.group(1)));
+        } else {
+            result.addProperty("type", "user");
+            //Half of the hashed names belong to likers
+            result.addProperty("object_id", user.matches() ? Integer.parseInt(user.group(1))
+                    : (name.hashCode() & Integer.MAX_VALUE) % (2 * Math.max(1, likers)) + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Build a wall post
+     * @param ownerId Owner of the wall
+     * @param postId ID of the post, the posts are numbered from the oldest one
+     * @return Post as wall.get returns it
+     */
+    private JsonObject toPost(int ownerId, int postId) {
+        JsonObject likes = new JsonObject();
+        likes.addProperty("count", likers);
+        likes.addProperty("user_likes", 0);
+        likes.addProperty("can_like", 1);
+        JsonObject post = new JsonObject();
+        post.addProperty("id", postId);
+        post.addProperty("owner_id", ownerId);
+        post.addProperty("from_id", ownerId);
+        post.addProperty("date", wallTime - (wallPosts - postId) * POST_SPACING);
+        post.addProperty("text", "");
+        if (postId == 1)
+            post.addProperty("is_pinned", 1);
+        post.add("likes", likes);
+        return post;
+    }
+
+    /**
+     * Check whether a user has liked the posts
+     * @param userId ID of the user
+     * @return True if the user is one of the likers (False otherwise)
+     */
+    private boolean isLiker(int userId) {
+        return userId > 0 && userId % 2 == 1 && (userId - 1) / 2 < likers;
+    }
+
+    /**
+     * Send a response after the configured latency
+     * @param exchange HTTP exchange
+     * @param response Response object
+     */
+    private void respondLater(HttpExchange exchange, JsonObject response) {
+        served.incrementAndGet();
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        long delay = latency + (latencyJitter > 0 ? ThreadLocalRandom.current().nextLong(-latencyJitter, latencyJitter + 1) : 0);
+        executor.schedule(() -> {
+            try (OutputStream out = exchange.getResponseBody()) {
+                exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                out.write(body);
+            } catch (IOException e) { //The client has gone
+                exchange.close();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the number of the served requests to the log
+     */
+    private void report() {
+        Logger.getInstance().log(Logger.LogKind.INFO, String.format(LOG_MSG_REPORT, served.get(), throttled.get(), failed.get()));
+    }
+
+    /**
+     * Build the error object of a response
+     * @param error Error
+     * @return Error object
+     */
+    private static JsonObject toError(ApiError error) {
+        JsonObject result = new JsonObject();
+        result.addProperty("error_code", error.code);
+        result.addProperty("error_msg", error.getMessage());
+        result.add("request_params", new JsonArray());
+        return result;
+    }
+
+    /**
+     * Get an integer parameter
+     * @param params Parameters
+     * @param name Parameter name
+     * @return Value of the parameter
+     * @throws ApiError Error that is thrown if the parameter is missing or isn't an integer
+     */
+    private static int intParam(Map<String, String> params, String name) throws ApiError {
+        try {
+            return Integer.parseInt(stringParam(params, name));
+        } catch (NumberFormatException e) {
+            throw new ApiError(ERROR_PARAM, String.format(ERROR_MSG_PARAM, name));
+        }
+    }
+
+    /**
+     * Get a string parameter
+     * @param params Parameters
+     * @param name Parameter name
+     * @return Value of the parameter
+     * @throws ApiError Error that is thrown if the parameter is missing
+     */
+    private static String stringParam(Map<String, String> params, String name) throws ApiError {
+        String value = params.get(name);
+        if (value == null)
+            throw new ApiError(ERROR_PARAM, String.format(ERROR_MSG_PARAM, name));
+        return value;
+    }
+
+    /**
+     * Read the parameters of the query string and of the URL-encoded form body
+     * @param exchange HTTP exchange
+     * @return Parameters by name
+     * @throws IOException Exception that is thrown if the body couldn't be read
+     */
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        parseForm(read(exchange.getRequestBody()), params);
+        return params;
+    }
+
+    /**
+     * Parse a URL-encoded form
+     * @param form Form (may be null)
+     * @param params Parameters the parsed ones are added to
+     * @throws UnsupportedEncodingException Never, UTF-8 is always supported
+     */
+    private static void parseForm(String form, Map<String, String> params) throws UnsupportedEncodingException {
+        if (form == null || form.isEmpty())
+            return;
+        for (String pair : form.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0)
+                params.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8.name()),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8.name()));
+        }
+    }
+
+    /**
+     * Read a request body
+     * @param in Body stream
+     * @return Body text
+     * @throws IOException Exception that is thrown if the body couldn't be read
+     */
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) > 0)
+            out.write(buffer, 0, read);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
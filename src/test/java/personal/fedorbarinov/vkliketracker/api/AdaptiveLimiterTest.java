@@ -0,0 +1,77 @@
+package personal.fedorbarinov.vkliketracker.api;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveLimiterTest {
+    private static final int CALLS = 10000;
+    private static final int THREADS = 8;
+
+    @Test
+    public void drainsCallsFailingAtOnceWithoutRecursion() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1);
+        AtomicInteger made = new AtomicInteger();
+        long[] firstSentAt = new long[1];
+        limiter.submit(() -> { //Holds the only slot until the queue is filled
+            made.incrementAndGet();
+            firstSentAt[0] = System.nanoTime();
+        });
+        for (int i = 0; i < CALLS; i++) {
+            limiter.submit(() -> {
+                made.incrementAndGet();
+                limiter.release(System.nanoTime(), AdaptiveLimiter.Outcome.FAILED);
+            });
+        }
+        assertEquals(CALLS, limiter.getQueued());
+
+        limiter.release(firstSentAt[0], AdaptiveLimiter.Outcome.FAILED);
+        assertEquals(CALLS + 1, made.get());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void callsSubmittedFromACallAreMade() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1);
+        AtomicInteger made = new AtomicInteger();
+        Runnable[] call = new Runnable[1];
+        call[0] = () -> {
+            if (made.incrementAndGet() < CALLS)
+                limiter.submit(call[0]);
+            limiter.release(System.nanoTime(), AdaptiveLimiter.Outcome.FAILED);
+        };
+        limiter.submit(call[0]);
+        assertEquals(CALLS, made.get());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void noCallIsLeftInTheQueueByConcurrentThreads() throws InterruptedException {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(2, 2);
+        AtomicInteger made = new AtomicInteger();
+        Runnable call = () -> {
+            made.incrementAndGet();
+            limiter.release(System.nanoTime(), AdaptiveLimiter.Outcome.FAILED);
+        };
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < CALLS; j++)
+                    limiter.submit(call);
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertEquals(THREADS * CALLS, made.get());
+        assertEquals(0, limiter.getQueued());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
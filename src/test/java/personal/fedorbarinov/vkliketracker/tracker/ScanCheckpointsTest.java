@@ -0,0 +1,57 @@
+package personal.fedorbarinov.vkliketracker.tracker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class ScanCheckpointsTest {
+    private static final long MAX_AGE = TimeUnit.HOURS.toMillis(1);
+    private static final int OWNER_ID = 1;
+    private static final int POST_ID = 2;
+    private static final int LIKES = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsAppendedAfterATornOneAreReadBack() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        long startedAt = System.currentTimeMillis();
+        try (ScanCheckpoints checkpoints = new ScanCheckpoints(directory, MAX_AGE)) {
+            checkpoints.save(OWNER_ID, POST_ID, startedAt, LIKES, 100, new int[]{1, 2});
+            checkpoints.save(OWNER_ID, POST_ID, startedAt, LIKES, 200, new int[]{3, 4, 5});
+        }
+        try (FileChannel channel = FileChannel.open(directory.resolve("wall1_2.scan"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - Integer.BYTES); //A crash in the middle of the second record
+        }
+
+        try (ScanCheckpoints checkpoints = new ScanCheckpoints(directory, MAX_AGE)) {
+            ScanCheckpoints.Checkpoint checkpoint = checkpoints.load(OWNER_ID, POST_ID, LIKES);
+            assertNotNull(checkpoint);
+            assertEquals(100, checkpoint.offset);
+            assertEquals(2, checkpoint.likers.cardinality());
+            checkpoints.save(OWNER_ID, POST_ID, startedAt, LIKES, 200, new int[]{3, 4, 5});
+            checkpoints.save(OWNER_ID, POST_ID, startedAt, LIKES, 300, new int[]{6});
+        }
+
+        try (ScanCheckpoints checkpoints = new ScanCheckpoints(directory, MAX_AGE)) {
+            ScanCheckpoints.Checkpoint checkpoint = checkpoints.load(OWNER_ID, POST_ID, LIKES);
+            assertNotNull(checkpoint);
+            assertEquals(startedAt, checkpoint.startedAt);
+            assertEquals(300, checkpoint.offset);
+            assertEquals(6, checkpoint.likers.cardinality());
+            for (int liker = 1; liker <= 6; liker++)
+                assertTrue(checkpoint.likers.contains(liker));
+        }
+    }
+}